@@ -1,5 +1,5 @@
 import React, { useEffect, useState } from "react";
-import { api } from "./api";
+import { api, fetchUserPage } from "./api";
 import UserGrid from "./components/UserGrid";
 import AddUserModal from "./components/AddUserModal";
 import EditUserModal from "./components/EditUserModal";
@@ -21,6 +21,7 @@ export interface User {
 
 const App: React.FC = () => {
     const [users, setUsers] = useState<User[]>([]);
+    const [nextCursor, setNextCursor] = useState<number | null>(null);
     const [isUserModalOpen, setIsUserModalOpen] = useState(false);
     const [editingUser, setEditingUser] = useState<User | null>(null);
     const [isInterestModalOpen, setIsInterestModalOpen] = useState(false);
@@ -28,8 +29,20 @@ const App: React.FC = () => {
 
     const fetchUsers = async () => {
         try {
-            const res = await api.get<User[]>("/users");
-            setUsers(res.data);
+            const res = await fetchUserPage();
+            setUsers(res.data.items);
+            setNextCursor(res.data.nextCursor);
+        } catch {
+            alert("Ошибка загрузки пользователей");
+        }
+    };
+
+    const fetchMoreUsers = async () => {
+        if (nextCursor === null) return;
+        try {
+            const res = await fetchUserPage(nextCursor);
+            setUsers((prev) => [...prev, ...res.data.items]);
+            setNextCursor(res.data.nextCursor);
         } catch {
             alert("Ошибка загрузки пользователей");
         }
@@ -143,6 +156,20 @@ const App: React.FC = () => {
             {/* Сетка пользователей */}
             <UserGrid users={users} onEdit={setEditingUser} onDelete={handleDeleteUser} />
 
+            {nextCursor !== null && (
+                <div style={{ textAlign: "center", marginTop: "20px" }}>
+                    <button
+                        onClick={fetchMoreUsers}
+                        style={{
+                            ...buttonStyle,
+                            backgroundColor: "#6c757d",
+                        }}
+                    >
+                        Показать ещё
+                    </button>
+                </div>
+            )}
+
             {/* Модалки */}
             {isUserModalOpen && (
                 <AddUserModal onClose={() => setIsUserModalOpen(false)} onAdd={handleAddUser} />
@@ -7,6 +7,17 @@ export const api = axios.create({
     paramsSerializer: params => qs.stringify(params, { arrayFormat: "repeat" }),
 });
 
+export interface UserPage {
+    items: User[];
+    nextCursor: number | null;
+}
+
+// GET /users отдаёт страницу; nextCursor передаётся в after для следующей
+export const fetchUserPage = (after?: number | null, limit?: number) =>
+    api.get<UserPage>("/users", {
+        params: { after: after ?? undefined, limit },
+    });
+
 export const searchByInterest = (interestType: string) =>
     api.get<User[]>("/users/by-interest", {
         params: { interestType },
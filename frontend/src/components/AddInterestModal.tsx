@@ -1,6 +1,6 @@
 /*
 import React, { useEffect, useState } from "react";
-import { api } from "../api";
+import { api, fetchUserPage } from "../api";
 import { User } from "../App";
 
 interface Props {
@@ -14,7 +14,7 @@ const AddInterestModal: React.FC<Props> = ({ onClose, onSuccess }) => {
     const [interest, setInterest] = useState("");
 
     useEffect(() => {
-        api.get<User[]>("/users").then(res => setUsers(res.data));
+        fetchUserPage(null, 1000).then(res => setUsers(res.data.items));
     }, []);
 
     const handleSubmit = async () => {
@@ -85,7 +85,7 @@ const AddInterestModal: React.FC<Props> = ({ onClose, onSuccess }) => {
 export default AddInterestModal;
 */
 import React, { useEffect, useState } from "react";
-import { api } from "../api";
+import { api, fetchUserPage } from "../api";
 import { User } from "../App";
 
 interface Props {
@@ -110,7 +110,7 @@ const AddInterestModal: React.FC<Props> = ({ onClose, onSuccess }) => {
     const [interest, setInterest] = useState("");
 
     useEffect(() => {
-        api.get<User[]>("/users").then(res => setUsers(res.data));
+        fetchUserPage(null, 1000).then(res => setUsers(res.data.items));
     }, []);
 
     const handleSubmit = async () => {
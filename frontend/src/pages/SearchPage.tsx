@@ -2,6 +2,7 @@ import React, { useEffect, useState } from "react";
 import Header from "../components/Header";
 import {
     searchByInterest,
+    fetchUserPage,
     api,
 } from "../api";
 import { User, Interest } from "../App";
@@ -24,8 +25,8 @@ const SearchPage: React.FC = () => {
     const fetchAllUsers = async () => {
         setLoading(true);
         try {
-            const res = await api.get<User[]>("/users");
-            setResults(res.data);
+            const res = await fetchUserPage();
+            setResults(res.data.items);
         } catch {
             alert("Ошибка загрузки пользователей");
         } finally {
@@ -0,0 +1,206 @@
+package com.kirill.meetyou.cache;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Общая часть шин инвалидации: накапливает ключи, схлопывает повторы и раз в
+ * {@code flushInterval} отправляет их одним или несколькими сообщениями.
+ *
+ * <p>Формат сообщения: {@code nodeId|sentAtMillis|topic=key,key;topic2=*}.
+ */
+@Slf4j
+public abstract class AbstractInvalidationBus implements InvalidationBus {
+    private static final int MAX_PAYLOAD_LENGTH = 7000;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService flusher;
+    private Map<String, Set<String>> pending = new HashMap<>();
+    private long pendingSince;
+
+    private final LongAdder publishedBatches = new LongAdder();
+    private final LongAdder publishedKeys = new LongAdder();
+    private final LongAdder coalescedKeys = new LongAdder();
+    private final LongAdder publishLagMillis = new LongAdder();
+    private final LongAdder receivedBatches = new LongAdder();
+    private final LongAdder receivedKeys = new LongAdder();
+    private final LongAdder receiveLagMillis = new LongAdder();
+    private final AtomicLong maxReceiveLagMillis = new AtomicLong();
+
+    protected AbstractInvalidationBus(Duration flushInterval) {
+        long interval = Math.max(1, flushInterval.toMillis());
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CacheInvalidationFlush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void publish(String topic, String key) {
+        if (pending.isEmpty()) {
+            pendingSince = System.currentTimeMillis();
+        }
+        Set<String> keys = pending.computeIfAbsent(topic, t -> new HashSet<>());
+        if (keys.contains(ALL_KEYS)) {
+            coalescedKeys.increment();
+            return;
+        }
+        if (ALL_KEYS.equals(key)) {
+            coalescedKeys.add(keys.size());
+            keys.clear();
+        }
+        if (!keys.add(key)) {
+            coalescedKeys.increment();
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public InvalidationStats stats() {
+        long batches = publishedBatches.sum();
+        long received = receivedBatches.sum();
+        return new InvalidationStats(batches, publishedKeys.sum(), coalescedKeys.sum(),
+                batches == 0 ? 0 : (double) publishLagMillis.sum() / batches,
+                received, receivedKeys.sum(),
+                received == 0 ? 0 : (double) receiveLagMillis.sum() / received,
+                maxReceiveLagMillis.get());
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // Отправка готового сообщения остальным узлам
+    protected abstract void send(String payload) throws Exception;
+
+    // Разбор сообщения, пришедшего от транспорта
+    protected void receive(String payload) {
+        String[] parts = payload.split("\\|", 3);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+
+        long lag = Math.max(0, System.currentTimeMillis() - Long.parseLong(parts[1]));
+        receivedBatches.increment();
+        receiveLagMillis.add(lag);
+        maxReceiveLagMillis.accumulateAndGet(lag, Math::max);
+
+        for (String section : parts[2].split(";")) {
+            int separator = section.indexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            String topic = section.substring(0, separator);
+            Set<String> keys = Set.of(section.substring(separator + 1).split(","));
+            receivedKeys.add(keys.size());
+            for (Listener listener : listeners) {
+                try {
+                    listener.onInvalidation(topic, keys);
+                } catch (RuntimeException e) {
+                    log.warn("Invalidation listener failed for topic {}: {}", topic,
+                            e.getMessage());
+                }
+            }
+        }
+    }
+
+    void flush() throws Exception {
+        Map<String, Set<String>> batch;
+        long since;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            since = pendingSince;
+            pending = new HashMap<>();
+        }
+
+        long now = System.currentTimeMillis();
+        for (String payload : encode(batch, now)) {
+            send(payload);
+            publishedBatches.increment();
+            publishLagMillis.add(now - since);
+        }
+        batch.values().forEach(keys -> publishedKeys.add(keys.size()));
+    }
+
+    @PreDestroy
+    public void close() {
+        flusher.shutdown();
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.warn("Failed to publish cache invalidations: {}", e.getMessage());
+        }
+    }
+
+    private List<String> encode(Map<String, Set<String>> batch, long sentAt) {
+        String header = nodeId + "|" + sentAt + "|";
+        List<String> payloads = new ArrayList<>();
+        StringBuilder payload = new StringBuilder(header);
+
+        for (Map.Entry<String, Set<String>> entry : batch.entrySet()) {
+            StringBuilder section = null;
+            for (String key : entry.getValue()) {
+                if (section != null && payload.length() + section.length() + key.length() + 1
+                        > MAX_PAYLOAD_LENGTH) {
+                    appendSection(payload, section);
+                    payloads.add(payload.toString());
+                    payload = new StringBuilder(header);
+                    section = null;
+                }
+                if (section == null) {
+                    section = new StringBuilder(entry.getKey()).append('=').append(key);
+                } else {
+                    section.append(',').append(key);
+                }
+            }
+            if (section != null) {
+                if (payload.length() + section.length() + 1 > MAX_PAYLOAD_LENGTH
+                        && payload.length() > header.length()) {
+                    payloads.add(payload.toString());
+                    payload = new StringBuilder(header);
+                }
+                appendSection(payload, section);
+            }
+        }
+        if (payload.length() > header.length()) {
+            payloads.add(payload.toString());
+        }
+        return payloads;
+    }
+
+    private static void appendSection(StringBuilder payload, StringBuilder section) {
+        if (payload.charAt(payload.length() - 1) != '|') {
+            payload.append(';');
+        }
+        payload.append(section);
+    }
+}
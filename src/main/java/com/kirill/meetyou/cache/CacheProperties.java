@@ -0,0 +1,17 @@
+package com.kirill.meetyou.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+// Настройки именованных кэшей: app.cache.specs.<имя>.max-size, .ttl и т.д.
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.cache")
+public class CacheProperties {
+    private Map<String, CacheSpec> specs = new HashMap<>();
+}
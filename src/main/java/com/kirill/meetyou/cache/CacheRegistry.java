@@ -0,0 +1,78 @@
+package com.kirill.meetyou.cache;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+@Slf4j
+@Component
+public class CacheRegistry {
+    private final Map<String, NamedCache<?, ?>> caches = new ConcurrentHashMap<>();
+    private final CacheProperties properties;
+    private final InvalidationBus bus;
+    private final ScheduledExecutorService scheduler;
+
+    public CacheRegistry(CacheProperties properties, InvalidationBus bus) {
+        this.properties = properties;
+        this.bus = bus;
+        bus.subscribe((name, keys) -> {
+            NamedCache<?, ?> cache = caches.get(name);
+            if (cache != null) {
+                cache.invalidateLocal(keys);
+            }
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "CacheCleanup");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Кэш с настройками из app.cache.specs.<name> (или значениями по умолчанию)
+    public <K, V> NamedCache<K, V> getCache(String name) {
+        return register(name, properties.getSpecs().getOrDefault(name, new CacheSpec()));
+    }
+
+    // Ключи, пришедшие с шины инвалидации, разбираются как Long
+    @SuppressWarnings("unchecked")
+    public <K, V> NamedCache<K, V> register(String name, CacheSpec spec) {
+        return register(name, spec, key -> (K) Long.valueOf(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <K, V> NamedCache<K, V> register(String name, CacheSpec spec,
+                                            Function<String, K> keyParser) {
+        return (NamedCache<K, V>) caches.computeIfAbsent(name, key -> {
+            NamedCache<K, V> cache = new NamedCache<>(key, spec, bus, keyParser);
+            long period = Math.max(cache.cleanupPeriod().toMillis(), 1000L);
+            scheduler.scheduleAtFixedRate(cache::cleanUp, period, period,
+                    TimeUnit.MILLISECONDS);
+            log.info("Cache '{}' registered: max-size={}, ttl={}, policy={}",
+                    key, spec.getMaxSize(), spec.getTtl(), spec.getEvictionPolicy());
+            return cache;
+        });
+    }
+
+    public Map<String, CacheStats> stats() {
+        Map<String, CacheStats> stats = new TreeMap<>();
+        caches.forEach((name, cache) -> stats.put(name, cache.stats()));
+        return stats;
+    }
+
+    public InvalidationBus.InvalidationStats invalidationStats() {
+        return bus.stats();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        caches.values().forEach(NamedCache::shutdown);
+    }
+}
@@ -0,0 +1,33 @@
+package com.kirill.meetyou.cache;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+
+// Настройки одного именованного кэша
+@Getter
+@Setter
+public class CacheSpec {
+    private int maxSize = 100;
+    private Duration ttl = Duration.ofSeconds(10);
+    private int segments = 0;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.TINY_LFU;
+
+    private Duration loadTimeout = Duration.ofSeconds(5);
+    private boolean shareLoadFailures = true;
+    private boolean fallbackOnLoadTimeout = true;
+
+    private RefreshAhead refreshAhead = new RefreshAhead();
+
+    @Getter
+    @Setter
+    public static class RefreshAhead {
+        private boolean enabled = false;
+        // Доля TTL, после которой запись перезагружается в фоне
+        private double fraction = 0.8;
+        // Сколько после истечения TTL можно отдавать устаревшее значение
+        private Duration maxStaleness = Duration.ofSeconds(5);
+        private int threads = 2;
+        private int queueCapacity = 256;
+    }
+}
@@ -0,0 +1,8 @@
+package com.kirill.meetyou.cache;
+
+public record CacheStats(long size, long hitCount, long missCount, long evictionCount) {
+    public double hitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+}
@@ -0,0 +1,86 @@
+package com.kirill.meetyou.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Растущий битсет без блокировок на чтение/запись битов; блокировка только при росте
+final class ConcurrentBitSet {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_BITS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_WORDS = CHUNK_BITS / Long.SIZE;
+
+    private volatile AtomicLongArray[] chunks = new AtomicLongArray[0];
+
+    boolean get(long index) {
+        AtomicLongArray chunk = chunkFor(index, false);
+        return chunk != null && (chunk.get(wordIndex(index)) & mask(index)) != 0;
+    }
+
+    void set(long index) {
+        long mask = mask(index);
+        chunkFor(index, true).getAndUpdate(wordIndex(index), word -> word | mask);
+    }
+
+    void clear(long index) {
+        AtomicLongArray chunk = chunkFor(index, false);
+        if (chunk != null) {
+            long mask = mask(index);
+            chunk.getAndUpdate(wordIndex(index), word -> word & ~mask);
+        }
+    }
+
+    long cardinality() {
+        long count = 0;
+        for (AtomicLongArray chunk : chunks) {
+            if (chunk == null) {
+                continue;
+            }
+            for (int i = 0; i < CHUNK_WORDS; i++) {
+                count += Long.bitCount(chunk.get(i));
+            }
+        }
+        return count;
+    }
+
+    long memoryBytes() {
+        long bytes = 0;
+        for (AtomicLongArray chunk : chunks) {
+            if (chunk != null) {
+                bytes += (long) CHUNK_WORDS * Long.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    private AtomicLongArray chunkFor(long index, boolean create) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Индекс битсета не может быть отрицательным");
+        }
+        long chunkIndex = index >>> CHUNK_SHIFT;
+        AtomicLongArray[] current = chunks;
+        if (chunkIndex < current.length && current[(int) chunkIndex] != null) {
+            return current[(int) chunkIndex];
+        }
+        return create ? createChunk((int) chunkIndex) : null;
+    }
+
+    private synchronized AtomicLongArray createChunk(int chunkIndex) {
+        AtomicLongArray[] current = chunks;
+        if (chunkIndex >= current.length) {
+            current = Arrays.copyOf(current, Math.max(chunkIndex + 1, current.length * 2));
+        }
+        if (current[chunkIndex] == null) {
+            current[chunkIndex] = new AtomicLongArray(CHUNK_WORDS);
+        }
+        chunks = current;
+        return current[chunkIndex];
+    }
+
+    private static int wordIndex(long index) {
+        return (int) ((index & (CHUNK_BITS - 1)) >>> 6);
+    }
+
+    private static long mask(long index) {
+        return 1L << (index & 63);
+    }
+}
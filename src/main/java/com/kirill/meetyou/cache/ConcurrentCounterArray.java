@@ -0,0 +1,86 @@
+package com.kirill.meetyou.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Счётчики int по неотрицательному индексу, разбитые на полосы по 65536 штук.
+// Полоса создаётся при первой записи; чтение и изменение без блокировок
+final class ConcurrentCounterArray {
+    private static final int STRIPE_SHIFT = 16;
+    private static final int STRIPE_SIZE = 1 << STRIPE_SHIFT;
+
+    private volatile AtomicIntegerArray[] stripes = new AtomicIntegerArray[0];
+
+    int get(long index) {
+        AtomicIntegerArray stripe = stripeFor(index, false);
+        return stripe == null ? 0 : stripe.get(offset(index));
+    }
+
+    void set(long index, int value) {
+        AtomicIntegerArray stripe = stripeFor(index, value != 0);
+        if (stripe != null) {
+            stripe.set(offset(index), value);
+        }
+    }
+
+    void add(long index, int delta) {
+        stripeFor(index, true).addAndGet(offset(index), delta);
+    }
+
+    long nonZero() {
+        long count = 0;
+        for (AtomicIntegerArray stripe : stripes) {
+            if (stripe == null) {
+                continue;
+            }
+            for (int i = 0; i < STRIPE_SIZE; i++) {
+                if (stripe.get(i) != 0) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    long memoryBytes() {
+        long bytes = 0;
+        for (AtomicIntegerArray stripe : stripes) {
+            if (stripe != null) {
+                bytes += (long) STRIPE_SIZE * Integer.BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    void clear() {
+        stripes = new AtomicIntegerArray[0];
+    }
+
+    private AtomicIntegerArray stripeFor(long index, boolean create) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Индекс счётчика не может быть отрицательным");
+        }
+        long stripeIndex = index >>> STRIPE_SHIFT;
+        AtomicIntegerArray[] current = stripes;
+        if (stripeIndex < current.length && current[(int) stripeIndex] != null) {
+            return current[(int) stripeIndex];
+        }
+        return create ? createStripe((int) stripeIndex) : null;
+    }
+
+    private synchronized AtomicIntegerArray createStripe(int stripeIndex) {
+        AtomicIntegerArray[] current = stripes;
+        if (stripeIndex >= current.length) {
+            current = Arrays.copyOf(current, Math.max(stripeIndex + 1, current.length * 2));
+        }
+        if (current[stripeIndex] == null) {
+            current[stripeIndex] = new AtomicIntegerArray(STRIPE_SIZE);
+        }
+        stripes = current;
+        return current[stripeIndex];
+    }
+
+    private static int offset(long index) {
+        return (int) (index & (STRIPE_SIZE - 1));
+    }
+}
@@ -0,0 +1,8 @@
+package com.kirill.meetyou.cache;
+
+public enum EvictionPolicy {
+    // Окно LRU + SLRU с допуском по частоте (W-TinyLFU)
+    TINY_LFU,
+    // Та же SLRU-структура, но кандидат из окна допускается всегда
+    LRU
+}
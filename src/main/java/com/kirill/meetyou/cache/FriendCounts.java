@@ -0,0 +1,138 @@
+package com.kirill.meetyou.cache;
+
+import com.kirill.meetyou.config.FriendCountProperties;
+import com.kirill.meetyou.repository.FriendBatchRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Число друзей каждого пользователя за O(1) без COUNT(*) по user_friends.
+ *
+ * <p>Источник правды — колонка users.friend_count, которую FriendService меняет
+ * в той же транзакции, что и user_friends. В памяти лежат полосы счётчиков по id:
+ * после коммита к ним прибавляется та же дельта, а другие экземпляры получают id
+ * через {@link InvalidationBus} и перечитывают значения колонки. Пока счётчики
+ * загружаются, значение читается из колонки по первичному ключу.
+ */
+@Slf4j
+@Component
+public class FriendCounts {
+    static final String TOPIC = "friend-counts";
+
+    private final FriendBatchRepository friendBatchRepository;
+    private final InvalidationBus bus;
+    private final boolean reconcileOnStartup;
+    private final ConcurrentCounterArray counts = new ConcurrentCounterArray();
+    private final Set<Long> changedDuringLoad = ConcurrentHashMap.newKeySet();
+    private volatile boolean ready;
+    private volatile boolean loading;
+
+    public FriendCounts(FriendBatchRepository friendBatchRepository, InvalidationBus bus,
+                        FriendCountProperties properties) {
+        this.friendBatchRepository = friendBatchRepository;
+        this.bus = bus;
+        this.reconcileOnStartup = properties.isReconcileOnStartup();
+        bus.subscribe(this::onRemoteChange);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        loading = true;
+        changedDuringLoad.clear();
+        // Колонка появилась позже связей: расхождения исправляются одним запросом
+        if (reconcileOnStartup) {
+            int fixed = friendBatchRepository.reconcileFriendCounts();
+            if (fixed > 0) {
+                log.info("Friend counts reconciled for {} users", fixed);
+            }
+        }
+        counts.clear();
+        friendBatchRepository.forEachFriendCount(counts::set);
+        loading = false;
+        if (!changedDuringLoad.isEmpty()) {
+            reload(new ArrayList<>(changedDuringLoad));
+            changedDuringLoad.clear();
+        }
+        ready = true;
+        log.info("Friend counts loaded: {} users with friends, {} KB in {} ms",
+                counts.nonZero(), counts.memoryBytes() / 1024,
+                System.currentTimeMillis() - start);
+    }
+
+    public int get(long userId) {
+        return ready ? counts.get(userId) : friendBatchRepository.findFriendCount(userId);
+    }
+
+    // Дельты уже записаны в users.friend_count текущей транзакцией
+    public void applyAfterCommit(Map<Long, Integer> deltas) {
+        Map<Long, Integer> snapshot = Map.copyOf(deltas);
+        Runnable apply = () -> {
+            snapshot.forEach((userId, delta) -> {
+                if (loading) {
+                    changedDuringLoad.add(userId);
+                }
+                counts.add(userId, delta);
+                bus.publish(TOPIC, String.valueOf(userId));
+            });
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            apply.run();
+                        }
+                    });
+        } else {
+            apply.run();
+        }
+    }
+
+    public CountStats stats() {
+        return new CountStats(ready, counts.nonZero(), counts.memoryBytes());
+    }
+
+    private void reload(List<Long> userIds) {
+        Map<Long, Integer> values = friendBatchRepository.findFriendCounts(userIds);
+        for (Long userId : userIds) {
+            counts.set(userId, values.getOrDefault(userId, 0));
+        }
+    }
+
+    private void onRemoteChange(String topic, Set<String> keys) {
+        if (!TOPIC.equals(topic)) {
+            return;
+        }
+        if (keys.contains(InvalidationBus.ALL_KEYS)) {
+            load();
+            return;
+        }
+        List<Long> userIds = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            try {
+                userIds.add(Long.parseLong(key));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid user id '{}' from invalidation bus", key);
+            }
+        }
+        if (loading) {
+            changedDuringLoad.addAll(userIds);
+        }
+        if (!userIds.isEmpty()) {
+            reload(userIds);
+        }
+    }
+
+    public record CountStats(boolean ready, long usersWithFriends, long memoryBytes) {
+    }
+}
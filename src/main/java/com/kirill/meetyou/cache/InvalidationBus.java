@@ -0,0 +1,30 @@
+package com.kirill.meetyou.cache;
+
+import java.util.Set;
+
+/**
+ * Шина инвалидации кэшей между экземплярами приложения.
+ *
+ * <p>Топик — имя кэша (или другой структуры, например фильтра id), ключ —
+ * строковое представление ключа; {@link #ALL_KEYS} означает «очистить всё».
+ * Сообщения от самого узла ему не доставляются.
+ */
+public interface InvalidationBus {
+    String ALL_KEYS = "*";
+
+    void publish(String topic, String key);
+
+    void subscribe(Listener listener);
+
+    InvalidationStats stats();
+
+    @FunctionalInterface
+    interface Listener {
+        void onInvalidation(String topic, Set<String> keys);
+    }
+
+    record InvalidationStats(long publishedBatches, long publishedKeys, long coalescedKeys,
+                             double avgPublishLagMillis, long receivedBatches, long receivedKeys,
+                             double avgReceiveLagMillis, long maxReceiveLagMillis) {
+    }
+}
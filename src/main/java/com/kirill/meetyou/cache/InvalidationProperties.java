@@ -0,0 +1,26 @@
+package com.kirill.meetyou.cache;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.cache.invalidation")
+public class InvalidationProperties {
+    // loopback — один экземпляр (или несколько в одном процессе), postgres — LISTEN/NOTIFY
+    private Mode mode = Mode.LOOPBACK;
+    // Сколько копить ключи перед отправкой одним сообщением
+    private Duration flushInterval = Duration.ofMillis(20);
+    private String channel = "cache_invalidation";
+    private Duration pollTimeout = Duration.ofMillis(500);
+    private Duration reconnectDelay = Duration.ofSeconds(5);
+
+    public enum Mode {
+        LOOPBACK,
+        POSTGRES
+    }
+}
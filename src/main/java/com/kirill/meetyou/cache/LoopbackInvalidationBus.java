@@ -0,0 +1,40 @@
+package com.kirill.meetyou.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Шина без внешнего транспорта: доставляет сообщения другим экземплярам,
+ * подключённым к той же {@code network}. Одиночный экземпляр (значение по
+ * умолчанию) никому ничего не доставляет.
+ */
+public class LoopbackInvalidationBus extends AbstractInvalidationBus {
+    private final Collection<LoopbackInvalidationBus> network;
+
+    public LoopbackInvalidationBus(Duration flushInterval) {
+        this(flushInterval, new CopyOnWriteArrayList<>());
+    }
+
+    public LoopbackInvalidationBus(Duration flushInterval,
+                                   Collection<LoopbackInvalidationBus> network) {
+        super(flushInterval);
+        this.network = network;
+        network.add(this);
+    }
+
+    @Override
+    protected void send(String payload) {
+        for (LoopbackInvalidationBus peer : network) {
+            if (peer != this) {
+                peer.receive(payload);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        network.remove(this);
+    }
+}
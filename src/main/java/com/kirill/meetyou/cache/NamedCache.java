@@ -0,0 +1,289 @@
+package com.kirill.meetyou.cache;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Именованный кэш поверх {@link SegmentedCache}: склейка одновременных загрузок,
+ * опциональное фоновое обновление (refresh-ahead) и собственная статистика.
+ * Экземпляры создаются через {@link CacheRegistry}.
+ *
+ * <p>{@code put}, {@code remove} и {@code clear} рассылают инвалидацию другим
+ * экземплярам через {@link InvalidationBus}; загрузки и {@link #putLocal} — нет.
+ *
+ * <p>Загруженное значение кладётся в кэш, только если сегмент ключа не менялся с
+ * начала загрузки (см. {@link SegmentedCache#generation}): иначе медленная загрузка
+ * вернула бы в кэш строку, которую уже обновили или удалили.
+ */
+@Slf4j
+public class NamedCache<K, V> {
+    private final String name;
+    private final Duration cleanupPeriod;
+    private final SegmentedCache<K, V> cache;
+    private final SingleFlightLoader<K, V> loader;
+    private final InvalidationBus bus;
+    private final Function<String, K> keyParser;
+    private final ThreadPoolExecutor refreshExecutor;
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder refreshesScheduled = new LongAdder();
+    private final LongAdder refreshesSucceeded = new LongAdder();
+    private final LongAdder refreshesFailed = new LongAdder();
+    private final LongAdder refreshesRejected = new LongAdder();
+
+    NamedCache(String name, CacheSpec spec, InvalidationBus bus,
+               Function<String, K> keyParser) {
+        this.name = name;
+        this.bus = bus;
+        this.keyParser = keyParser;
+        CacheSpec.RefreshAhead refreshAhead = spec.getRefreshAhead();
+        Duration ttl = spec.getTtl();
+
+        if (refreshAhead.isEnabled()) {
+            // Запись живёт TTL + max-staleness, но после доли TTL уже обновляется в фоне
+            Duration refreshAfter = Duration.ofNanos(
+                    (long) (ttl.toNanos() * refreshAhead.getFraction()));
+            this.cache = new SegmentedCache<>(spec.getMaxSize(),
+                    ttl.plus(refreshAhead.getMaxStaleness()), spec.getSegments(),
+                    refreshAfter, spec.getEvictionPolicy());
+            this.refreshExecutor = createRefreshExecutor(name, refreshAhead);
+        } else {
+            this.cache = new SegmentedCache<>(spec.getMaxSize(), ttl, spec.getSegments(),
+                    null, spec.getEvictionPolicy());
+            this.refreshExecutor = null;
+        }
+        this.loader = new SingleFlightLoader<>(spec.getLoadTimeout(),
+                spec.isShareLoadFailures(), spec.isFallbackOnLoadTimeout());
+        this.cleanupPeriod = ttl;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public V get(K key) {
+        return cache.get(key);
+    }
+
+    // При промахе только один поток на ключ идёт в БД, остальные ждут его результат.
+    // mappingFunction должна сама открывать транзакцию, а вызывающий — не держать
+    // свою: иначе каждый ожидающий занимает соединение из пула
+    public V get(K key, Function<K, V> mappingFunction) {
+        V cached = refreshExecutor == null
+                ? cache.get(key)
+                : cache.get(key, k -> scheduleRefresh(k, mappingFunction));
+        if (cached != null) {
+            return cached;
+        }
+        return loader.load(key, k -> {
+            long generation = cache.generation(k);
+            V loaded = mappingFunction.apply(k);
+            if (loaded != null) {
+                cache.putIfUnchanged(k, loaded, generation);
+            }
+            return loaded;
+        });
+    }
+
+    // В транзакции значение попадает в кэш только после коммита: при откате
+    // другие потоки не увидят незакоммиченный снимок. Старая запись удаляется
+    // сразу, а загрузка, прочитавшая БД до коммита, будет перезаписана
+    public void put(K key, V value) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            cache.put(key, value);
+            publishAfterCommit(String.valueOf(key));
+            return;
+        }
+        cache.remove(key);
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        cache.put(key, value);
+                    }
+                });
+        publishAfterCommit(String.valueOf(key));
+    }
+
+    // Без рассылки: для прогрева кэша значениями, которые уже совпадают с БД
+    public void putLocal(K key, V value) {
+        cache.put(key, value);
+    }
+
+    public void remove(K key) {
+        cache.remove(key);
+        publishAfterCommit(String.valueOf(key));
+    }
+
+    // Удаляет запись сейчас и повторно после коммита текущей транзакции, чтобы
+    // параллельное чтение не закэшировало состояние до коммита
+    public void removeAfterCommit(K key) {
+        cache.remove(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            cache.remove(key);
+                        }
+                    });
+        }
+        publishAfterCommit(String.valueOf(key));
+    }
+
+    public void clear() {
+        cache.clear();
+        publishAfterCommit(InvalidationBus.ALL_KEYS);
+    }
+
+    public void clearAfterCommit() {
+        cache.clear();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            cache.clear();
+                        }
+                    });
+        }
+        publishAfterCommit(InvalidationBus.ALL_KEYS);
+    }
+
+    public List<SegmentedCache.EntrySnapshot<K, V>> hottest(int limit) {
+        return cache.hottest(limit);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public SingleFlightLoader.LoadStats loadStats() {
+        return loader.stats();
+    }
+
+    public RefreshStats refreshStats() {
+        return new RefreshStats(refreshesScheduled.sum(), refreshesSucceeded.sum(),
+                refreshesFailed.sum(), refreshesRejected.sum(),
+                refreshExecutor == null ? 0 : refreshExecutor.getQueue().size());
+    }
+
+    Duration cleanupPeriod() {
+        return cleanupPeriod;
+    }
+
+    // Инвалидация, пришедшая от другого экземпляра; дальше не рассылается
+    void invalidateLocal(Set<String> keys) {
+        if (keys.contains(InvalidationBus.ALL_KEYS)) {
+            cache.clear();
+            return;
+        }
+        for (String key : keys) {
+            try {
+                cache.remove(keyParser.apply(key));
+            } catch (RuntimeException e) {
+                log.warn("Ignoring invalid {} cache key '{}' from invalidation bus", name, key);
+            }
+        }
+    }
+
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
+    void shutdown() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdown();
+            try {
+                if (!refreshExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    refreshExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                refreshExecutor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        cache.clear();
+    }
+
+    // Соседи узнают об изменении только после коммита, иначе они могут успеть
+    // перечитать из БД старое состояние
+    private void publishAfterCommit(String key) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            bus.publish(name, key);
+                        }
+                    });
+        } else {
+            bus.publish(name, key);
+        }
+    }
+
+    private void scheduleRefresh(K key, Function<K, V> mappingFunction) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> refresh(key, mappingFunction));
+            refreshesScheduled.increment();
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(key);
+            refreshesRejected.increment();
+        }
+    }
+
+    private void refresh(K key, Function<K, V> mappingFunction) {
+        try {
+            long generation = cache.generation(key);
+            V loaded = mappingFunction.apply(key);
+            if (loaded != null) {
+                cache.putIfUnchanged(key, loaded, generation);
+            } else {
+                cache.remove(key);
+            }
+            refreshesSucceeded.increment();
+        } catch (RuntimeException e) {
+            refreshesFailed.increment();
+            log.warn("Failed to refresh {} cache entry {}: {}", name, key, e.getMessage());
+        } finally {
+            refreshing.remove(key);
+        }
+    }
+
+    private static ThreadPoolExecutor createRefreshExecutor(
+            String name, CacheSpec.RefreshAhead refreshAhead) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        int threads = Math.max(1, refreshAhead.getThreads());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, refreshAhead.getQueueCapacity())),
+                runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "CacheRefresh-" + name + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public record RefreshStats(long scheduled, long succeeded, long failed, long rejected,
+                               int queued) {
+    }
+}
@@ -0,0 +1,86 @@
+package com.kirill.meetyou.cache;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Шина поверх PostgreSQL LISTEN/NOTIFY. Отправка идёт через {@code pg_notify}
+ * из пула, приём — через отдельное долгоживущее соединение, которое
+ * переподключается при обрыве.
+ */
+@Slf4j
+public class PostgresInvalidationBus extends AbstractInvalidationBus {
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final InvalidationProperties properties;
+    private final Thread listenerThread;
+    private volatile boolean running = true;
+
+    public PostgresInvalidationBus(DataSource dataSource, InvalidationProperties properties) {
+        super(properties.getFlushInterval());
+        if (!properties.getChannel().matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid invalidation channel name: "
+                    + properties.getChannel());
+        }
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.properties = properties;
+        this.listenerThread = new Thread(this::listen, "CacheInvalidationListener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+    }
+
+    @Override
+    protected void send(String payload) {
+        jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", properties.getChannel(), payload);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        running = false;
+        listenerThread.interrupt();
+    }
+
+    private void listen() {
+        int pollTimeout = (int) Math.max(1, properties.getPollTimeout().toMillis());
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + properties.getChannel());
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.info("Listening for cache invalidations on channel '{}' as node {}",
+                        properties.getChannel(), getNodeId());
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeout);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        receive(notification.getParameter());
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Cache invalidation listener disconnected, retrying in {}: {}",
+                        properties.getReconnectDelay(), e.getMessage());
+                try {
+                    Thread.sleep(properties.getReconnectDelay().toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
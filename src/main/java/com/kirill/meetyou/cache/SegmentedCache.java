@@ -0,0 +1,494 @@
+package com.kirill.meetyou.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Конкурентный кэш с ограничением размера и TTL.
+ *
+ * <p>Ключи распределены по сегментам, у каждого своя блокировка. Чтение не берёт
+ * блокировку: факт обращения пишется в кольцевой буфер сегмента и применяется к
+ * очередям пачкой при следующей записи или при заполнении буфера. Вытеснение
+ * устроено по схеме W-TinyLFU: окно LRU на 1% ёмкости и основная SLRU-область,
+ * куда кандидат из окна допускается, только если по частотной оценке он
+ * популярнее жертвы.
+ *
+ * <p>Если задан {@code refreshAfter}, чтение более старой записи возвращает её
+ * сразу и вызывает переданное действие обновления; сама запись живёт до TTL.
+ */
+public class SegmentedCache<K, V> {
+    private static final int READ_BUFFER_SIZE = 64;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+    private static final int MAX_SEGMENTS = 64;
+    private static final int MIN_ENTRIES_PER_SEGMENT = 16;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final long ttlNanos;
+    private final long refreshAfterNanos;
+    private final EvictionPolicy policy;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public SegmentedCache(int maximumSize, Duration ttl) {
+        this(maximumSize, ttl, defaultSegmentCount(maximumSize));
+    }
+
+    public SegmentedCache(int maximumSize, Duration ttl, int segmentCount) {
+        this(maximumSize, ttl, segmentCount, null);
+    }
+
+    public SegmentedCache(int maximumSize, Duration ttl, int segmentCount,
+                          Duration refreshAfter) {
+        this(maximumSize, ttl, segmentCount, refreshAfter, EvictionPolicy.TINY_LFU);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SegmentedCache(int maximumSize, Duration ttl, int segmentCount,
+                          Duration refreshAfter, EvictionPolicy policy) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Размер кэша должен быть положительным");
+        }
+        int count = segmentCount > 0 ? segmentCount : defaultSegmentCount(maximumSize);
+        count = Integer.highestOneBit(Math.min(Math.min(count, MAX_SEGMENTS), maximumSize));
+
+        this.segments = (Segment[]) new SegmentedCache.Segment[count];
+        this.segmentMask = count - 1;
+        this.ttlNanos = ttl == null || ttl.isZero() || ttl.isNegative()
+                ? Long.MAX_VALUE : ttl.toNanos();
+        this.refreshAfterNanos = refreshAfter == null || refreshAfter.isZero()
+                || refreshAfter.isNegative() ? Long.MAX_VALUE : refreshAfter.toNanos();
+        this.policy = policy == null ? EvictionPolicy.TINY_LFU : policy;
+
+        for (int i = 0; i < count; i++) {
+            int capacity = maximumSize / count + (i < maximumSize % count ? 1 : 0);
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    public V get(K key) {
+        return get(key, null);
+    }
+
+    public V get(K key, Consumer<? super K> refreshAction) {
+        Segment segment = segmentFor(key);
+        Node<K, V> node = segment.data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+
+        long now = System.nanoTime();
+        if (isExpired(node, now)) {
+            missCount.increment();
+            segment.tryExpire(node, now);
+            return null;
+        }
+
+        hitCount.increment();
+        segment.recordRead(node);
+        V value = node.value;
+        if (refreshAction != null && refreshAfterNanos != Long.MAX_VALUE
+                && now - node.writeTime > refreshAfterNanos) {
+            refreshAction.accept(key);
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Ключ и значение кэша не могут быть null");
+        }
+        segmentFor(key).put(key, value, System.nanoTime());
+    }
+
+    /**
+     * Номер версии сегмента ключа; растёт при каждом put, remove и clear.
+     * Загрузчик берёт его до чтения из БД и передаёт в {@link #putIfUnchanged},
+     * чтобы поздний результат не затёр запись, изменённую или удалённую за время
+     * загрузки.
+     */
+    public long generation(K key) {
+        return segmentFor(key).generation;
+    }
+
+    // false, если сегмент менялся после generation; версию сам не увеличивает
+    public boolean putIfUnchanged(K key, V value, long generation) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("Ключ и значение кэша не могут быть null");
+        }
+        return segmentFor(key).putIfUnchanged(key, value, generation, System.nanoTime());
+    }
+
+    public void remove(K key) {
+        if (key != null) {
+            segmentFor(key).remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public void cleanUp() {
+        long now = System.nanoTime();
+        for (Segment segment : segments) {
+            segment.expireEntries(now);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.data.size();
+        }
+        return size;
+    }
+
+    // Живые записи, отсортированные по оценке частоты обращений (самые горячие первыми)
+    public List<EntrySnapshot<K, V>> hottest(int limit) {
+        List<EntrySnapshot<K, V>> entries = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Segment segment : segments) {
+            segment.collect(entries, now);
+        }
+        entries.sort(Comparator.comparingInt(EntrySnapshot<K, V>::frequency).reversed());
+        return entries.size() > limit ? new ArrayList<>(entries.subList(0, limit)) : entries;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(size(), hitCount.sum(), missCount.sum(), evictionCount.sum());
+    }
+
+    private Segment segmentFor(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return segments[h & segmentMask];
+    }
+
+    private boolean isExpired(Node<K, V> node, long now) {
+        return ttlNanos != Long.MAX_VALUE && now - node.writeTime > ttlNanos;
+    }
+
+    private static int defaultSegmentCount(int maximumSize) {
+        int byCpu = Runtime.getRuntime().availableProcessors() * 2;
+        int bySize = Math.max(1, maximumSize / MIN_ENTRIES_PER_SEGMENT);
+        int count = Math.min(Math.min(byCpu, bySize), MAX_SEGMENTS);
+        return Integer.highestOneBit(Math.max(1, count));
+    }
+
+    private final class Segment extends ReentrantLock {
+        private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+        private final AtomicReferenceArray<Node<K, V>> readBuffer =
+                new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        private final AtomicLong readBufferWriteCount = new AtomicLong();
+        private volatile long readBufferReadCount;
+
+        private final NodeDeque<K, V> window = new NodeDeque<>();
+        private final NodeDeque<K, V> probation = new NodeDeque<>();
+        private final NodeDeque<K, V> protectedQueue = new NodeDeque<>();
+        private final FrequencySketch sketch;
+        private final int maxWindow;
+        private final int maxMain;
+        private final int maxProtected;
+        // Пишется только под блокировкой сегмента
+        private volatile long generation;
+
+        Segment(int capacity) {
+            this.sketch = new FrequencySketch(capacity);
+            this.maxWindow = Math.max(1, capacity / 100);
+            this.maxMain = capacity - maxWindow;
+            this.maxProtected = (int) (maxMain * 0.8);
+        }
+
+        void recordRead(Node<K, V> node) {
+            long index = readBufferWriteCount.getAndIncrement();
+            readBuffer.lazySet((int) (index & READ_BUFFER_MASK), node);
+            if (index + 1 - readBufferReadCount >= DRAIN_THRESHOLD && tryLock()) {
+                try {
+                    drainReadBuffer();
+                } finally {
+                    unlock();
+                }
+            }
+        }
+
+        void put(K key, V value, long now) {
+            lock();
+            try {
+                generation++;
+                store(key, value, now);
+            } finally {
+                unlock();
+            }
+        }
+
+        boolean putIfUnchanged(K key, V value, long expected, long now) {
+            lock();
+            try {
+                if (generation != expected) {
+                    return false;
+                }
+                store(key, value, now);
+                return true;
+            } finally {
+                unlock();
+            }
+        }
+
+        private void store(K key, V value, long now) {
+            drainReadBuffer();
+            Node<K, V> existing = data.get(key);
+            if (existing != null) {
+                existing.value = value;
+                existing.writeTime = now;
+                onAccess(existing);
+                return;
+            }
+
+            Node<K, V> node = new Node<>(key, value, now);
+            data.put(key, node);
+            sketch.increment(key);
+            window.addLast(node, Node.WINDOW);
+            evict();
+        }
+
+        void remove(K key) {
+            lock();
+            try {
+                generation++;
+                Node<K, V> node = data.remove(key);
+                if (node != null) {
+                    unlink(node);
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        void tryExpire(Node<K, V> node, long now) {
+            if (!tryLock()) {
+                return;
+            }
+            try {
+                if (node.queue != Node.DEAD && isExpired(node, now)
+                        && data.remove(node.key, node)) {
+                    unlink(node);
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        void expireEntries(long now) {
+            lock();
+            try {
+                drainReadBuffer();
+                data.values().removeIf(node -> {
+                    if (isExpired(node, now)) {
+                        unlink(node);
+                        return true;
+                    }
+                    return false;
+                });
+            } finally {
+                unlock();
+            }
+        }
+
+        void collect(List<EntrySnapshot<K, V>> entries, long now) {
+            lock();
+            try {
+                drainReadBuffer();
+                for (Node<K, V> node : data.values()) {
+                    if (!isExpired(node, now)) {
+                        entries.add(new EntrySnapshot<>(node.key, node.value,
+                                now - node.writeTime, sketch.frequency(node.key)));
+                    }
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            lock();
+            try {
+                generation++;
+                drainReadBuffer();
+                data.values().forEach(this::unlink);
+                data.clear();
+            } finally {
+                unlock();
+            }
+        }
+
+        private void drainReadBuffer() {
+            long end = readBufferWriteCount.get();
+            long start = Math.max(readBufferReadCount, end - READ_BUFFER_SIZE);
+            for (long i = start; i < end; i++) {
+                Node<K, V> node = readBuffer.getAndSet((int) (i & READ_BUFFER_MASK), null);
+                if (node != null) {
+                    onAccess(node);
+                }
+            }
+            readBufferReadCount = end;
+        }
+
+        private void onAccess(Node<K, V> node) {
+            switch (node.queue) {
+                case Node.WINDOW -> window.moveToBack(node);
+                case Node.PROBATION -> {
+                    probation.remove(node);
+                    protectedQueue.addLast(node, Node.PROTECTED);
+                    while (protectedQueue.size > maxProtected) {
+                        Node<K, V> demoted = protectedQueue.pollFirst();
+                        probation.addLast(demoted, Node.PROBATION);
+                    }
+                }
+                case Node.PROTECTED -> protectedQueue.moveToBack(node);
+                default -> {
+                    return;
+                }
+            }
+            sketch.increment(node.key);
+        }
+
+        private void evict() {
+            while (window.size > maxWindow) {
+                Node<K, V> candidate = window.pollFirst();
+                if (probation.size + protectedQueue.size < maxMain) {
+                    probation.addLast(candidate, Node.PROBATION);
+                    continue;
+                }
+
+                Node<K, V> victim = probation.size > 0
+                        ? probation.peekFirst() : protectedQueue.peekFirst();
+                if (victim != null && (policy == EvictionPolicy.LRU
+                        || sketch.frequency(candidate.key) > sketch.frequency(victim.key))) {
+                    evictNode(victim);
+                    probation.addLast(candidate, Node.PROBATION);
+                } else {
+                    candidate.queue = Node.DEAD;
+                    removeEvicted(candidate);
+                }
+            }
+        }
+
+        private void evictNode(Node<K, V> node) {
+            unlink(node);
+            removeEvicted(node);
+        }
+
+        private void removeEvicted(Node<K, V> node) {
+            if (data.remove(node.key, node)) {
+                evictionCount.increment();
+            }
+        }
+
+        private void unlink(Node<K, V> node) {
+            switch (node.queue) {
+                case Node.WINDOW -> window.remove(node);
+                case Node.PROBATION -> probation.remove(node);
+                case Node.PROTECTED -> protectedQueue.remove(node);
+                default -> {
+                    return;
+                }
+            }
+            node.queue = Node.DEAD;
+        }
+    }
+
+    public record EntrySnapshot<K, V>(K key, V value, long ageNanos, int frequency) {
+    }
+
+    private static final class Node<K, V> {
+        static final int DEAD = 0;
+        static final int WINDOW = 1;
+        static final int PROBATION = 2;
+        static final int PROTECTED = 3;
+
+        final K key;
+        volatile V value;
+        volatile long writeTime;
+        Node<K, V> prev;
+        Node<K, V> next;
+        int queue;
+
+        Node(K key, V value, long writeTime) {
+            this.key = key;
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+
+    // Интрузивный двусвязный список, доступ только под блокировкой сегмента
+    private static final class NodeDeque<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+        private int size;
+
+        Node<K, V> peekFirst() {
+            return head;
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> first = head;
+            if (first != null) {
+                remove(first);
+            }
+            return first;
+        }
+
+        void addLast(Node<K, V> node, int queue) {
+            node.queue = queue;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != tail) {
+                int queue = node.queue;
+                remove(node);
+                addLast(node, queue);
+            }
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+    }
+}
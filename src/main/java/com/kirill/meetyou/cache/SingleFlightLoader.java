@@ -0,0 +1,104 @@
+package com.kirill.meetyou.cache;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Склеивает одновременные загрузки одного и того же ключа: первый поток (лидер)
+ * выполняет загрузку, остальные ждут его результат.
+ *
+ * <p>Если лидер упал, ожидающие либо получают ту же ошибку ({@code shareFailures}),
+ * либо загружают значение сами. Если лидер не уложился в {@code loadTimeout},
+ * ожидающий либо загружает значение сам ({@code fallbackOnTimeout}), либо
+ * получает {@link IllegalStateException}.
+ */
+@Slf4j
+public class SingleFlightLoader<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final long timeoutNanos;
+    private final boolean shareFailures;
+    private final boolean fallbackOnTimeout;
+
+    private final LongAdder leaderLoads = new LongAdder();
+    private final LongAdder coalescedLoads = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public SingleFlightLoader(Duration loadTimeout, boolean shareFailures,
+                              boolean fallbackOnTimeout) {
+        this.timeoutNanos = loadTimeout == null || loadTimeout.isZero() || loadTimeout.isNegative()
+                ? 0 : loadTimeout.toNanos();
+        this.shareFailures = shareFailures;
+        this.fallbackOnTimeout = fallbackOnTimeout;
+    }
+
+    public V load(K key, Function<K, V> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing == null) {
+            return loadAsLeader(key, loader, future);
+        }
+
+        coalescedLoads.increment();
+        try {
+            return timeoutNanos > 0
+                    ? existing.get(timeoutNanos, TimeUnit.NANOSECONDS)
+                    : existing.get();
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            if (!fallbackOnTimeout) {
+                throw new IllegalStateException("Превышено время ожидания загрузки ключа " + key);
+            }
+            log.warn("Загрузка ключа {} не завершилась вовремя, загружаем самостоятельно", key);
+            return loader.apply(key);
+        } catch (ExecutionException e) {
+            if (shareFailures) {
+                throw propagate(e.getCause());
+            }
+            return loader.apply(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание загрузки ключа " + key + " прервано", e);
+        }
+    }
+
+    public LoadStats stats() {
+        return new LoadStats(leaderLoads.sum(), coalescedLoads.sum(),
+                failures.sum(), timeouts.sum());
+    }
+
+    private V loadAsLeader(K key, Function<K, V> loader, CompletableFuture<V> future) {
+        leaderLoads.increment();
+        try {
+            V value = loader.apply(key);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            failures.increment();
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    public record LoadStats(long leaderLoads, long coalescedLoads, long failures, long timeouts) {
+    }
+}
@@ -0,0 +1,389 @@
+package com.kirill.meetyou.cache;
+
+import com.kirill.meetyou.config.UnreadCounterProperties;
+import com.kirill.meetyou.repository.MessageBatchRepository;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Число непрочитанных сообщений получателя с разбивкой по отправителям без
+ * COUNT(*) по messages.
+ *
+ * <p>Счётчики получателя загружаются одним GROUP BY при первом обращении и дальше
+ * меняются после коммита: новое сообщение прибавляет единицу, сдвиг отметки
+ * прочтения вычитает число прочитанных. Изменения, пришедшие, пока счётчики
+ * получателя не загружены, пропускаются — загрузка увидит их в БД.
+ *
+ * <p>Запрос к БД идёт вне блокировок карты. Результат загрузки или сверки
+ * устанавливается, только если за время запроса к счётчикам получателя не
+ * применялось ни одно изменение и нет транзакций, которые уже изменили его
+ * сообщения, но ещё не применили изменение: иначе неизвестно, видел ли запрос
+ * это сообщение, и единица могла бы учесться дважды или потеряться. Такая
+ * загрузка отдаёт вызывающему прочитанное значение без кэширования, сверка
+ * откладывает получателя до следующего прохода.
+ *
+ * <p>Другие экземпляры получают id получателя через {@link InvalidationBus} и
+ * сбрасывают его счётчики до следующего обращения.
+ */
+@Slf4j
+@Component
+public class UnreadCounters {
+    static final String TOPIC = "unread-counters";
+    // Сколько раз withTotal пробует дождаться закэшированных счётчиков
+    private static final int WITH_TOTAL_ATTEMPTS = 3;
+
+    private final MessageBatchRepository messageBatchRepository;
+    private final InvalidationBus bus;
+    private final UnreadCounterProperties properties;
+    private final Map<Long, Counters> counters = new ConcurrentHashMap<>();
+    // Незавершённые транзакции с изменениями сообщений получателя
+    private final Map<Long, Integer> inFlight = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder corrected = new LongAdder();
+
+    public UnreadCounters(MessageBatchRepository messageBatchRepository, InvalidationBus bus,
+                          UnreadCounterProperties properties) {
+        this.messageBatchRepository = messageBatchRepository;
+        this.bus = bus;
+        this.properties = properties;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "UnreadCountersReconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        bus.subscribe(this::onRemoteChange);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        long interval = properties.getReconcileInterval().toMillis();
+        if (interval > 0) {
+            scheduler.scheduleWithFixedDelay(this::reconcileQuietly, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isLoaded(long receiverId) {
+        Counters entry = counters.get(receiverId);
+        return entry != null && !entry.isLoading();
+    }
+
+    public long total(long receiverId) {
+        return Math.max(0, counters(receiverId).total.sum());
+    }
+
+    // Только отправители с непрочитанными
+    public Map<Long, Long> bySender(long receiverId) {
+        Map<Long, Long> result = new HashMap<>();
+        counters(receiverId).bySender.forEach((senderId, count) -> {
+            long value = count.sum();
+            if (value > 0) {
+                result.put(senderId, value);
+            }
+        });
+        return result;
+    }
+
+    // notify выполняется под блокировкой ключа получателя сразу после изменения,
+    // даже если его счётчики не загружены, — см. withTotal
+    public void incrementAfterCommit(long receiverId, long senderId, Runnable notify) {
+        afterCommit(receiverId, entry -> {
+            entry.bySender.computeIfAbsent(senderId, sender -> new LongAdder()).increment();
+            entry.total.increment();
+        }, notify);
+    }
+
+    // count сообщений отправителя стали прочитанными. Без ограничения нулём:
+    // прибавление за одно из этих сообщений может прийти позже вычитания, и
+    // счётчик отправителя ненадолго уходит в минус, а не теряет единицу
+    public void markReadAfterCommit(long receiverId, long senderId, int count,
+                                    Runnable notify) {
+        afterCommit(receiverId, entry -> {
+            LongAdder unread = entry.bySender.computeIfAbsent(senderId,
+                    sender -> new LongAdder());
+            unread.add(-count);
+            entry.total.add(-count);
+            if (unread.sum() == 0) {
+                entry.bySender.remove(senderId);
+            }
+        }, notify);
+    }
+
+    /**
+     * Передаёт action число непрочитанных под блокировкой ключа получателя.
+     * Изменения, применённые раньше, в числе учтены и их notify уже выполнены;
+     * изменения после выполнят notify только после action. Так подписка на
+     * изменения и начальное число не теряют и не задваивают ни одного сообщения.
+     *
+     * <p>Если счётчики получателя никак не удаётся закэшировать из-за постоянных
+     * изменений, action получает последнее прочитанное из БД значение.
+     */
+    public <T> T withTotal(long receiverId, LongFunction<T> action) {
+        List<T> result = new ArrayList<>(1);
+        for (int attempt = 1; ; attempt++) {
+            Counters loaded = counters(receiverId);
+            boolean last = attempt == WITH_TOTAL_ATTEMPTS;
+            counters.compute(receiverId, (id, entry) -> {
+                if (entry != null && !entry.isLoading()) {
+                    result.add(action.apply(Math.max(0, entry.total.sum())));
+                } else if (last) {
+                    result.add(action.apply(Math.max(0, loaded.total.sum())));
+                }
+                return entry;
+            });
+            if (!result.isEmpty()) {
+                return result.get(0);
+            }
+        }
+    }
+
+    public CounterStats stats() {
+        return new CounterStats(counters.size(), hits.sum(), misses.sum(), corrected.sum());
+    }
+
+    private Counters counters(long receiverId) {
+        Counters entry = counters.get(receiverId);
+        if (entry != null && !entry.isLoading()) {
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        return load(receiverId);
+    }
+
+    // Одновременные промахи по получателю ждут один запрос: в карте на время
+    // загрузки лежит заглушка с future результата
+    private Counters load(long receiverId) {
+        evictIfFull();
+        Counters placeholder = Counters.loading();
+        Counters existing = counters.putIfAbsent(receiverId, placeholder);
+        if (existing != null) {
+            return existing.isLoading() ? existing.awaitLoaded() : existing;
+        }
+
+        Counters loaded;
+        try {
+            loaded = Counters.of(messageBatchRepository.findUnreadBySender(receiverId));
+        } catch (RuntimeException | Error e) {
+            counters.remove(receiverId, placeholder);
+            placeholder.loaded.completeExceptionally(e);
+            throw e;
+        }
+        counters.compute(receiverId, (id, entry) -> {
+            if (entry != placeholder) {
+                return entry;
+            }
+            return placeholder.version == 0 && !inFlight.containsKey(id) ? loaded : null;
+        });
+        placeholder.loaded.complete(loaded);
+        return loaded;
+    }
+
+    private void evictIfFull() {
+        Iterator<Long> keys = counters.keySet().iterator();
+        while (counters.size() >= properties.getMaxUsers() && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    // Получатель считается изменяемым с вызова в транзакции до применения
+    // изменения после коммита (или до отката)
+    private void afterCommit(long receiverId, Consumer<Counters> change, Runnable notify) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(receiverId, change, notify, false);
+            bus.publish(TOPIC, String.valueOf(receiverId));
+            return;
+        }
+        inFlight.merge(receiverId, 1, Integer::sum);
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status != STATUS_COMMITTED) {
+                            counters.compute(receiverId, (id, entry) -> {
+                                finishInFlight(id);
+                                return entry;
+                            });
+                            return;
+                        }
+                        apply(receiverId, change, notify, true);
+                        bus.publish(TOPIC, String.valueOf(receiverId));
+                    }
+                });
+    }
+
+    private void apply(long receiverId, Consumer<Counters> change, Runnable notify,
+                       boolean finishesInFlight) {
+        counters.compute(receiverId, (id, entry) -> {
+            if (entry != null) {
+                if (!entry.isLoading()) {
+                    change.accept(entry);
+                }
+                entry.version++;
+            }
+            if (finishesInFlight) {
+                finishInFlight(id);
+            }
+            notify.run();
+            return entry;
+        });
+    }
+
+    private void finishInFlight(long receiverId) {
+        inFlight.computeIfPresent(receiverId, (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void reconcileQuietly() {
+        try {
+            long start = System.currentTimeMillis();
+            long before = corrected.sum();
+            reconcile();
+            long fixed = corrected.sum() - before;
+            if (fixed > 0) {
+                log.info("Unread counters reconciled: {} receivers corrected in {} ms", fixed,
+                        System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to reconcile unread counters: {}", e.getMessage());
+        }
+    }
+
+    // Загруженные получатели сверяются пакетами; расходящиеся счётчики заменяются,
+    // если за время запроса они не менялись
+    private void reconcile() {
+        List<Long> receivers = new ArrayList<>(counters.keySet());
+        int batchSize = Math.max(1, properties.getReconcileBatchSize());
+        for (int from = 0; from < receivers.size(); from += batchSize) {
+            Map<Long, Counters> checked = new HashMap<>();
+            Map<Long, Long> versions = new HashMap<>();
+            for (Long receiverId : receivers.subList(from,
+                    Math.min(receivers.size(), from + batchSize))) {
+                Counters entry = counters.get(receiverId);
+                if (entry != null && !entry.isLoading()) {
+                    checked.put(receiverId, entry);
+                    versions.put(receiverId, entry.version);
+                }
+            }
+            if (checked.isEmpty()) {
+                continue;
+            }
+            Map<Long, Map<Long, Long>> actual =
+                    messageBatchRepository.findUnreadBySender(checked.keySet());
+            checked.forEach((receiverId, seen) -> {
+                Map<Long, Long> expected = actual.getOrDefault(receiverId, Map.of());
+                counters.computeIfPresent(receiverId, (id, entry) -> {
+                    if (entry != seen || entry.version != versions.get(id)
+                            || inFlight.containsKey(id) || entry.matches(expected)) {
+                        return entry;
+                    }
+                    corrected.increment();
+                    return Counters.of(expected);
+                });
+            });
+        }
+    }
+
+    private void onRemoteChange(String topic, Set<String> keys) {
+        if (!TOPIC.equals(topic)) {
+            return;
+        }
+        if (keys.contains(InvalidationBus.ALL_KEYS)) {
+            counters.clear();
+            return;
+        }
+        for (String key : keys) {
+            try {
+                counters.remove(Long.parseLong(key));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid user id '{}' from invalidation bus", key);
+            }
+        }
+    }
+
+    private static final class Counters {
+        private final LongAdder total = new LongAdder();
+        private final Map<Long, LongAdder> bySender = new ConcurrentHashMap<>();
+        // Не null у заглушки, пока идёт загрузка
+        private final CompletableFuture<Counters> loaded;
+        // Число применённых изменений; меняется только под блокировкой ключа
+        private volatile long version;
+
+        private Counters(CompletableFuture<Counters> loaded) {
+            this.loaded = loaded;
+        }
+
+        static Counters loading() {
+            return new Counters(new CompletableFuture<>());
+        }
+
+        static Counters of(Map<Long, Long> unread) {
+            Counters entry = new Counters(null);
+            unread.forEach((senderId, count) -> {
+                LongAdder adder = new LongAdder();
+                adder.add(count);
+                entry.bySender.put(senderId, adder);
+                entry.total.add(count);
+            });
+            return entry;
+        }
+
+        boolean isLoading() {
+            return loaded != null;
+        }
+
+        // Ошибка загрузки пробрасывается всем ожидающим
+        Counters awaitLoaded() {
+            try {
+                return loaded.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw e;
+            }
+        }
+
+        boolean matches(Map<Long, Long> unread) {
+            long expectedTotal = 0;
+            for (Map.Entry<Long, Long> sender : unread.entrySet()) {
+                LongAdder count = bySender.get(sender.getKey());
+                if (count == null || count.sum() != sender.getValue()) {
+                    return false;
+                }
+                expectedTotal += sender.getValue();
+            }
+            return total.sum() == expectedTotal;
+        }
+    }
+
+    public record CounterStats(int receivers, long hits, long misses, long corrected) {
+    }
+}
@@ -1,100 +1,60 @@
 package com.kirill.meetyou.cache;
 
-import com.kirill.meetyou.model.User;
-import jakarta.annotation.PreDestroy;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import com.kirill.meetyou.dto.UserSnapshot;
+import java.util.List;
+import java.util.function.Function;
 import org.springframework.stereotype.Component;
 
 @Component
 public class UserCache {
-    private static final int MAX_SIZE = 100;
-    private static final long TTL = 1L * 10 * 1000;
+    public static final String NAME = "users";
 
-    private final Map<Long, CacheEntry> cache;
-    private final ScheduledExecutorService scheduler;
+    private final NamedCache<Long, UserSnapshot> cache;
 
-    public UserCache() {
-        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<Long, CacheEntry> eldest) {
-                return size() > MAX_SIZE;
-            }
-        };
-
-        this.scheduler = Executors.newSingleThreadScheduledExecutor();
-        initCleanupTask();
+    public UserCache(UserCacheProperties properties, CacheRegistry registry) {
+        this.cache = registry.register(NAME, properties);
     }
 
-    public User get(Long id) {
-        synchronized (cache) {
-            CacheEntry entry = cache.get(id);
-            if (entry == null || entry.isExpired()) {
-                if (entry != null) {
-                    cache.remove(id);
-                }
-                return null;
-            }
-            return entry.user;
-        }
+    public UserSnapshot get(Long id) {
+        return cache.get(id);
     }
 
-    public void put(Long id, User user) {
-        synchronized (cache) {
-            cache.put(id, new CacheEntry(user));
-        }
+    // При промахе только один поток на id идёт в БД, остальные ждут его результат
+    public UserSnapshot get(Long id, Function<Long, UserSnapshot> mappingFunction) {
+        return cache.get(id, mappingFunction);
     }
 
-    public void remove(Long id) {
-        synchronized (cache) {
-            cache.remove(id);
-        }
+    public void put(Long id, UserSnapshot user) {
+        cache.put(id, user);
     }
 
-    @PreDestroy
-    public void cleanup() {
-        scheduler.shutdown();
-        try {
-            if (!scheduler.awaitTermination(1, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            scheduler.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
-        clear();
+    public void putLocal(Long id, UserSnapshot user) {
+        cache.putLocal(id, user);
     }
 
-    private void initCleanupTask() {
-        scheduler.scheduleAtFixedRate(this::clearExpired, TTL, TTL, TimeUnit.MILLISECONDS);
+    // Сейчас и ещё раз после коммита: чтение до коммита не оставит в кэше старую строку
+    public void removeAfterCommit(Long id) {
+        cache.removeAfterCommit(id);
     }
 
-    private void clearExpired() {
-        synchronized (cache) {
-            cache.entrySet().removeIf(entry -> entry.getValue().isExpired());
-        }
+    // Сейчас и ещё раз после коммита, как removeAfterCommit
+    public void clearAfterCommit() {
+        cache.clearAfterCommit();
     }
 
-    private void clear() {
-        synchronized (cache) {
-            cache.clear();
-        }
+    public List<SegmentedCache.EntrySnapshot<Long, UserSnapshot>> hottest(int limit) {
+        return cache.hottest(limit);
     }
 
-    private static class CacheEntry {
-        final User user;
-        final long timestamp;
+    public CacheStats stats() {
+        return cache.stats();
+    }
 
-        CacheEntry(User user) {
-            this.user = user;
-            this.timestamp = System.currentTimeMillis();
-        }
+    public SingleFlightLoader.LoadStats loadStats() {
+        return cache.loadStats();
+    }
 
-        boolean isExpired() {
-            return System.currentTimeMillis() - timestamp > TTL;
-        }
+    public NamedCache.RefreshStats refreshStats() {
+        return cache.refreshStats();
     }
-}
\ No newline at end of file
+}
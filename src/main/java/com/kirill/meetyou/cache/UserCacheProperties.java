@@ -0,0 +1,31 @@
+package com.kirill.meetyou.cache;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.cache.users")
+public class UserCacheProperties extends CacheSpec {
+    private Duration negativeTtl = Duration.ofSeconds(5);
+    private int negativeMaxSize = 10_000;
+    private boolean existenceFilterEnabled = true;
+
+    private Snapshot snapshot = new Snapshot();
+
+    @Getter
+    @Setter
+    public static class Snapshot {
+        private boolean enabled = true;
+        private String path = "cache/users.snapshot";
+        // 0 — столько же, сколько max-size
+        private int maxEntries = 0;
+        private Duration interval = Duration.ofMinutes(5);
+        // Через сколько после восстановления логировать hit ratio прогретого кэша
+        private Duration warmupReportDelay = Duration.ofMinutes(1);
+    }
+}
@@ -0,0 +1,283 @@
+package com.kirill.meetyou.cache;
+
+import com.kirill.meetyou.dto.UserSnapshot;
+import com.kirill.meetyou.dto.UserSnapshot.InterestRef;
+import com.kirill.meetyou.repository.UserRepository;
+import com.kirill.meetyou.repository.UserRepository.UserVersion;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Сохраняет самые горячие записи {@link UserCache} в бинарный файл при остановке
+ * (и периодически) и восстанавливает их при старте.
+ *
+ * <p>Для каждой записи хранится момент её загрузки. При восстановлении записи,
+ * чья строка в БД была изменена позже (updated_at), не имеет метки или удалена,
+ * отбрасываются. Переименование интереса тоже ставит метку всем его владельцам.
+ */
+@Slf4j
+@Component
+public class UserCacheSnapshotter {
+    private static final int MAGIC = 0x4d595543; // "MYUC"
+    private static final int VERSION = 2;
+    private static final int VALIDATION_BATCH_SIZE = 1000;
+    private static final long NULL_DATE = Long.MIN_VALUE;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    // Минимальный размер записи: loadedAt, id, две пустые строки, birth, age, число интересов
+    private static final int MIN_ENTRY_BYTES = 8 + 8 + 4 + 4 + 8 + 4 + 4;
+    // id и пустая строка
+    private static final int MIN_INTEREST_BYTES = 8 + 4;
+
+    private final UserCache userCache;
+    private final UserRepository userRepository;
+    private final UserCacheProperties.Snapshot properties;
+    private final int maxEntries;
+    private final ScheduledExecutorService scheduler;
+
+    public UserCacheSnapshotter(UserCache userCache, UserRepository userRepository,
+                                UserCacheProperties properties) {
+        this.userCache = userCache;
+        this.userRepository = userRepository;
+        this.properties = properties.getSnapshot();
+        this.maxEntries = this.properties.getMaxEntries() > 0
+                ? this.properties.getMaxEntries() : properties.getMaxSize();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "UserCacheSnapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void restoreOnStartup() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        restore();
+
+        long interval = properties.getInterval().toMillis();
+        if (interval > 0) {
+            scheduler.scheduleAtFixedRate(this::saveQuietly, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void saveOnShutdown() {
+        scheduler.shutdownNow();
+        if (properties.isEnabled()) {
+            saveQuietly();
+        }
+    }
+
+    void save() throws IOException {
+        List<SegmentedCache.EntrySnapshot<Long, UserSnapshot>> entries =
+                userCache.hottest(maxEntries);
+        long now = System.currentTimeMillis();
+
+        Path target = Paths.get(properties.getPath()).toAbsolutePath().normalize();
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(now);
+            out.writeInt(entries.size());
+            for (SegmentedCache.EntrySnapshot<Long, UserSnapshot> entry : entries) {
+                long loadedAt = now - TimeUnit.NANOSECONDS.toMillis(entry.ageNanos());
+                writeEntry(out, loadedAt, entry.value());
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        log.info("User cache snapshot saved: {} entries to {}", entries.size(), target);
+    }
+
+    void restore() {
+        Path source = Paths.get(properties.getPath()).toAbsolutePath().normalize();
+        if (!Files.exists(source)) {
+            log.info("User cache snapshot {} not found, starting cold", source);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        Map<Long, RestoredEntry> restored;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            restored = readEntries(buffer);
+        } catch (IOException | RuntimeException e) {
+            // Повреждённый или чужой файл не должен мешать старту: любая ошибка
+            // разбора означает холодный старт
+            log.warn("User cache snapshot {} is unreadable, starting cold: {}",
+                    source, e.getMessage());
+            return;
+        }
+
+        int accepted = 0;
+        List<Long> ids = new ArrayList<>(restored.keySet());
+        for (int from = 0; from < ids.size(); from += VALIDATION_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + VALIDATION_BATCH_SIZE,
+                    ids.size()));
+            for (UserVersion version : userRepository.findVersionsByIdIn(batch)) {
+                RestoredEntry entry = restored.get(version.getId());
+                if (isUnchangedSince(version.getUpdatedAt(), entry.loadedAt())) {
+                    userCache.putLocal(version.getId(), entry.user());
+                    accepted++;
+                }
+            }
+        }
+
+        CacheStats baseline = userCache.stats();
+        log.info("User cache warmed from snapshot in {} ms: {} of {} entries restored, "
+                        + "{} stale or deleted dropped",
+                System.currentTimeMillis() - start, accepted, restored.size(),
+                restored.size() - accepted);
+        scheduleWarmupReport(baseline);
+    }
+
+    private void scheduleWarmupReport(CacheStats baseline) {
+        long delay = properties.getWarmupReportDelay().toMillis();
+        if (delay <= 0) {
+            return;
+        }
+        scheduler.schedule(() -> {
+            CacheStats current = userCache.stats();
+            long hits = current.hitCount() - baseline.hitCount();
+            long misses = current.missCount() - baseline.missCount();
+            double ratio = hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+            log.info("User cache hit ratio in first {} s after warm start: {} ({} hits, "
+                    + "{} misses)", delay / 1000, String.format("%.3f", ratio), hits, misses);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to save user cache snapshot: {}", e.getMessage());
+        }
+    }
+
+    // Без метки время изменения неизвестно: запись считается изменённой
+    private static boolean isUnchangedSince(LocalDateTime updatedAt, long loadedAt) {
+        if (updatedAt == null) {
+            return false;
+        }
+        long updatedMillis = updatedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return updatedMillis <= loadedAt;
+    }
+
+    private static void writeEntry(DataOutputStream out, long loadedAt, UserSnapshot user)
+            throws IOException {
+        out.writeLong(loadedAt);
+        out.writeLong(user.id());
+        writeString(out, user.name());
+        writeString(out, user.email());
+        out.writeLong(user.birth() == null ? NULL_DATE : user.birth().toEpochDay());
+        out.writeInt(user.age() == null ? NULL_INT : user.age());
+        out.writeInt(user.interests().size());
+        for (InterestRef interest : user.interests()) {
+            out.writeLong(interest.id());
+            writeString(out, interest.interestType());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Map<Long, RestoredEntry> readEntries(ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IllegalStateException("unknown snapshot format");
+        }
+        long savedAt = buffer.getLong();
+        int count = checkedCount(buffer, buffer.getInt(), MIN_ENTRY_BYTES);
+        log.debug("Reading user cache snapshot from {} with {} entries",
+                Instant.ofEpochMilli(savedAt), count);
+
+        Map<Long, RestoredEntry> entries = new HashMap<>(Math.max(16, count * 2));
+        for (int i = 0; i < count; i++) {
+            long loadedAt = buffer.getLong();
+            long id = buffer.getLong();
+            String name = readString(buffer);
+            String email = readString(buffer);
+            long birth = buffer.getLong();
+            int age = buffer.getInt();
+            int interestCount = checkedCount(buffer, buffer.getInt(), MIN_INTEREST_BYTES);
+            List<InterestRef> interests = new ArrayList<>(interestCount);
+            for (int j = 0; j < interestCount; j++) {
+                interests.add(new InterestRef(buffer.getLong(), readString(buffer)));
+            }
+            UserSnapshot user = new UserSnapshot(id, name, email,
+                    birth == NULL_DATE ? null : LocalDate.ofEpochDay(birth),
+                    age == NULL_INT ? null : age, interests);
+            entries.put(id, new RestoredEntry(loadedAt, user));
+        }
+        if (buffer.hasRemaining()) {
+            throw new IllegalStateException("trailing bytes after last entry");
+        }
+        return entries;
+    }
+
+    // Число элементов из файла проверяется по оставшимся байтам до выделения
+    // памяти под них, иначе испорченный счётчик обернулся бы OutOfMemoryError
+    private static int checkedCount(ByteBuffer buffer, int count, int minBytes) {
+        if (count < 0 || count > buffer.remaining() / minBytes) {
+            throw new IllegalStateException("invalid element count " + count);
+        }
+        return count;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalStateException("invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private record RestoredEntry(long loadedAt, UserSnapshot user) {
+    }
+}
@@ -0,0 +1,176 @@
+package com.kirill.meetyou.cache;
+
+import com.kirill.meetyou.repository.UserRepository;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Быстрая проверка существования пользователя без запроса в БД.
+ *
+ * <p>Битсет живых id строится при старте и поддерживается create/delete/bulkCreate.
+ * До окончания построения битсет не используется. Отдельно хранится негативный
+ * кэш id, которые недавно не нашлись в БД. Ответ {@code false} из
+ * {@link #mightExist(Long)} означает, что пользователя точно нет.
+ *
+ * <p>Созданные и удалённые id рассылаются другим экземплярам через
+ * {@link InvalidationBus} после коммита, иначе соседний узел отвечал бы 404
+ * на только что созданного пользователя.
+ */
+@Slf4j
+@Component
+public class UserExistenceFilter {
+    static final String CREATED_TOPIC = "user-ids.created";
+    static final String DELETED_TOPIC = "user-ids.deleted";
+
+    private final UserRepository userRepository;
+    private final InvalidationBus bus;
+    private final boolean bitSetEnabled;
+    private final ConcurrentBitSet liveIds = new ConcurrentBitSet();
+    private final SegmentedCache<Long, Boolean> negativeCache;
+    private volatile boolean ready;
+
+    private final LongAdder filterRejections = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+
+    public UserExistenceFilter(UserRepository userRepository, UserCacheProperties properties,
+                               InvalidationBus bus) {
+        this.userRepository = userRepository;
+        this.bus = bus;
+        this.bitSetEnabled = properties.isExistenceFilterEnabled();
+        this.negativeCache = new SegmentedCache<>(properties.getNegativeMaxSize(),
+                properties.getNegativeTtl());
+        bus.subscribe(this::onRemoteChange);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        if (!bitSetEnabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try (Stream<Long> ids = userRepository.streamAllIds()) {
+            ids.forEach(liveIds::set);
+        }
+        ready = true;
+        log.info("User existence filter built: {} ids, {} KB in {} ms",
+                liveIds.cardinality(), liveIds.memoryBytes() / 1024,
+                System.currentTimeMillis() - start);
+    }
+
+    public boolean mightExist(Long id) {
+        if (id == null || id <= 0) {
+            return false;
+        }
+        if (negativeCache.get(id) != null) {
+            negativeHits.increment();
+            return false;
+        }
+        if (ready && !liveIds.get(id)) {
+            filterRejections.increment();
+            return false;
+        }
+        return true;
+    }
+
+    public void markExists(Long id) {
+        if (id == null) {
+            return;
+        }
+        setLive(id);
+        publishAfterCommit(CREATED_TOPIC, id);
+    }
+
+    public void markMissing(Long id) {
+        if (id != null && id > 0) {
+            negativeCache.put(id, Boolean.TRUE);
+        }
+    }
+
+    // Только после коммита удаления: при откате пользователь остаётся существующим
+    public void markDeletedAfterCommit(Long id) {
+        if (id == null) {
+            return;
+        }
+        Runnable apply = () -> {
+            setDeleted(id);
+            bus.publish(DELETED_TOPIC, String.valueOf(id));
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            apply.run();
+                        }
+                    });
+        } else {
+            apply.run();
+        }
+    }
+
+    public FilterStats stats() {
+        return new FilterStats(ready, liveIds.cardinality(), liveIds.memoryBytes(),
+                negativeCache.size(), filterRejections.sum(), negativeHits.sum());
+    }
+
+    private void setLive(long id) {
+        negativeCache.remove(id);
+        if (bitSetEnabled) {
+            liveIds.set(id);
+        }
+    }
+
+    private void setDeleted(long id) {
+        if (bitSetEnabled) {
+            liveIds.clear(id);
+        }
+        negativeCache.put(id, Boolean.TRUE);
+    }
+
+    private void publishAfterCommit(String topic, Long id) {
+        String key = String.valueOf(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            bus.publish(topic, key);
+                        }
+                    });
+        } else {
+            bus.publish(topic, key);
+        }
+    }
+
+    private void onRemoteChange(String topic, Set<String> keys) {
+        boolean created = CREATED_TOPIC.equals(topic);
+        if (!created && !DELETED_TOPIC.equals(topic)) {
+            return;
+        }
+        for (String key : keys) {
+            try {
+                long id = Long.parseLong(key);
+                if (created) {
+                    setLive(id);
+                } else {
+                    setDeleted(id);
+                }
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid user id '{}' from invalidation bus", key);
+            }
+        }
+    }
+
+    public record FilterStats(boolean ready, long liveIds, long bitSetBytes,
+                              long negativeEntries, long filterRejections, long negativeHits) {
+    }
+}
@@ -0,0 +1,20 @@
+package com.kirill.meetyou.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.search.bios")
+public class BioSearchProperties {
+    // Сжатый сегмент индекса на диске для быстрого старта
+    private boolean segmentEnabled = true;
+    private String segmentPath = "cache/bios.segment";
+    private Duration segmentInterval = Duration.ofMinutes(10);
+    // Сколько терминов максимум подставляется вместо префикса term*
+    private int maxPrefixExpansions = 64;
+}
@@ -0,0 +1,28 @@
+package com.kirill.meetyou.config;
+
+import com.kirill.meetyou.cache.InvalidationBus;
+import com.kirill.meetyou.cache.InvalidationProperties;
+import com.kirill.meetyou.cache.LoopbackInvalidationBus;
+import com.kirill.meetyou.cache.PostgresInvalidationBus;
+import javax.sql.DataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CacheInvalidationConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.cache.invalidation.mode", havingValue = "postgres")
+    public InvalidationBus postgresInvalidationBus(DataSource dataSource,
+                                                   InvalidationProperties properties) {
+        return new PostgresInvalidationBus(dataSource, properties);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.cache.invalidation.mode", havingValue = "loopback",
+            matchIfMissing = true)
+    public InvalidationBus loopbackInvalidationBus(InvalidationProperties properties) {
+        return new LoopbackInvalidationBus(properties.getFlushInterval());
+    }
+}
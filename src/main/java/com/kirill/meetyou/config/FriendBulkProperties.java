@@ -0,0 +1,17 @@
+package com.kirill.meetyou.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.friends.bulk")
+public class FriendBulkProperties {
+    // Сколько пар уходит одним JDBC-пакетом и коммитится одной транзакцией
+    private int batchSize = 1000;
+    // Сколько пар (add + remove) принимается за один запрос
+    private int maxPairs = 10_000;
+}
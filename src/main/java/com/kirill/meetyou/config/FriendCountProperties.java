@@ -0,0 +1,15 @@
+package com.kirill.meetyou.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.friends.counts")
+public class FriendCountProperties {
+    // Сверять users.friend_count с user_friends при старте (один проход по таблице)
+    private boolean reconcileOnStartup = true;
+}
@@ -0,0 +1,21 @@
+package com.kirill.meetyou.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.friends.path")
+public class FriendPathProperties {
+    // Глубина по умолчанию и верхняя граница для параметра maxDepth
+    private int defaultMaxDepth = 6;
+    private int maxDepth = 10;
+    // Сколько может длиться один поиск; по истечении возвращается «не найдено»
+    private Duration timeBudget = Duration.ofMillis(200);
+    // С какого размера фронт раскрывается параллельно
+    private int parallelThreshold = 10_000;
+}
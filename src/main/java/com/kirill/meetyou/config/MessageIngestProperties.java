@@ -0,0 +1,24 @@
+package com.kirill.meetyou.config;
+
+import com.kirill.meetyou.enums.MessageAckMode;
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.messages.ingest")
+public class MessageIngestProperties {
+    // Отправка через очередь с групповым коммитом вместо транзакции на сообщение
+    private boolean enabled = false;
+    private MessageAckMode ack = MessageAckMode.COMMIT;
+    private int capacity = 65_536;
+    private int maxBatchSize = 1000;
+    // Сколько ждать места в заполненной очереди, прежде чем ответить 503
+    private Duration enqueueTimeout = Duration.ofMillis(50);
+    // Сколько ждать коммита в режиме ack=commit
+    private Duration ackTimeout = Duration.ofSeconds(5);
+}
@@ -0,0 +1,28 @@
+package com.kirill.meetyou.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.messages.stream")
+public class MessageStreamProperties {
+    // Сколько событий может ждать отправки одному подключению; при переполнении
+    // медленный клиент отключается и догружает пропущенное через /conversation
+    private int queueCapacity = 256;
+    private Duration heartbeatInterval = Duration.ofSeconds(25);
+    // После таймаута EventSource переподключается сам
+    private Duration timeout = Duration.ofMinutes(30);
+    private int maxConnections = 60_000;
+    private int maxConnectionsPerUser = 8;
+    private int sendThreads = 8;
+    // Запись дольше этого считается зависшей: подключение отключается, а потоку
+    // отправки на время ожидания записи дают замену
+    private Duration writeTimeout = Duration.ofSeconds(10);
+    // Сколько зависших записей одновременно получают замену потока
+    private int maxStalledWrites = 64;
+}
@@ -0,0 +1,19 @@
+package com.kirill.meetyou.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.messages.unread")
+public class UnreadCounterProperties {
+    // Сколько получателей держать в памяти; лишние вытесняются и догружаются из БД
+    private int maxUsers = 200_000;
+    // Сверка загруженных счётчиков с messages; 0 — выключена
+    private Duration reconcileInterval = Duration.ofMinutes(5);
+    private int reconcileBatchSize = 500;
+}
@@ -0,0 +1,15 @@
+package com.kirill.meetyou.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.users.bulk")
+public class UserBulkProperties {
+    // Сколько строк вставляется и коммитится за одну транзакцию
+    private int chunkSize = 1000;
+}
@@ -0,0 +1,20 @@
+package com.kirill.meetyou.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.users.import")
+public class UserImportProperties {
+    // Куда временно сохраняется тело запроса до обработки
+    private String spoolDir = "imports";
+    // Сколько строк проверяется одним IN-запросом по email
+    private int validationBatchSize = 1000;
+    // Через сколько строк COPY завершается и транзакция коммитится
+    private int commitEvery = 100_000;
+    private int maxReportedErrors = 1000;
+}
@@ -0,0 +1,39 @@
+package com.kirill.meetyou.controller;
+
+import com.kirill.meetyou.dto.BioDto.SearchHit;
+import com.kirill.meetyou.service.BioService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/bios")
+@RequiredArgsConstructor
+@Tag(name = "Поиск по биографиям",
+        description = "Полнотекстовый поиск по биографиям и интересным фактам")
+public class BioSearchController {
+    private final BioService bioService;
+
+    @GetMapping("/search")
+    @Operation(summary = "Найти биографии",
+            description = "Ранжирует биографии и интересные факты по BM25. Поддерживает "
+                    + "префиксы (слово*) и фразы в кавычках")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Результаты поиска"),
+        @ApiResponse(responseCode = "400", description = "Пустой запрос или неверный limit"),
+        @ApiResponse(responseCode = "503", description = "Индекс ещё строится")
+    })
+    public ResponseEntity<List<SearchHit>> search(
+            @RequestParam String q,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(bioService.search(q, limit));
+    }
+}
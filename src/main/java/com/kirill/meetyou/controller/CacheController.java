@@ -0,0 +1,34 @@
+package com.kirill.meetyou.controller;
+
+import com.kirill.meetyou.cache.CacheRegistry;
+import com.kirill.meetyou.cache.CacheStats;
+import com.kirill.meetyou.cache.InvalidationBus;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/cache")
+@RequiredArgsConstructor
+@Tag(name = "Кэши", description = "Статистика именованных кэшей приложения")
+public class CacheController {
+    private final CacheRegistry cacheRegistry;
+
+    @Operation(summary = "Статистика кэшей",
+            description = "Размер, попадания, промахи и вытеснения по каждому кэшу")
+    @GetMapping("/stats")
+    public Map<String, CacheStats> getStats() {
+        return cacheRegistry.stats();
+    }
+
+    @Operation(summary = "Статистика межузловой инвалидации",
+            description = "Отправленные и полученные пакеты, схлопнутые ключи и задержки")
+    @GetMapping("/invalidation")
+    public InvalidationBus.InvalidationStats getInvalidationStats() {
+        return cacheRegistry.invalidationStats();
+    }
+}
@@ -1,9 +1,18 @@
 package com.kirill.meetyou.controller;
 
-import com.kirill.meetyou.model.User;
+import com.kirill.meetyou.dto.FriendBulkRequest;
+import com.kirill.meetyou.dto.FriendBulkResponse;
+import com.kirill.meetyou.dto.FriendCount;
+import com.kirill.meetyou.dto.FriendPage;
+import com.kirill.meetyou.dto.FriendPath;
+import com.kirill.meetyou.dto.FriendSuggestion;
+import com.kirill.meetyou.dto.MutualFriends;
+import com.kirill.meetyou.dto.UserSnapshot;
+import com.kirill.meetyou.index.FriendGraph;
 import com.kirill.meetyou.service.FriendService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import java.util.List;
 import lombok.RequiredArgsConstructor;
@@ -12,7 +21,9 @@ import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -45,11 +56,51 @@ public class FriendController {
         return ResponseEntity.ok().build();
     }
 
+    @PostMapping("/bulk")
+    @Operation(summary = "Массовое изменение дружбы",
+            description = "Применяет до max-pairs пар: сначала remove, затем add. "
+                    + "Возвращает итоги по парам и пропускную способность запроса")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Пары обработаны"),
+        @ApiResponse(responseCode = "400", description = "Слишком много пар в запросе")
+    })
+    public ResponseEntity<FriendBulkResponse> applyBulk(
+            @RequestBody FriendBulkRequest request) {
+        return ResponseEntity.ok(friendService.applyBulk(request));
+    }
+
+    @GetMapping("/{userId}")
+    @Operation(summary = "Друзья постранично",
+            description = "До limit друзей с id больше after в виде коротких карточек; "
+                    + "nextCursor передаётся в after для следующей страницы")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Страница друзей получена"),
+        @ApiResponse(responseCode = "400", description = "Неверные after или limit"),
+        @ApiResponse(responseCode = "404", description = "Пользователь не найден")
+    })
+    public ResponseEntity<FriendPage> getFriendsPage(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(friendService.getFriendsPage(userId, after, limit));
+    }
+
+    @GetMapping("/{userId}/count")
+    @Operation(summary = "Число друзей",
+            description = "Берётся из счётчиков в памяти без подсчёта по user_friends")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Число друзей получено"),
+        @ApiResponse(responseCode = "404", description = "Пользователь не найден")
+    })
+    public ResponseEntity<FriendCount> getFriendCount(@PathVariable Long userId) {
+        return ResponseEntity.ok(friendService.getFriendCount(userId));
+    }
+
     @GetMapping("/{userId}/all")
     @Operation(summary = "Получить всех друзей",
             description = "Возвращает список всех друзей указанного пользователя")
     @ApiResponse(responseCode = "200", description = "Список друзей успешно получен")
-    public ResponseEntity<List<User>> getAllFriends(@PathVariable Long userId) {
+    public ResponseEntity<List<UserSnapshot>> getAllFriends(@PathVariable Long userId) {
         return ResponseEntity.ok(friendService.getAllFriends(userId));
     }
 
@@ -62,4 +113,57 @@ public class FriendController {
             @PathVariable Long friendId) {
         return ResponseEntity.ok(friendService.checkFriendship(userId, friendId));
     }
-}
\ No newline at end of file
+
+    @GetMapping("/{userId}/mutual/{otherId}")
+    @Operation(summary = "Число общих друзей",
+            description = "Считает общих друзей двух пользователей по графу в памяти")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Число общих друзей получено"),
+        @ApiResponse(responseCode = "404", description = "Пользователь не найден"),
+        @ApiResponse(responseCode = "503", description = "Граф друзей ещё строится")
+    })
+    public ResponseEntity<MutualFriends> getMutualFriends(
+            @PathVariable Long userId,
+            @PathVariable Long otherId) {
+        return ResponseEntity.ok(friendService.countMutualFriends(userId, otherId));
+    }
+
+    @GetMapping("/{userId}/suggestions")
+    @Operation(summary = "Возможные друзья",
+            description = "Друзья друзей, отсортированные по числу общих друзей")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Список возможных друзей получен"),
+        @ApiResponse(responseCode = "404", description = "Пользователь не найден"),
+        @ApiResponse(responseCode = "503", description = "Граф друзей ещё строится")
+    })
+    public ResponseEntity<List<FriendSuggestion>> getSuggestions(
+            @PathVariable Long userId,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(friendService.suggestFriends(userId, limit));
+    }
+
+    @GetMapping("/{fromId}/path/{toId}")
+    @Operation(summary = "Цепочка знакомств",
+            description = "Кратчайшая цепочка друзей между двумя пользователями не длиннее "
+                    + "maxDepth шагов; пустой path, если цепочка не найдена")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Результат поиска получен"),
+        @ApiResponse(responseCode = "400", description = "Неверный maxDepth"),
+        @ApiResponse(responseCode = "404", description = "Пользователь не найден"),
+        @ApiResponse(responseCode = "503", description = "Граф друзей ещё строится")
+    })
+    public ResponseEntity<FriendPath> getPath(
+            @PathVariable Long fromId,
+            @PathVariable Long toId,
+            @RequestParam(required = false) Integer maxDepth) {
+        return ResponseEntity.ok(friendService.findPath(fromId, toId, maxDepth));
+    }
+
+    @GetMapping("/graph/stats")
+    @Operation(summary = "Статистика графа друзей",
+            description = "Число пользователей и связей, изменённые строки и объём памяти")
+    @ApiResponse(responseCode = "200", description = "Статистика получена")
+    public ResponseEntity<FriendGraph.GraphStats> getGraphStats() {
+        return ResponseEntity.ok(friendService.graphStats());
+    }
+}
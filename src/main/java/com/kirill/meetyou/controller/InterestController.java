@@ -1,5 +1,6 @@
 package com.kirill.meetyou.controller;
 
+import com.kirill.meetyou.dto.UserSnapshot.InterestRef;
 import com.kirill.meetyou.model.Interest;
 import com.kirill.meetyou.service.InterestService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -48,7 +49,7 @@ public class InterestController {
     @Operation(summary = "Получить интересы пользователя",
             description = "Возвращает все интересы указанного пользователя")
     @ApiResponse(responseCode = "200", description = "Интересы успешно получены")
-    public Set<Interest> getUserInterests(@PathVariable Long userId) {
+    public Set<InterestRef> getUserInterests(@PathVariable Long userId) {
         return interestService.getUserInterests(userId);
     }
 
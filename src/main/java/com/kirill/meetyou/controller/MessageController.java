@@ -1,15 +1,21 @@
 package com.kirill.meetyou.controller;
 
+import com.kirill.meetyou.cache.UnreadCounters;
+import com.kirill.meetyou.dto.IngestStats;
 import com.kirill.meetyou.dto.MessageDto;
+import com.kirill.meetyou.dto.MessagePage;
+import com.kirill.meetyou.dto.StreamStats;
 import com.kirill.meetyou.service.MessageService;
-import java.util.List;
+import java.util.Map;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/api/messages")
@@ -22,14 +28,37 @@ public class MessageController {
             @RequestParam Long senderId,
             @RequestParam Long receiverId,
             @RequestParam String content) {
-        return ResponseEntity.ok(messageService.sendMessage(senderId, receiverId, content));
+        MessageDto message = messageService.sendMessage(senderId, receiverId, content);
+        // Без id — принято в очередь записи, но ещё не сохранено
+        return message.getId() == null ? ResponseEntity.accepted().body(message)
+                : ResponseEntity.ok(message);
     }
 
     @GetMapping("/conversation")
-    public ResponseEntity<List<MessageDto>> getConversation(
+    public ResponseEntity<MessagePage> getConversation(
             @RequestParam Long user1Id,
-            @RequestParam Long user2Id) {
-        return ResponseEntity.ok(messageService.getConversation(user1Id, user2Id));
+            @RequestParam Long user2Id,
+            @RequestParam(required = false) Long before,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(messageService.getConversation(user1Id, user2Id, before, after,
+                limit));
+    }
+
+    // События message, unread и unread-total по SSE
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam Long userId) {
+        return messageService.openStream(userId);
+    }
+
+    @GetMapping("/ingest/stats")
+    public ResponseEntity<IngestStats> ingestStats() {
+        return ResponseEntity.ok(messageService.ingestStats());
+    }
+
+    @GetMapping("/stream/stats")
+    public ResponseEntity<StreamStats> streamStats() {
+        return ResponseEntity.ok(messageService.streamStats());
     }
 
     @GetMapping("/unread/count")
@@ -37,6 +66,16 @@ public class MessageController {
         return ResponseEntity.ok(messageService.getUnreadMessagesCount(userId));
     }
 
+    @GetMapping("/unread/by-sender")
+    public ResponseEntity<Map<Long, Long>> getUnreadBySender(@RequestParam Long userId) {
+        return ResponseEntity.ok(messageService.getUnreadBySender(userId));
+    }
+
+    @GetMapping("/unread/stats")
+    public ResponseEntity<UnreadCounters.CounterStats> unreadStats() {
+        return ResponseEntity.ok(messageService.unreadStats());
+    }
+
     @PostMapping("/mark-as-read")
     public ResponseEntity<Void> markMessagesAsRead(
             @RequestParam Long userId,
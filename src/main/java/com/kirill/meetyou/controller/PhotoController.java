@@ -1,5 +1,6 @@
 package com.kirill.meetyou.controller;
 
+import com.kirill.meetyou.dto.PhotoSnapshot;
 import com.kirill.meetyou.model.Photo;
 import com.kirill.meetyou.service.PhotoService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -74,9 +75,9 @@ public class PhotoController {
             description = "Возвращает все фотографии указанного пользователя")
     @ApiResponse(responseCode = "200", description = "Список фотографий успешно получен")
     @GetMapping
-    public ResponseEntity<List<Photo>> getAllPhotos(
+    public ResponseEntity<List<PhotoSnapshot>> getAllPhotos(
             @PathVariable Long userId) {
-        List<Photo> photos = photoService.getAllUserPhotos(userId);
+        List<PhotoSnapshot> photos = photoService.getAllUserPhotos(userId);
         return ResponseEntity.ok(photos);
     }
 
@@ -1,19 +1,29 @@
 package com.kirill.meetyou.controller;
 
 import com.kirill.meetyou.dto.BulkResponse;
+import com.kirill.meetyou.dto.ImportTask;
 import com.kirill.meetyou.dto.UserCreateDto;
+import com.kirill.meetyou.dto.UserMatch;
+import com.kirill.meetyou.dto.UserPage;
+import com.kirill.meetyou.dto.UserSnapshot;
 import com.kirill.meetyou.dto.UserUpdateDto;
+import com.kirill.meetyou.index.UserSuggestIndex;
 import com.kirill.meetyou.model.User;
-import com.kirill.meetyou.repository.UserRepository;
 import com.kirill.meetyou.service.InterestService;
+import com.kirill.meetyou.service.MatchService;
+import com.kirill.meetyou.service.UserExportService;
+import com.kirill.meetyou.service.UserImportService;
 import com.kirill.meetyou.service.UserService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
 import java.util.List;
 import java.util.Set;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -25,22 +35,62 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping(path = "api/users")
 @RequiredArgsConstructor
 public class UserController {
     private final UserService userService;
-    private final UserRepository userRepository;
     private final InterestService interestService;
+    private final UserImportService userImportService;
+    private final UserExportService userExportService;
+    private final MatchService matchService;
 
-    @Operation(summary = "Получить всех пользователей",
-            description = "Возвращает список всех пользователей системы")
+    @Operation(summary = "Получить пользователей постранично",
+            description = "Возвращает до limit пользователей с id больше after; "
+                    + "nextCursor передаётся в after для следующей страницы")
     @ApiResponse(responseCode = "200",
-            description = "Список пользователей успешно получен")
+            description = "Страница пользователей успешно получена")
     @GetMapping
-    public ResponseEntity<List<User>> findAll() {
-        return ResponseEntity.ok(userService.findAll());
+    public ResponseEntity<UserPage> findPage(
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(userService.findPage(after, limit));
+    }
+
+    @Operation(summary = "Выгрузить всех пользователей",
+            description = "Потоково отдаёт всех пользователей JSON-массивом, "
+                    + "память сервера не зависит от размера таблицы")
+    @ApiResponse(responseCode = "200", description = "Выгрузка начата")
+    @GetMapping(path = "/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> export() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(userExportService::exportAll);
+    }
+
+    @Operation(summary = "Автодополнение по имени и email",
+            description = "Id пользователей, у которых имя, одно из слов имени или email "
+                    + "начинается с prefix; сначала самые короткие совпадения")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Список id пользователей"),
+        @ApiResponse(responseCode = "400", description = "Пустой prefix или неверный limit"),
+        @ApiResponse(responseCode = "503", description = "Индекс ещё строится")
+    })
+    @GetMapping("/suggest")
+    public ResponseEntity<List<Long>> suggest(
+            @RequestParam String prefix,
+            @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(userService.suggest(prefix, limit));
+    }
+
+    @Operation(summary = "Статистика автодополнения",
+            description = "Размер префиксного дерева в памяти и задержки запросов")
+    @ApiResponse(responseCode = "200", description = "Статистика получена")
+    @GetMapping("/suggest/stats")
+    public ResponseEntity<UserSuggestIndex.SuggestStats> getSuggestStats() {
+        return ResponseEntity.ok(userService.suggestStats());
     }
 
     @Operation(summary = "Получить пользователя по ID",
@@ -50,12 +100,28 @@ public class UserController {
         @ApiResponse(responseCode = "404", description = "Пользователь не найден")
     })
     @GetMapping("/{id}")
-    public ResponseEntity<User> getById(@PathVariable Long id) {
+    public ResponseEntity<UserSnapshot> getById(@PathVariable Long id) {
         return ResponseEntity.ok(userService.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
                         "Юзер с id: " + id + " не найден")));
     }
 
+    @Operation(summary = "Похожие пользователи",
+            description = "Пользователи с наибольшим совпадением интересов; редкие "
+                    + "общие интересы весят больше. По умолчанию друзья исключаются")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Список похожих пользователей"),
+        @ApiResponse(responseCode = "404", description = "Пользователь не найден"),
+        @ApiResponse(responseCode = "503", description = "Индекс интересов ещё строится")
+    })
+    @GetMapping("/{id}/matches")
+    public ResponseEntity<List<UserMatch>> getMatches(
+            @PathVariable Long id,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "true") boolean excludeFriends) {
+        return ResponseEntity.ok(matchService.findMatches(id, limit, excludeFriends));
+    }
+
     @Operation(summary = "Создать пользователя",
             description = "Создает нового пользователя в системе")
     @ApiResponse(responseCode = "201", description = "Пользователь успешно создан")
@@ -72,6 +138,35 @@ public class UserController {
         return userService.bulkCreate(userDtos);
     }
 
+    @Operation(summary = "Потоковый импорт пользователей",
+            description = "Принимает NDJSON (application/x-ndjson) или CSV (text/csv) "
+                    + "с заголовком name,email,birth и запускает асинхронный импорт")
+    @ApiResponse(responseCode = "202", description = "Импорт запущен")
+    @PostMapping(path = "/import", consumes = {"application/x-ndjson", "text/csv"})
+    public ResponseEntity<ImportTask> startImport(HttpServletRequest request)
+            throws IOException {
+        String format = MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(MediaType.parseMediaType("text/csv"))
+                ? UserImportService.FORMAT_CSV : UserImportService.FORMAT_NDJSON;
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(userImportService.startImport(request.getInputStream(), format));
+    }
+
+    @Operation(summary = "Статус импорта пользователей",
+            description = "Количество прочитанных, импортированных и отклонённых строк")
+    @ApiResponses({
+        @ApiResponse(responseCode = "200", description = "Статус получен"),
+        @ApiResponse(responseCode = "404", description = "Задача не найдена")
+    })
+    @GetMapping("/import/{taskId}")
+    public ResponseEntity<ImportTask> getImportStatus(@PathVariable String taskId) {
+        ImportTask task = userImportService.getStatus(taskId);
+        if (task == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(task);
+    }
+
     @Operation(summary = "Удалить пользователя",
             description = "Удаляет пользователя по его идентификатору")
     @ApiResponses({
@@ -103,10 +198,12 @@ public class UserController {
     @ApiResponse(responseCode = "200",
             description = "Список пользователей успешно получен")
     @GetMapping("/by-interest")
-    public ResponseEntity<List<User>> getUsersByInterest(
-            @RequestParam String interestType) {
+    public ResponseEntity<List<UserSnapshot>> getUsersByInterest(
+            @RequestParam String interestType,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
         String formattedInterest = interestService.formatInterestName(interestType);
-        return ResponseEntity.ok(userRepository.findUsersByInterestType(formattedInterest));
+        return ResponseEntity.ok(userService.findByInterest(formattedInterest, after, limit));
     }
 
     @Operation(summary = "Поиск по всем интересам",
@@ -116,14 +213,15 @@ public class UserController {
         @ApiResponse(responseCode = "400", description = "Не указаны интересы для поиска")
     })
     @GetMapping("/by-all-interests")
-    public ResponseEntity<List<User>> getUsersByAllInterests(
-            @RequestParam(required = false) Set<String> interestTypes) {
+    public ResponseEntity<List<UserSnapshot>> getUsersByAllInterests(
+            @RequestParam(required = false) Set<String> interestTypes,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
         if (interestTypes == null || interestTypes.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
                     "Не указаны интересы для поиска");
         }
-        return ResponseEntity.ok(userRepository.findUsersByAllInterestTypes(interestTypes,
-                interestTypes.size()));
+        return ResponseEntity.ok(userService.findByAllInterests(interestTypes, after, limit));
     }
 
     @Operation(summary = "Поиск по любому из интересов",
@@ -134,12 +232,14 @@ public class UserController {
         @ApiResponse(responseCode = "400", description = "Не указаны интересы для поиска")
     })
     @GetMapping("/by-any-interest")
-    public ResponseEntity<List<User>> getUsersByAnyInterest(
-            @RequestParam Set<String> interestTypes) {
+    public ResponseEntity<List<UserSnapshot>> getUsersByAnyInterest(
+            @RequestParam Set<String> interestTypes,
+            @RequestParam(required = false) Long after,
+            @RequestParam(required = false) Integer limit) {
         if (interestTypes == null || interestTypes.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
                     "Не указаны интересы для поиска");
         }
-        return ResponseEntity.ok(userRepository.findUsersByAnyInterestTypes(interestTypes));
+        return ResponseEntity.ok(userService.findByAnyInterest(interestTypes, after, limit));
     }
 }
\ No newline at end of file
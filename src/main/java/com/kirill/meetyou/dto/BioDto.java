@@ -46,4 +46,13 @@ public class BioDto {
         @Size(max = 150)
         public String interestFact;
     }
-}
\ No newline at end of file
+
+    @Data
+    @Builder
+    public static class SearchHit {
+        private Long userId;
+        private String bio;
+        private String interestFact;
+        private double score;
+    }
+}
@@ -0,0 +1,7 @@
+package com.kirill.meetyou.dto;
+
+import java.util.List;
+
+// Пары, которые нужно подружить (add) и раздружить (remove)
+public record FriendBulkRequest(List<FriendPair> add, List<FriendPair> remove) {
+}
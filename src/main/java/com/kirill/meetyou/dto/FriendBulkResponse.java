@@ -0,0 +1,10 @@
+package com.kirill.meetyou.dto;
+
+import java.util.List;
+
+// skipped — пары без изменений (уже друзья, не друзья, нет пользователя);
+// failed — пары из пакетов, которые не удалось записать
+public record FriendBulkResponse(int added, int removed, int skipped, int failed,
+                                 List<String> errors, long elapsedMillis,
+                                 double pairsPerSecond) {
+}
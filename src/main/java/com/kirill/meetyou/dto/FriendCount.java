@@ -0,0 +1,4 @@
+package com.kirill.meetyou.dto;
+
+public record FriendCount(Long userId, int count) {
+}
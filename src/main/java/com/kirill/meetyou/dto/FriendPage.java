@@ -0,0 +1,7 @@
+package com.kirill.meetyou.dto;
+
+import java.util.List;
+
+// nextCursor передаётся в after за следующей страницей; null — страниц больше нет
+public record FriendPage(List<FriendSummary> items, Long nextCursor) {
+}
@@ -0,0 +1,4 @@
+package com.kirill.meetyou.dto;
+
+public record FriendPair(Long userId, Long friendId) {
+}
@@ -0,0 +1,9 @@
+package com.kirill.meetyou.dto;
+
+import java.util.List;
+
+// Кратчайшая цепочка друзей от from до to включительно; пустая, если не найдена
+// за maxDepth шагов или за отведённое время (тогда timedOut = true)
+public record FriendPath(Long from, Long to, List<Long> path, Integer degrees,
+                         boolean timedOut, long visited) {
+}
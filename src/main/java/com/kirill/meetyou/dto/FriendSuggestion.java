@@ -0,0 +1,5 @@
+package com.kirill.meetyou.dto;
+
+// Возможный друг: друг друзей и число общих с ним друзей
+public record FriendSuggestion(Long userId, int mutualFriends) {
+}
@@ -0,0 +1,5 @@
+package com.kirill.meetyou.dto;
+
+// Друг в постраничном списке: только то, что нужно для карточки
+public record FriendSummary(Long id, String name, Integer age, int friendCount) {
+}
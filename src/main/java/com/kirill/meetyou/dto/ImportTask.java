@@ -0,0 +1,22 @@
+package com.kirill.meetyou.dto;
+
+import com.kirill.meetyou.enums.ImportTaskStatus;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.Data;
+
+@Data
+public class ImportTask {
+    private String id;
+    private String format;
+    private volatile ImportTaskStatus status;
+    private volatile long rowsRead;
+    private volatile long rowsImported;
+    private volatile long rowsRejected;
+    // Первые отклонённые строки с номером и причиной (не больше max-reported-errors)
+    private List<String> rejectedLines = new CopyOnWriteArrayList<>();
+    private String error;
+    private LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+}
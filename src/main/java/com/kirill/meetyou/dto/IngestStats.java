@@ -0,0 +1,9 @@
+package com.kirill.meetyou.dto;
+
+import com.kirill.meetyou.enums.MessageAckMode;
+
+public record IngestStats(boolean enabled, MessageAckMode ack, int queueDepth, int capacity,
+                          long enqueued, long rejected, long written, long failed,
+                          long batches, double avgBatchSize, int maxBatchSize,
+                          double avgCommitMillis) {
+}
@@ -1,5 +1,6 @@
 package com.kirill.meetyou.dto;
 
+import com.kirill.meetyou.model.Message;
 import java.time.LocalDateTime;
 import lombok.Builder;
 import lombok.Getter;
@@ -13,4 +14,20 @@ public class MessageDto {
     private Long senderId;
     private Long receiverId;
     private boolean isRead;
-}
\ No newline at end of file
+
+    public static MessageDto from(Message message) {
+        return from(message, message.isRead());
+    }
+
+    // read — по отметке прочтения получателя, колонка is_read больше не ведётся
+    public static MessageDto from(Message message, boolean read) {
+        return MessageDto.builder()
+                .id(message.getId())
+                .content(message.getContent())
+                .timestamp(message.getTimestamp())
+                .senderId(message.getSender().getId())
+                .receiverId(message.getReceiver().getId())
+                .isRead(read)
+                .build();
+    }
+}
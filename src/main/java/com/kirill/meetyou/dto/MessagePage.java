@@ -0,0 +1,8 @@
+package com.kirill.meetyou.dto;
+
+import java.util.List;
+
+// Сообщения по возрастанию времени; before передаётся в before для более старых,
+// after — в after для более новых. null, если в эту сторону сообщений нет
+public record MessagePage(List<MessageDto> items, Long before, Long after) {
+}
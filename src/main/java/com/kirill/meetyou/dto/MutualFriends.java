@@ -0,0 +1,5 @@
+package com.kirill.meetyou.dto;
+
+// Число общих друзей двух пользователей
+public record MutualFriends(Long userId, Long otherId, int count) {
+}
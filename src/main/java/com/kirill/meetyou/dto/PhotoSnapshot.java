@@ -0,0 +1,17 @@
+package com.kirill.meetyou.dto;
+
+import com.kirill.meetyou.model.Photo;
+import java.time.LocalDate;
+
+// Неизменяемый снимок фотографии для кэша; в JSON совпадает с Photo
+public record PhotoSnapshot(
+        Long id,
+        String photoUrl,
+        String isMain,
+        LocalDate uploadDate) {
+
+    public static PhotoSnapshot from(Photo photo) {
+        return new PhotoSnapshot(photo.getId(), photo.getPhotoUrl(), photo.getIsMainString(),
+                photo.getUploadDate());
+    }
+}
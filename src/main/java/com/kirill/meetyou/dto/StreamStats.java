@@ -0,0 +1,5 @@
+package com.kirill.meetyou.dto;
+
+public record StreamStats(int connections, int users, long queuedEvents, long sentEvents,
+                          long droppedConnections, long stalledWrites) {
+}
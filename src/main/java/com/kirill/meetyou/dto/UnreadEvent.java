@@ -0,0 +1,5 @@
+package com.kirill.meetyou.dto;
+
+// Изменение числа непрочитанных сообщений от interlocutorId
+public record UnreadEvent(long interlocutorId, int delta) {
+}
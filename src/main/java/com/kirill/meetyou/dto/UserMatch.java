@@ -0,0 +1,7 @@
+package com.kirill.meetyou.dto;
+
+import java.util.List;
+
+// Похожий пользователь: общие интересы и счёт (сумма весов общих интересов)
+public record UserMatch(UserSnapshot user, List<String> sharedInterests, double score) {
+}
@@ -0,0 +1,7 @@
+package com.kirill.meetyou.dto;
+
+import java.util.List;
+
+// Страница пользователей; nextCursor передаётся в after для следующей страницы
+public record UserPage(List<UserSnapshot> items, Long nextCursor) {
+}
@@ -0,0 +1,43 @@
+package com.kirill.meetyou.dto;
+
+import com.kirill.meetyou.model.Interest;
+import com.kirill.meetyou.model.User;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+
+// Неизменяемый снимок пользователя для кэша: без связей JPA и ленивых коллекций
+public record UserSnapshot(
+        Long id,
+        String name,
+        String email,
+        LocalDate birth,
+        Integer age,
+        List<InterestRef> interests) {
+
+    public UserSnapshot {
+        interests = interests == null ? List.of() : List.copyOf(interests);
+    }
+
+    // Вызывать внутри транзакции, пока коллекция интересов доступна
+    public static UserSnapshot from(User user) {
+        List<InterestRef> interestRefs = user.getInterests().stream()
+                .map(InterestRef::from)
+                .sorted(Comparator.comparing(InterestRef::interestType))
+                .toList();
+        return new UserSnapshot(user.getId(), user.getName(), user.getEmail(),
+                user.getBirth(), user.getAge(), interestRefs);
+    }
+
+    // Только названия интересов, для индекса и подбора
+    public List<String> interestTypes() {
+        return interests.stream().map(InterestRef::interestType).toList();
+    }
+
+    // В JSON совпадает с Interest: {id, interestType}
+    public record InterestRef(Long id, String interestType) {
+        public static InterestRef from(Interest interest) {
+            return new InterestRef(interest.getId(), interest.getInterestType());
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.kirill.meetyou.enums;
+
+public enum ImportTaskStatus {
+    PENDING,
+    RUNNING,
+    SUCCESS,
+    FAILED
+}
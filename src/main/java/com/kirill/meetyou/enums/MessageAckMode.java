@@ -0,0 +1,9 @@
+package com.kirill.meetyou.enums;
+
+// Когда отвечать на отправку сообщения через очередь записи
+public enum MessageAckMode {
+    // Сразу после постановки в очередь: id ещё нет, сообщение теряется при падении узла
+    ENQUEUE,
+    // После коммита пакета, в который попало сообщение
+    COMMIT
+}
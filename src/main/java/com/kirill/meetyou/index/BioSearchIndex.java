@@ -0,0 +1,543 @@
+package com.kirill.meetyou.index;
+
+import com.kirill.meetyou.cache.InvalidationBus;
+import com.kirill.meetyou.config.BioSearchProperties;
+import com.kirill.meetyou.repository.BioRepository;
+import com.kirill.meetyou.repository.BioRepository.BioText;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Полнотекстовый индекс по биографиям и интересным фактам.
+ *
+ * <p>Документ — пользователь, текст — биография и факт. Термины хранятся в
+ * отсортированном словаре с позиционными постингами, поэтому поддерживаются
+ * префиксы ({@code term*}) и фразы в кавычках. Ранжирование — BM25.
+ *
+ * <p>Индекс обновляется после коммита изменений в {@code BioService}, другие
+ * экземпляры перечитывают изменённые биографии по сигналу из
+ * {@link InvalidationBus}. Периодически индекс сбрасывается в сжатый сегмент на
+ * диске; при старте сегмент загружается и догоняется изменениями из БД.
+ * Пользователи, изменённые во время загрузки, запоминаются и после неё
+ * перечитываются из БД, чтобы прочитанная раньше строка не затёрла новую.
+ */
+@Slf4j
+@Component
+public class BioSearchIndex {
+    static final String TOPIC = "bio-index";
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // Разрыв позиций между биографией и фактом, чтобы фраза не склеивала поля
+    private static final int FIELD_GAP = 16;
+    private static final long CATCH_UP_MARGIN_MILLIS = 60_000;
+
+    private final BioRepository bioRepository;
+    private final InvalidationBus bus;
+    private final BioSearchProperties properties;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ScheduledExecutorService scheduler;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<Long> changedDuringLoad = ConcurrentHashMap.newKeySet();
+
+    // термин -> (userId -> позиции по возрастанию)
+    private final TreeMap<String, Map<Long, int[]>> postings = new TreeMap<>();
+    // userId -> термины документа и его длина
+    private final Map<Long, Doc> docs = new HashMap<>();
+    private long totalLength;
+    private volatile boolean ready;
+    // До конца загрузки изменения только запоминаются в changedDuringLoad
+    private volatile boolean loading = true;
+    private volatile boolean dirty;
+
+    public BioSearchIndex(BioRepository bioRepository, InvalidationBus bus,
+                          BioSearchProperties properties,
+                          PlatformTransactionManager transactionManager) {
+        this.bioRepository = bioRepository;
+        this.bus = bus;
+        this.properties = properties;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "BioSearchSegment");
+            thread.setDaemon(true);
+            return thread;
+        });
+        bus.subscribe(this::onRemoteChange);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        boolean restored = properties.isSegmentEnabled() && restoreSegment();
+        if (!restored) {
+            readOnlyTransaction.executeWithoutResult(status -> {
+                try (Stream<BioText> texts = bioRepository.streamAllTexts()) {
+                    texts.forEach(this::index);
+                }
+            });
+            dirty = true;
+        }
+        loading = false;
+        // Изменения, закоммиченные во время чтения, могли не попасть в индекс или
+        // быть затёрты прочитанной раньше строкой
+        int changed = changedDuringLoad.size();
+        if (changed > 0) {
+            List<Long> userIds = new ArrayList<>(changedDuringLoad);
+            changedDuringLoad.removeAll(userIds);
+            reload(userIds);
+        }
+        ready = true;
+        log.info("Bio search index {} in {} ms: {} documents, {} terms, {} reloaded",
+                restored ? "restored from segment" : "built", System.currentTimeMillis() - start,
+                docs.size(), postings.size(), changed);
+
+        long interval = properties.getSegmentInterval().toMillis();
+        if (properties.isSegmentEnabled() && interval > 0) {
+            scheduler.scheduleWithFixedDelay(this::saveSegmentQuietly, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        if (properties.isSegmentEnabled() && ready) {
+            saveSegmentQuietly();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void indexAfterCommit(Long userId, String bio, String interestFact) {
+        afterCommit(() -> {
+            markChanged(userId);
+            index(userId, bio, interestFact);
+            bus.publish(TOPIC, String.valueOf(userId));
+        });
+    }
+
+    public void removeAfterCommit(Long userId) {
+        afterCommit(() -> {
+            markChanged(userId);
+            remove(userId);
+            bus.publish(TOPIC, String.valueOf(userId));
+        });
+    }
+
+    public List<SearchHit> search(String query, int limit) {
+        ParsedQuery parsed = ParsedQuery.parse(query);
+        if (parsed.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            int documentCount = docs.size();
+            if (documentCount == 0) {
+                return List.of();
+            }
+            double averageLength = (double) totalLength / documentCount;
+            Map<Long, Double> scores = new HashMap<>();
+            for (QueryTerm term : parsed.terms()) {
+                // Для префикса документ получает лучший из подходящих терминов
+                Map<Long, Double> termScores = new HashMap<>();
+                for (Map.Entry<String, Map<Long, int[]>> entry : expand(term).entrySet()) {
+                    Map<Long, int[]> termPostings = entry.getValue();
+                    double idf = idf(termPostings.size(), documentCount);
+                    termPostings.forEach((userId, positions) -> {
+                        double score = bm25(idf, positions.length,
+                                docs.get(userId).length(), averageLength);
+                        termScores.merge(userId, score, Math::max);
+                    });
+                }
+                termScores.forEach((userId, score) -> scores.merge(userId, score, Double::sum));
+            }
+
+            PriorityQueue<SearchHit> top = new PriorityQueue<>(
+                    Comparator.comparingDouble(SearchHit::score));
+            for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+                if (!matchesPhrases(entry.getKey(), parsed.phrases())) {
+                    continue;
+                }
+                top.add(new SearchHit(entry.getKey(), entry.getValue()));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            List<SearchHit> hits = new ArrayList<>(top);
+            hits.sort(Comparator.comparingDouble(SearchHit::score).reversed()
+                    .thenComparing(SearchHit::userId));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public IndexStats stats() {
+        lock.readLock().lock();
+        try {
+            return new IndexStats(ready, docs.size(), postings.size(), totalLength);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Под блокировкой только копируются карты: массивы позиций и Doc после
+    // записи в индекс не меняются, поэтому запись на диск идёт без блокировки
+    void saveSegment() throws IOException {
+        Path path = segmentPath();
+        long savedAt;
+        TreeMap<String, Map<Long, int[]>> postingsCopy = new TreeMap<>();
+        Map<Long, Doc> docsCopy;
+        lock.readLock().lock();
+        try {
+            savedAt = System.currentTimeMillis();
+            postings.forEach((term, termPostings) ->
+                    postingsCopy.put(term, new HashMap<>(termPostings)));
+            docsCopy = new HashMap<>(docs);
+            dirty = false;
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            BioSearchSegment.write(path, savedAt, postingsCopy, docsCopy);
+        } catch (IOException | RuntimeException e) {
+            dirty = true;
+            throw e;
+        }
+        log.info("Bio search segment saved: {} documents to {}", docsCopy.size(), path);
+    }
+
+    private boolean restoreSegment() {
+        BioSearchSegment.Contents segment;
+        try {
+            segment = BioSearchSegment.read(segmentPath());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Bio search segment is unreadable, rebuilding: {}", e.getMessage());
+            return false;
+        }
+        if (segment == null) {
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            postings.putAll(segment.postings());
+            docs.putAll(segment.docs());
+            docs.values().forEach(doc -> totalLength += doc.length());
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // Догоняем изменения после сохранения сегмента (с запасом на расхождение часов
+        // между узлами) и убираем удалённые биографии
+        LocalDateTime since = LocalDateTime.ofInstant(
+                Instant.ofEpochMilli(segment.savedAt() - CATCH_UP_MARGIN_MILLIS),
+                ZoneId.systemDefault());
+        readOnlyTransaction.executeWithoutResult(status -> {
+            List<BioText> changed = bioRepository.findTextsChangedSince(since);
+            changed.forEach(this::index);
+            Set<Long> stale = new HashSet<>(docs.keySet());
+            try (Stream<Long> ids = bioRepository.streamAllUserIds()) {
+                ids.forEach(stale::remove);
+            }
+            stale.forEach(this::remove);
+            log.info("Bio search segment caught up: {} changed, {} removed", changed.size(),
+                    stale.size());
+            dirty = !changed.isEmpty() || !stale.isEmpty();
+        });
+        return true;
+    }
+
+    private void saveSegmentQuietly() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            saveSegment();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to save bio search segment: {}", e.getMessage());
+        }
+    }
+
+    private Path segmentPath() {
+        return Paths.get(properties.getSegmentPath()).toAbsolutePath().normalize();
+    }
+
+    private void index(BioText text) {
+        index(text.getUserId(), text.getBio(), text.getInterestFact());
+    }
+
+    private void index(Long userId, String bio, String interestFact) {
+        Map<String, List<Integer>> positions = new HashMap<>();
+        int length = tokenize(bio, 0, positions);
+        length = tokenize(interestFact, length + FIELD_GAP, positions);
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(userId);
+            for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+                int[] termPositions = entry.getValue().stream().mapToInt(Integer::intValue)
+                        .toArray();
+                postings.computeIfAbsent(entry.getKey(), k -> new HashMap<>())
+                        .put(userId, termPositions);
+            }
+            int tokenCount = positions.values().stream().mapToInt(List::size).sum();
+            docs.put(userId, new Doc(tokenCount, positions.keySet().toArray(String[]::new)));
+            totalLength += tokenCount;
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(Long userId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(userId);
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(Long userId) {
+        Doc doc = docs.remove(userId);
+        if (doc == null) {
+            return;
+        }
+        totalLength -= doc.length();
+        for (String term : doc.terms()) {
+            Map<Long, int[]> termPostings = postings.get(term);
+            if (termPostings != null) {
+                termPostings.remove(userId);
+                if (termPostings.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private SortedMap<String, Map<Long, int[]>> expand(QueryTerm term) {
+        if (!term.prefix()) {
+            Map<Long, int[]> exact = postings.get(term.text());
+            return exact == null ? new TreeMap<>() : new TreeMap<>(Map.of(term.text(), exact));
+        }
+        SortedMap<String, Map<Long, int[]>> matches = postings.subMap(term.text(),
+                term.text() + Character.MAX_VALUE);
+        if (matches.size() <= properties.getMaxPrefixExpansions()) {
+            return matches;
+        }
+        // Слишком общий префикс: берём самые редкие термины, они информативнее
+        TreeMap<String, Map<Long, int[]>> rarest = new TreeMap<>();
+        matches.entrySet().stream()
+                .sorted(Comparator.comparingInt(entry -> entry.getValue().size()))
+                .limit(properties.getMaxPrefixExpansions())
+                .forEach(entry -> rarest.put(entry.getKey(), entry.getValue()));
+        return rarest;
+    }
+
+    private boolean matchesPhrases(Long userId, List<List<String>> phrases) {
+        for (List<String> phrase : phrases) {
+            if (!containsPhrase(userId, phrase)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean containsPhrase(Long userId, List<String> phrase) {
+        int[][] positions = new int[phrase.size()][];
+        for (int i = 0; i < phrase.size(); i++) {
+            Map<Long, int[]> termPostings = postings.get(phrase.get(i));
+            positions[i] = termPostings == null ? null : termPostings.get(userId);
+            if (positions[i] == null) {
+                return false;
+            }
+        }
+        for (int start : positions[0]) {
+            boolean matched = true;
+            for (int i = 1; i < positions.length && matched; i++) {
+                matched = Arrays.binarySearch(positions[i], start + i) >= 0;
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void markChanged(Long userId) {
+        if (loading) {
+            changedDuringLoad.add(userId);
+        }
+    }
+
+    private void onRemoteChange(String topic, Set<String> keys) {
+        if (!TOPIC.equals(topic)) {
+            return;
+        }
+        List<Long> userIds = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            try {
+                userIds.add(Long.parseLong(key));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid user id '{}' from invalidation bus", key);
+            }
+        }
+        if (loading) {
+            changedDuringLoad.addAll(userIds);
+            // Загрузка могла закончиться между проверкой и добавлением — тогда
+            // перечитываем сами
+            if (loading || !changedDuringLoad.removeAll(userIds)) {
+                return;
+            }
+        }
+        reload(userIds);
+    }
+
+    // Приводит документы пользователей к текущим данным в БД
+    private void reload(List<Long> userIds) {
+        List<BioText> texts = readOnlyTransaction.execute(
+                status -> bioRepository.findTextsByUserIdIn(userIds));
+        Set<Long> missing = new HashSet<>(userIds);
+        for (BioText text : texts) {
+            index(text);
+            missing.remove(text.getUserId());
+        }
+        missing.forEach(this::remove);
+    }
+
+    private static double idf(int documentFrequency, int documentCount) {
+        return Math.log(1 + (documentCount - documentFrequency + 0.5)
+                / (documentFrequency + 0.5));
+    }
+
+    private static double bm25(double idf, int termFrequency, int length, double averageLength) {
+        double norm = K1 * (1 - B + B * length / averageLength);
+        return idf * termFrequency * (K1 + 1) / (termFrequency + norm);
+    }
+
+    // Разбивает текст на термины (буквы и цифры в нижнем регистре, ё -> е)
+    static int tokenize(String text, int offset, Map<String, List<Integer>> positions) {
+        if (text == null) {
+            return offset;
+        }
+        int position = offset;
+        for (String token : tokens(text)) {
+            positions.computeIfAbsent(token, k -> new ArrayList<>()).add(position++);
+        }
+        return position;
+    }
+
+    static List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        for (int i = 0; i <= normalized.length(); i++) {
+            char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (!token.isEmpty()) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            action.run();
+                        }
+                    });
+        } else {
+            action.run();
+        }
+    }
+
+    record Doc(int length, String[] terms) {
+    }
+
+    private record QueryTerm(String text, boolean prefix) {
+    }
+
+    // Слова запроса; term* — префикс, "..." — фраза, которая обязана встретиться
+    private record ParsedQuery(List<QueryTerm> terms, List<List<String>> phrases) {
+        static ParsedQuery parse(String query) {
+            List<QueryTerm> terms = new ArrayList<>();
+            List<List<String>> phrases = new ArrayList<>();
+            if (query == null) {
+                return new ParsedQuery(terms, phrases);
+            }
+            String[] parts = query.split("\"", -1);
+            for (int i = 0; i < parts.length; i++) {
+                if (i % 2 == 1) {
+                    List<String> phrase = tokens(parts[i]);
+                    phrase.forEach(token -> terms.add(new QueryTerm(token, false)));
+                    if (phrase.size() > 1) {
+                        phrases.add(phrase);
+                    }
+                    continue;
+                }
+                for (String word : parts[i].trim().split("\\s+")) {
+                    boolean prefix = word.endsWith("*");
+                    List<String> wordTokens = tokens(word);
+                    for (int j = 0; j < wordTokens.size(); j++) {
+                        terms.add(new QueryTerm(wordTokens.get(j),
+                                prefix && j == wordTokens.size() - 1));
+                    }
+                }
+            }
+            return new ParsedQuery(terms, phrases);
+        }
+
+        boolean isEmpty() {
+            return terms.isEmpty();
+        }
+    }
+
+    public record SearchHit(long userId, double score) {
+    }
+
+    public record IndexStats(boolean ready, int documents, int terms, long tokens) {
+    }
+}
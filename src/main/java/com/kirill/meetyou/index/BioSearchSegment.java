@@ -0,0 +1,148 @@
+package com.kirill.meetyou.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Сжатый сегмент полнотекстового индекса на диске.
+ *
+ * <p>Формат: заголовок, длины документов по возрастанию userId, затем словарь
+ * терминов по алфавиту. Для каждого термина — постинги по возрастанию userId,
+ * позиции внутри документа. Id и позиции записаны дельтами в varint, поэтому
+ * сегмент в разы меньше индекса в памяти. Запись идёт во временный файл с
+ * атомарной заменой.
+ */
+final class BioSearchSegment {
+    private static final int MAGIC = 0x4d594253; // "MYBS"
+    private static final int VERSION = 1;
+
+    private BioSearchSegment() {
+    }
+
+    static void write(Path target, long savedAt, TreeMap<String, Map<Long, int[]>> postings,
+                      Map<Long, BioSearchIndex.Doc> docs) throws IOException {
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(savedAt);
+
+            out.writeInt(docs.size());
+            long previousId = 0;
+            for (Map.Entry<Long, BioSearchIndex.Doc> doc : new TreeMap<>(docs).entrySet()) {
+                writeVarLong(out, doc.getKey() - previousId);
+                writeVarLong(out, doc.getValue().length());
+                previousId = doc.getKey();
+            }
+
+            out.writeInt(postings.size());
+            for (Map.Entry<String, Map<Long, int[]>> term : postings.entrySet()) {
+                out.writeUTF(term.getKey());
+                writeVarLong(out, term.getValue().size());
+                long previousDoc = 0;
+                for (Map.Entry<Long, int[]> posting : new TreeMap<>(term.getValue()).entrySet()) {
+                    writeVarLong(out, posting.getKey() - previousDoc);
+                    previousDoc = posting.getKey();
+                    int[] positions = posting.getValue();
+                    writeVarLong(out, positions.length);
+                    int previousPosition = 0;
+                    for (int position : positions) {
+                        writeVarLong(out, position - previousPosition);
+                        previousPosition = position;
+                    }
+                }
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // null, если сегмента нет
+    static Contents read(Path source) throws IOException {
+        if (!Files.exists(source)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(source), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException("unknown segment format");
+            }
+            long savedAt = in.readLong();
+
+            int docCount = in.readInt();
+            Map<Long, Integer> lengths = new HashMap<>(Math.max(16, docCount * 2));
+            long userId = 0;
+            for (int i = 0; i < docCount; i++) {
+                userId += readVarLong(in);
+                lengths.put(userId, (int) readVarLong(in));
+            }
+
+            int termCount = in.readInt();
+            TreeMap<String, Map<Long, int[]>> postings = new TreeMap<>();
+            Map<Long, List<String>> docTerms = new HashMap<>(Math.max(16, docCount * 2));
+            for (int i = 0; i < termCount; i++) {
+                String term = in.readUTF();
+                int documentFrequency = (int) readVarLong(in);
+                Map<Long, int[]> termPostings = new HashMap<>(
+                        Math.max(4, documentFrequency * 2));
+                long docId = 0;
+                for (int j = 0; j < documentFrequency; j++) {
+                    docId += readVarLong(in);
+                    int[] positions = new int[(int) readVarLong(in)];
+                    int position = 0;
+                    for (int k = 0; k < positions.length; k++) {
+                        position += (int) readVarLong(in);
+                        positions[k] = position;
+                    }
+                    termPostings.put(docId, positions);
+                    docTerms.computeIfAbsent(docId, id -> new ArrayList<>()).add(term);
+                }
+                postings.put(term, termPostings);
+            }
+
+            Map<Long, BioSearchIndex.Doc> docs = new HashMap<>(Math.max(16, docCount * 2));
+            lengths.forEach((id, length) -> docs.put(id, new BioSearchIndex.Doc(length,
+                    docTerms.getOrDefault(id, List.of()).toArray(String[]::new))));
+            return new Contents(savedAt, postings, docs);
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("malformed varint");
+    }
+
+    record Contents(long savedAt, TreeMap<String, Map<Long, int[]>> postings,
+                    Map<Long, BioSearchIndex.Doc> docs) {
+    }
+}
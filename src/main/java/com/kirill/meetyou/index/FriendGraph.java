@@ -0,0 +1,867 @@
+package com.kirill.meetyou.index;
+
+import com.kirill.meetyou.cache.InvalidationBus;
+import com.kirill.meetyou.repository.FriendRepository;
+import com.kirill.meetyou.repository.FriendRepository.FriendEdge;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Граф дружбы в памяти в формате CSR (compressed sparse rows): отсортированный
+ * массив id пользователей, смещения строк и плоский массив соседей в виде
+ * индексов в массиве id. Дружба считается неориентированной, как в
+ * {@link FriendRepository#findFriendIds(Long)}.
+ *
+ * <p>CSR неизменяем; изменения после коммита пишутся поверх него как полные
+ * строки затронутых пользователей. Когда таких строк набирается больше восьмой
+ * части графа, они вливаются в новый CSR. Другие экземпляры узнают об изменённых
+ * пользователях через {@link InvalidationBus} и перечитывают их связи из БД.
+ *
+ * <p>Поиск пути работает по плотным индексам: сначала позиции в CSR, за ними
+ * пользователи, которые появились в графе после последней сборки CSR.
+ */
+@Slf4j
+@Component
+public class FriendGraph {
+    static final String TOPIC = "friend-graph";
+    private static final int MIN_COMPACTION_THRESHOLD = 10_000;
+    private static final int RELOAD_BATCH_SIZE = 1000;
+    private static final long[] NO_FRIENDS = new long[0];
+    // Наборов счётчиков не больше, чем ядер: массивы размером с граф не
+    // закрепляются за каждым потоком Tomcat, а лишние наборы уходят в GC
+    private static final ScratchPool<Counters> COUNTERS =
+            new ScratchPool<>(Runtime.getRuntime().availableProcessors(), Counters::new);
+    private static final ScratchPool<PathScratch> PATH_SCRATCH =
+            new ScratchPool<>(Runtime.getRuntime().availableProcessors(), PathScratch::new);
+
+    private final FriendRepository friendRepository;
+    private final InvalidationBus bus;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<Long> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private Csr base = Csr.EMPTY;
+    // Строки, изменённые после построения base: полный отсортированный список друзей
+    private Map<Long, long[]> overrides = new HashMap<>();
+    // Пользователи вне base получают индексы base.ids.length, base.ids.length + 1, ...
+    private LongList extraIds = new LongList();
+    private Map<Long, Integer> extraIndex = new HashMap<>();
+    private volatile boolean ready;
+    private volatile boolean rebuilding;
+
+    public FriendGraph(FriendRepository friendRepository, InvalidationBus bus,
+                       PlatformTransactionManager transactionManager) {
+        this.friendRepository = friendRepository;
+        this.bus = bus;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        bus.subscribe(this::onRemoteChange);
+    }
+
+    // Вызывается и при старте, и из потока шины инвалидации, поэтому транзакция
+    // открывается явно, а не через @Transactional
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        rebuilding = true;
+        changedDuringRebuild.clear();
+        LongList from = new LongList();
+        LongList to = new LongList();
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<FriendEdge> rows = friendRepository.streamEdges()) {
+                for (FriendEdge row : (Iterable<FriendEdge>) rows::iterator) {
+                    from.add(row.getUserId());
+                    to.add(row.getFriendId());
+                    from.add(row.getFriendId());
+                    to.add(row.getUserId());
+                }
+            }
+        });
+        Csr rebuilt = Csr.build(from, to);
+
+        lock.writeLock().lock();
+        try {
+            base = rebuilt;
+            overrides = new HashMap<>();
+            extraIds = new LongList();
+            extraIndex = new HashMap<>();
+            rebuilding = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Изменения, закоммиченные во время чтения, могли не попасть в снимок
+        if (!changedDuringRebuild.isEmpty()) {
+            reload(new ArrayList<>(changedDuringRebuild));
+            changedDuringRebuild.clear();
+        }
+        ready = true;
+        log.info("Friend graph built: {} users, {} friendships, {} KB in {} ms",
+                rebuilt.ids.length, rebuilt.targets.length / 2,
+                rebuilt.sizeInBytes() / 1024, System.currentTimeMillis() - start);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void addFriendAfterCommit(Long userId, Long friendId) {
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                markChanged(userId, friendId);
+                setRow(userId, withFriend(row(userId), friendId));
+                setRow(friendId, withFriend(row(friendId), userId));
+                compactIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            bus.publish(TOPIC, String.valueOf(userId));
+            bus.publish(TOPIC, String.valueOf(friendId));
+        });
+    }
+
+    // Удаление в БД убирает связь в обе стороны, поэтому строки правятся на месте
+    public void removeFriendAfterCommit(Long userId, Long friendId) {
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                markChanged(userId, friendId);
+                setRow(userId, withoutFriend(row(userId), friendId));
+                setRow(friendId, withoutFriend(row(friendId), userId));
+                compactIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            bus.publish(TOPIC, String.valueOf(userId));
+            bus.publish(TOPIC, String.valueOf(friendId));
+        });
+    }
+
+    public void removeUserAfterCommit(Long userId) {
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                markChanged(userId, userId);
+                replaceFriends(userId, NO_FRIENDS);
+                compactIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            bus.publish(TOPIC, String.valueOf(userId));
+        });
+    }
+
+    // Отсортированные id друзей пользователя
+    public long[] friendsOf(long userId) {
+        lock.readLock().lock();
+        try {
+            return row(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Страница отсортированных id друзей с id больше after
+    public List<Long> friendsAfter(long userId, long after, int limit) {
+        lock.readLock().lock();
+        try {
+            long[] friends = row(userId);
+            int position = Arrays.binarySearch(friends, after);
+            int from = position >= 0 ? position + 1 : -position - 1;
+            int to = (int) Math.min(friends.length, (long) from + limit);
+            List<Long> page = new ArrayList<>(Math.max(0, to - from));
+            for (int i = from; i < to; i++) {
+                page.add(friends[i]);
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int mutualFriendCount(long userId, long otherId) {
+        lock.readLock().lock();
+        try {
+            long[] left = row(userId);
+            long[] right = row(otherId);
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < left.length && j < right.length) {
+                if (left[i] < right[j]) {
+                    i++;
+                } else if (left[i] > right[j]) {
+                    j++;
+                } else {
+                    count++;
+                    i++;
+                    j++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Друзья друзей, ещё не ставшие друзьями, по убыванию числа общих друзей
+     * (при равенстве — по возрастанию id). Счётчики лежат в массиве по индексам
+     * CSR, который берётся из небольшого пула и возвращается обнулённым; строки
+     * друзей без изменений читаются прямо из массива соседей.
+     */
+    public List<Suggestion> suggestions(long userId, int limit) {
+        lock.readLock().lock();
+        try {
+            long[] friends = row(userId);
+            Counters counters = COUNTERS.borrow();
+            counters.ensureCapacity(base.ids.length);
+            try {
+                Map<Long, Integer> outsideBase = new HashMap<>();
+                for (long friend : friends) {
+                    long[] override = overrides.get(friend);
+                    if (override == null) {
+                        int index = base.indexOf(friend);
+                        if (index >= 0) {
+                            for (int k = base.offsets[index]; k < base.offsets[index + 1]; k++) {
+                                counters.increment(base.targets[k]);
+                            }
+                        }
+                        continue;
+                    }
+                    for (long candidate : override) {
+                        int index = base.indexOf(candidate);
+                        if (index >= 0) {
+                            counters.increment(index);
+                        } else {
+                            outsideBase.merge(candidate, 1, Integer::sum);
+                        }
+                    }
+                }
+
+                TopK top = new TopK(limit);
+                for (int i = 0; i < counters.touchedCount; i++) {
+                    int index = counters.touched[i];
+                    long candidate = base.ids[index];
+                    if (candidate != userId && Arrays.binarySearch(friends, candidate) < 0) {
+                        top.offer(new Suggestion(candidate, counters.counts[index]));
+                    }
+                }
+                outsideBase.forEach((candidate, count) -> {
+                    if (candidate != userId && Arrays.binarySearch(friends, candidate) < 0) {
+                        top.offer(new Suggestion(candidate, count));
+                    }
+                });
+                return top.sorted();
+            } finally {
+                counters.clear();
+                COUNTERS.release(counters, base.ids.length);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Кратчайшая цепочка друзей двунаправленным поиском в ширину: каждый шаг
+     * раскрывает на один уровень меньший из двух фронтов, поэтому просматривается
+     * порядка двух шаров радиуса d/2 вместо одного радиуса d. Посещённые вершины
+     * отмечаются в битсетах, родители хранятся в массивах int; фронт от
+     * parallelThreshold вершин раскрывается параллельно.
+     */
+    public PathResult shortestPath(long from, long to, int maxDepth, Duration budget,
+                                   int parallelThreshold) {
+        lock.readLock().lock();
+        try {
+            if (from == to) {
+                return new PathResult(List.of(from), 1, false);
+            }
+            int source = indexOf(from);
+            int target = indexOf(to);
+            if (source < 0 || target < 0) {
+                return new PathResult(List.of(), 0, false);
+            }
+            int size = base.ids.length + extraIds.size;
+            PathScratch scratch = PATH_SCRATCH.borrow();
+            scratch.ensureCapacity(size);
+            try {
+                return search(scratch, source, target, maxDepth,
+                        System.nanoTime() + budget.toNanos(), parallelThreshold);
+            } finally {
+                scratch.clear();
+                PATH_SCRATCH.release(scratch, size);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public GraphStats stats() {
+        lock.readLock().lock();
+        try {
+            long overrideBytes = 0;
+            for (long[] friends : overrides.values()) {
+                // Запись HashMap, Long и массив
+                overrideBytes += 32 + 16 + 16 + 8L * friends.length;
+            }
+            return new GraphStats(ready, base.ids.length, base.targets.length / 2,
+                    overrides.size(), base.sizeInBytes() + overrideBytes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long[] row(long userId) {
+        long[] override = overrides.get(userId);
+        return override != null ? override : base.row(userId);
+    }
+
+    private void setRow(long userId, long[] friends) {
+        overrides.put(userId, friends);
+        if (base.indexOf(userId) < 0 && !extraIndex.containsKey(userId)) {
+            extraIndex.put(userId, base.ids.length + extraIds.size);
+            extraIds.add(userId);
+        }
+    }
+
+    private int indexOf(long userId) {
+        int index = base.indexOf(userId);
+        if (index >= 0) {
+            return index;
+        }
+        Integer extra = extraIndex.get(userId);
+        return extra == null ? -1 : extra;
+    }
+
+    private long idAt(int index) {
+        return index < base.ids.length
+                ? base.ids[index] : extraIds.values[index - base.ids.length];
+    }
+
+    private void forEachFriend(int index, IntConsumer action) {
+        long[] override = overrides.get(idAt(index));
+        if (override == null) {
+            for (int k = base.offsets[index]; k < base.offsets[index + 1]; k++) {
+                action.accept(base.targets[k]);
+            }
+            return;
+        }
+        for (long friend : override) {
+            action.accept(indexOf(friend));
+        }
+    }
+
+    // Приводит строку пользователя к списку из БД и зеркально правит строки друзей
+    private void replaceFriends(long userId, long[] friends) {
+        long[] previous = row(userId);
+        for (long friend : previous) {
+            if (Arrays.binarySearch(friends, friend) < 0) {
+                setRow(friend, withoutFriend(row(friend), userId));
+            }
+        }
+        for (long friend : friends) {
+            if (Arrays.binarySearch(previous, friend) < 0) {
+                setRow(friend, withFriend(row(friend), userId));
+            }
+        }
+        setRow(userId, friends);
+    }
+
+    private void markChanged(Long userId, Long friendId) {
+        if (rebuilding) {
+            changedDuringRebuild.add(userId);
+            changedDuringRebuild.add(friendId);
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (overrides.size() <= Math.max(MIN_COMPACTION_THRESHOLD, base.ids.length / 8)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        LongList from = new LongList();
+        LongList to = new LongList();
+        for (int i = 0; i < base.ids.length; i++) {
+            if (overrides.containsKey(base.ids[i])) {
+                continue;
+            }
+            for (int k = base.offsets[i]; k < base.offsets[i + 1]; k++) {
+                from.add(base.ids[i]);
+                to.add(base.ids[base.targets[k]]);
+            }
+        }
+        overrides.forEach((userId, friends) -> {
+            for (long friend : friends) {
+                from.add(userId);
+                to.add(friend);
+            }
+        });
+        int merged = overrides.size();
+        base = Csr.build(from, to);
+        overrides = new HashMap<>();
+        extraIds = new LongList();
+        extraIndex = new HashMap<>();
+        log.info("Friend graph compacted: {} changed rows merged in {} ms", merged,
+                System.currentTimeMillis() - start);
+    }
+
+    private void reload(List<Long> userIds) {
+        for (int from = 0; from < userIds.size(); from += RELOAD_BATCH_SIZE) {
+            List<Long> batch = userIds.subList(from,
+                    Math.min(from + RELOAD_BATCH_SIZE, userIds.size()));
+            List<FriendEdge> edges = readOnlyTransaction.execute(
+                    status -> friendRepository.findEdgesOfUsers(batch));
+            Map<Long, LongList> friends = new HashMap<>();
+            batch.forEach(id -> friends.put(id, new LongList()));
+            for (FriendEdge edge : edges) {
+                LongList forUser = friends.get(edge.getUserId());
+                if (forUser != null) {
+                    forUser.add(edge.getFriendId());
+                }
+                LongList forFriend = friends.get(edge.getFriendId());
+                if (forFriend != null) {
+                    forFriend.add(edge.getUserId());
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                friends.forEach((userId, list) -> {
+                    markChanged(userId, userId);
+                    replaceFriends(userId, list.sortedDistinct());
+                });
+                compactIfNeeded();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void onRemoteChange(String topic, Set<String> keys) {
+        if (!TOPIC.equals(topic)) {
+            return;
+        }
+        if (keys.contains(InvalidationBus.ALL_KEYS)) {
+            rebuild();
+            return;
+        }
+        List<Long> userIds = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            try {
+                userIds.add(Long.parseLong(key));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid user id '{}' from invalidation bus", key);
+            }
+        }
+        if (!userIds.isEmpty()) {
+            reload(userIds);
+        }
+    }
+
+    private PathResult search(PathScratch scratch, int source, int target, int maxDepth,
+                              long deadline, int parallelThreshold) {
+        Side forward = new Side(scratch.forwardVisited, scratch.forwardParent, source);
+        Side backward = new Side(scratch.backwardVisited, scratch.backwardParent, target);
+        // Встреча упакована как (вершина своего дерева << 32) | вершина чужого дерева
+        AtomicLong meeting = new AtomicLong(-1);
+        AtomicBoolean timedOut = new AtomicBoolean();
+        long visited = 2;
+        while (forward.depth + backward.depth < maxDepth
+                && forward.frontier.length > 0 && backward.frontier.length > 0) {
+            Side self = forward.frontier.length <= backward.frontier.length
+                    ? forward : backward;
+            Side other = self == forward ? backward : forward;
+
+            IntStream nodes = Arrays.stream(self.frontier);
+            if (self.frontier.length >= parallelThreshold) {
+                nodes = nodes.parallel();
+            }
+            self.frontier = nodes.flatMap(node -> {
+                if (meeting.get() >= 0 || timedOut.get()) {
+                    return IntStream.empty();
+                }
+                if (System.nanoTime() > deadline) {
+                    timedOut.set(true);
+                    return IntStream.empty();
+                }
+                IntStream.Builder discovered = IntStream.builder();
+                forEachFriend(node, friend -> {
+                    if (friend < 0) {
+                        return;
+                    }
+                    if (other.isVisited(friend)) {
+                        meeting.compareAndSet(-1, ((long) node << 32) | friend);
+                    } else if (self.visit(friend)) {
+                        self.parent[friend] = node;
+                        discovered.add(friend);
+                    }
+                });
+                return discovered.build();
+            }).toArray();
+            self.depth++;
+            visited += self.frontier.length;
+
+            long met = meeting.get();
+            if (met >= 0) {
+                List<Long> path = new ArrayList<>(self.chain((int) (met >>> 32)));
+                Collections.reverse(path);
+                path.addAll(other.chain((int) met));
+                if (self == backward) {
+                    Collections.reverse(path);
+                }
+                return new PathResult(path, visited, false);
+            }
+            if (timedOut.get()) {
+                return new PathResult(List.of(), visited, true);
+            }
+        }
+        return new PathResult(List.of(), visited, false);
+    }
+
+    private static long[] withFriend(long[] friends, long friend) {
+        int position = Arrays.binarySearch(friends, friend);
+        if (position >= 0) {
+            return friends;
+        }
+        int insertAt = -position - 1;
+        long[] grown = new long[friends.length + 1];
+        System.arraycopy(friends, 0, grown, 0, insertAt);
+        grown[insertAt] = friend;
+        System.arraycopy(friends, insertAt, grown, insertAt + 1, friends.length - insertAt);
+        return grown;
+    }
+
+    private static long[] withoutFriend(long[] friends, long friend) {
+        int position = Arrays.binarySearch(friends, friend);
+        if (position < 0) {
+            return friends;
+        }
+        long[] shrunk = new long[friends.length - 1];
+        System.arraycopy(friends, 0, shrunk, 0, position);
+        System.arraycopy(friends, position + 1, shrunk, position, shrunk.length - position);
+        return shrunk;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            action.run();
+                        }
+                    });
+        } else {
+            action.run();
+        }
+    }
+
+    private static final class Csr {
+        static final Csr EMPTY = new Csr(new long[0], new int[] {0}, new int[0]);
+
+        // ids отсортированы, поэтому порядок индексов совпадает с порядком id
+        private final long[] ids;
+        private final int[] offsets;
+        private final int[] targets;
+
+        private Csr(long[] ids, int[] offsets, int[] targets) {
+            this.ids = ids;
+            this.offsets = offsets;
+            this.targets = targets;
+        }
+
+        // Рёбра from[i] → to[i]; повторы и петли отбрасываются
+        static Csr build(LongList from, LongList to) {
+            long[] ids = Arrays.copyOf(from.values, from.size);
+            Arrays.sort(ids);
+            int distinct = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    ids[distinct++] = ids[i];
+                }
+            }
+            ids = Arrays.copyOf(ids, distinct);
+
+            int[] offsets = new int[ids.length + 1];
+            for (int i = 0; i < from.size; i++) {
+                offsets[Arrays.binarySearch(ids, from.values[i]) + 1]++;
+            }
+            for (int i = 0; i < ids.length; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            int[] targets = new int[from.size];
+            int[] fill = Arrays.copyOf(offsets, ids.length);
+            for (int i = 0; i < from.size; i++) {
+                int row = Arrays.binarySearch(ids, from.values[i]);
+                targets[fill[row]++] = Arrays.binarySearch(ids, to.values[i]);
+            }
+
+            // Сортировка строк и сжатие на месте без повторов и петель
+            int write = 0;
+            int rowStart = 0;
+            for (int row = 0; row < ids.length; row++) {
+                int rowEnd = offsets[row + 1];
+                Arrays.sort(targets, rowStart, rowEnd);
+                int newStart = write;
+                for (int k = rowStart; k < rowEnd; k++) {
+                    int target = targets[k];
+                    if (target != row && (write == newStart || targets[write - 1] != target)) {
+                        targets[write++] = target;
+                    }
+                }
+                offsets[row] = newStart;
+                rowStart = rowEnd;
+            }
+            offsets[ids.length] = write;
+            return new Csr(ids, offsets, Arrays.copyOf(targets, write));
+        }
+
+        int indexOf(long userId) {
+            return Arrays.binarySearch(ids, userId);
+        }
+
+        long[] row(long userId) {
+            int index = indexOf(userId);
+            if (index < 0) {
+                return NO_FRIENDS;
+            }
+            long[] friends = new long[offsets[index + 1] - offsets[index]];
+            for (int k = 0; k < friends.length; k++) {
+                friends[k] = ids[targets[offsets[index] + k]];
+            }
+            return friends;
+        }
+
+        long sizeInBytes() {
+            return 8L * ids.length + 4L * offsets.length + 4L * targets.length;
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] sortedDistinct() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, distinct);
+        }
+    }
+
+    private interface Scratch {
+        int capacity();
+    }
+
+    /**
+     * Ограниченный пул рабочих массивов. Если пул пуст, набор создаётся заново, а
+     * при переполнении или заметно уменьшившемся графе возвращённый набор просто
+     * не сохраняется. Памяти уходит не больше size наборов, сколько бы потоков ни
+     * обращалось к графу.
+     */
+    private static final class ScratchPool<T extends Scratch> {
+        private final BlockingQueue<T> free;
+        private final Supplier<T> factory;
+
+        ScratchPool(int size, Supplier<T> factory) {
+            this.free = new ArrayBlockingQueue<>(Math.max(1, size));
+            this.factory = factory;
+        }
+
+        T borrow() {
+            T scratch = free.poll();
+            return scratch != null ? scratch : factory.get();
+        }
+
+        // Набор должен быть очищен; needed — сколько вершин в графе сейчас
+        void release(T scratch, int needed) {
+            if (scratch.capacity() <= 2 * needed + 1024) {
+                free.offer(scratch);
+            }
+        }
+    }
+
+    // Счётчики общих друзей по индексам CSR
+    private static final class Counters implements Scratch {
+        private int[] counts = new int[0];
+        private int[] touched = new int[0];
+        private int touchedCount;
+
+        void ensureCapacity(int size) {
+            if (counts.length < size) {
+                counts = new int[size];
+                touched = new int[size];
+            }
+        }
+
+        void increment(int index) {
+            if (counts[index]++ == 0) {
+                touched[touchedCount++] = index;
+            }
+        }
+
+        // Обнуляет только затронутые ячейки
+        void clear() {
+            for (int i = 0; i < touchedCount; i++) {
+                counts[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+
+        @Override
+        public int capacity() {
+            return counts.length;
+        }
+    }
+
+    // Одна сторона двунаправленного поиска
+    private final class Side {
+        private final AtomicLongArray visited;
+        private final int[] parent;
+        private int[] frontier;
+        private int depth;
+
+        Side(AtomicLongArray visited, int[] parent, int root) {
+            this.visited = visited;
+            this.parent = parent;
+            this.frontier = new int[] {root};
+            visit(root);
+            parent[root] = -1;
+        }
+
+        boolean isVisited(int index) {
+            return (visited.get(index >>> 6) & (1L << index)) != 0;
+        }
+
+        // true, если вершину отметил именно этот вызов
+        boolean visit(int index) {
+            int word = index >>> 6;
+            long bit = 1L << index;
+            long current;
+            do {
+                current = visited.get(word);
+                if ((current & bit) != 0) {
+                    return false;
+                }
+            } while (!visited.compareAndSet(word, current, current | bit));
+            return true;
+        }
+
+        // id от вершины до корня этой стороны
+        List<Long> chain(int index) {
+            List<Long> ids = new ArrayList<>(depth + 1);
+            for (int node = index; node >= 0; node = parent[node]) {
+                ids.add(idAt(node));
+            }
+            return ids;
+        }
+    }
+
+    // Битсеты и массивы родителей для поиска пути
+    private static final class PathScratch implements Scratch {
+        private AtomicLongArray forwardVisited = new AtomicLongArray(0);
+        private AtomicLongArray backwardVisited = new AtomicLongArray(0);
+        private int[] forwardParent = new int[0];
+        private int[] backwardParent = new int[0];
+
+        void ensureCapacity(int size) {
+            if (forwardParent.length < size) {
+                int capacity = size + size / 8 + 64;
+                forwardVisited = new AtomicLongArray((capacity >>> 6) + 1);
+                backwardVisited = new AtomicLongArray((capacity >>> 6) + 1);
+                forwardParent = new int[capacity];
+                backwardParent = new int[capacity];
+            }
+        }
+
+        void clear() {
+            for (int i = 0; i < forwardVisited.length(); i++) {
+                forwardVisited.set(i, 0);
+                backwardVisited.set(i, 0);
+            }
+        }
+
+        @Override
+        public int capacity() {
+            return forwardParent.length;
+        }
+    }
+
+    private static final class TopK {
+        // Сверху кучи — худший из отобранных: меньше общих друзей, при равенстве больший id
+        private static final Comparator<Suggestion> WORST_FIRST =
+                Comparator.comparingInt(Suggestion::mutualFriends)
+                        .thenComparing(Suggestion::userId, Comparator.reverseOrder());
+
+        private final int limit;
+        private final PriorityQueue<Suggestion> heap;
+
+        TopK(int limit) {
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(Math.min(limit, 1024) + 1, WORST_FIRST);
+        }
+
+        void offer(Suggestion candidate) {
+            if (heap.size() < limit) {
+                heap.add(candidate);
+            } else if (WORST_FIRST.compare(candidate, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(candidate);
+            }
+        }
+
+        List<Suggestion> sorted() {
+            List<Suggestion> result = new ArrayList<>(heap);
+            result.sort(WORST_FIRST.reversed());
+            return result;
+        }
+    }
+
+    public record Suggestion(long userId, int mutualFriends) {
+    }
+
+    public record PathResult(List<Long> path, long visited, boolean timedOut) {
+    }
+
+    public record GraphStats(boolean ready, int users, long friendships, int changedRows,
+                             long sizeInBytes) {
+    }
+}
@@ -0,0 +1,467 @@
+package com.kirill.meetyou.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Сжатое множество неотрицательных id в духе Roaring bitmap.
+ *
+ * <p>Id делится на старшую часть (ключ контейнера) и младшие 16 бит. Разреженный
+ * контейнер хранит отсортированный массив char (до {@value #ARRAY_MAX} значений),
+ * плотный — битовую карту из 1024 long. Пересечение и объединение выполняются
+ * по контейнерам с одинаковыми ключами. Класс не потокобезопасен.
+ */
+public final class IdBitmap {
+    static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private long[] keys = new long[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    public void add(long id) {
+        checkId(id);
+        long key = id >>> 16;
+        char low = (char) id;
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            containers[index] = containers[index].add(low);
+        } else {
+            insertContainer(-index - 1, key, new ArrayContainer().add(low));
+        }
+    }
+
+    public void remove(long id) {
+        if (id < 0) {
+            return;
+        }
+        int index = Arrays.binarySearch(keys, 0, size, id >>> 16);
+        if (index < 0) {
+            return;
+        }
+        Container container = containers[index].remove((char) id);
+        if (container.cardinality() == 0) {
+            removeContainer(index);
+        } else {
+            containers[index] = container;
+        }
+    }
+
+    public boolean contains(long id) {
+        if (id < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, 0, size, id >>> 16);
+        return index >= 0 && containers[index].contains((char) id);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long cardinality() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += containers[i].cardinality();
+        }
+        return total;
+    }
+
+    public long sizeInBytes() {
+        long total = size * 16L;
+        for (int i = 0; i < size; i++) {
+            total += containers[i].sizeInBytes();
+        }
+        return total;
+    }
+
+    public IdBitmap and(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.appendContainer(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public IdBitmap or(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                result.appendContainer(keys[i], containers[i].copy());
+                i++;
+            } else if (i >= size || keys[i] > other.keys[j]) {
+                result.appendContainer(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public IdBitmap copy() {
+        IdBitmap result = new IdBitmap();
+        for (int i = 0; i < size; i++) {
+            result.appendContainer(keys[i], containers[i].copy());
+        }
+        return result;
+    }
+
+    // До limit id строго больше after в порядке возрастания
+    public List<Long> page(long after, int limit) {
+        List<Long> result = new ArrayList<>(Math.min(limit, 1024));
+        long start = after + 1;
+        int index = Arrays.binarySearch(keys, 0, size, Math.max(0, start) >>> 16);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        for (int i = index; i < size && result.size() < limit; i++) {
+            long high = keys[i] << 16;
+            int from = start > high ? (int) (start - high) : 0;
+            containers[i].collect(high, from, limit, result);
+        }
+        return result;
+    }
+
+    // Ключи контейнеров (старшие биты id) по возрастанию
+    long[] containerKeys() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    // Передаёт младшие 16 бит каждого id из контейнера с ключом key
+    void forEachInContainer(long key, IntConsumer consumer) {
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index >= 0) {
+            containers[index].forEach(consumer);
+        }
+    }
+
+    private void appendContainer(long key, Container container) {
+        insertContainer(size, key, container);
+    }
+
+    private void insertContainer(int index, long key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    private static void checkId(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Id must be non-negative: " + id);
+        }
+    }
+
+    private abstract static class Container {
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract long sizeInBytes();
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container copy();
+
+        // Добавляет значения >= from, пока в out меньше limit элементов
+        abstract void collect(long high, int from, int limit, List<Long> out);
+
+        abstract void forEach(IntConsumer consumer);
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality >= ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                int capacity = Math.min(ARRAY_MAX, Math.max(4, cardinality * 2));
+                values = Arrays.copyOf(values, capacity);
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 16L + values.length * 2L;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(values[i])) {
+                    result[count++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] merged = new char[cardinality + array.cardinality];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j >= array.cardinality
+                        || (i < cardinality && values[i] < array.values[j])) {
+                    merged[count++] = values[i++];
+                } else if (i >= cardinality || values[i] > array.values[j]) {
+                    merged[count++] = array.values[j++];
+                } else {
+                    merged[count++] = values[i++];
+                    j++;
+                }
+            }
+            ArrayContainer result = new ArrayContainer(merged, count);
+            return count > ARRAY_MAX ? result.toBitmap() : result;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(1, cardinality)),
+                    cardinality);
+        }
+
+        @Override
+        void collect(long high, int from, int limit, List<Long> out) {
+            int index = Arrays.binarySearch(values, 0, cardinality, (char) from);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            for (int i = index; i < cardinality && out.size() < limit; i++) {
+                out.add(high | values[i]);
+            }
+        }
+
+        @Override
+        void forEach(IntConsumer consumer) {
+            for (int i = 0; i < cardinality; i++) {
+                consumer.accept(values[i]);
+            }
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            long mask = 1L << value;
+            int word = value >>> 6;
+            if ((words[word] & mask) == 0) {
+                words[word] |= mask;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long mask = 1L << value;
+            int word = value >>> 6;
+            if ((words[word] & mask) != 0) {
+                words[word] &= ~mask;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return 16L + BITMAP_WORDS * 8L;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[BITMAP_WORDS];
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = words[i] & otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            BitmapContainer bitmap = new BitmapContainer(result, count);
+            return count <= ARRAY_MAX ? bitmap.toArray() : bitmap;
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer result = (BitmapContainer) copy();
+            if (other instanceof ArrayContainer array) {
+                for (int i = 0; i < array.cardinality; i++) {
+                    result.add(array.values[i]);
+                }
+                return result;
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result.words[i] |= otherWords[i];
+                count += Long.bitCount(result.words[i]);
+            }
+            result.cardinality = count;
+            return result;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        void collect(long high, int from, int limit, List<Long> out) {
+            for (int word = from >>> 6; word < BITMAP_WORDS && out.size() < limit; word++) {
+                long bits = words[word];
+                if (word == from >>> 6) {
+                    bits &= -1L << from;
+                }
+                while (bits != 0 && out.size() < limit) {
+                    int bit = Long.numberOfTrailingZeros(bits);
+                    out.add(high | ((long) word << 6 | bit));
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        @Override
+        void forEach(IntConsumer consumer) {
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    consumer.accept(word << 6 | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[cardinality];
+            int count = 0;
+            for (int word = 0; word < BITMAP_WORDS; word++) {
+                long bits = words[word];
+                while (bits != 0) {
+                    values[count++] = (char) (word << 6 | Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return new ArrayContainer(values, count);
+        }
+    }
+}
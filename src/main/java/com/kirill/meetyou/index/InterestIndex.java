@@ -0,0 +1,398 @@
+package com.kirill.meetyou.index;
+
+import com.kirill.meetyou.cache.InvalidationBus;
+import com.kirill.meetyou.repository.InterestRepository;
+import com.kirill.meetyou.repository.InterestRepository.InterestMembership;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Инвертированный индекс «интерес → битмап id пользователей».
+ *
+ * <p>Строится при старте и поддерживается после коммита изменений интересов.
+ * Другие экземпляры узнают об изменённых пользователях через
+ * {@link InvalidationBus} и перечитывают их интересы из БД; переименование
+ * интереса вызывает полную перестройку. Пока индекс не построен,
+ * {@link #isReady()} возвращает {@code false} и поиск идёт через БД.
+ */
+@Slf4j
+@Component
+public class InterestIndex {
+    static final String TOPIC = "interest-index";
+    // С какого числа перебираемых id подсчёт совпадений распараллеливается
+    private static final long PARALLEL_THRESHOLD = 50_000;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final InterestRepository interestRepository;
+    private final InvalidationBus bus;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<Long> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private Map<String, IdBitmap> index = new HashMap<>();
+    // Все пользователи, у которых есть хотя бы один интерес (N для idf)
+    private IdBitmap indexedUsers = new IdBitmap();
+    private volatile boolean ready;
+    private volatile boolean rebuilding;
+
+    public InterestIndex(InterestRepository interestRepository, InvalidationBus bus,
+                         PlatformTransactionManager transactionManager) {
+        this.interestRepository = interestRepository;
+        this.bus = bus;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        bus.subscribe(this::onRemoteChange);
+    }
+
+    // Вызывается и при старте, и из потока шины инвалидации, поэтому транзакция
+    // открывается явно, а не через @Transactional
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        rebuilding = true;
+        changedDuringRebuild.clear();
+        Map<String, IdBitmap> rebuilt = new HashMap<>();
+        IdBitmap rebuiltUsers = new IdBitmap();
+        long memberships = readOnlyTransaction.execute(status -> {
+            long count = 0;
+            try (Stream<InterestMembership> rows = interestRepository.streamMemberships()) {
+                for (InterestMembership row : (Iterable<InterestMembership>) rows::iterator) {
+                    rebuilt.computeIfAbsent(row.getInterestType(), k -> new IdBitmap())
+                            .add(row.getUserId());
+                    rebuiltUsers.add(row.getUserId());
+                    count++;
+                }
+            }
+            return count;
+        });
+        long bytes = 0;
+        for (IdBitmap bitmap : rebuilt.values()) {
+            bytes += bitmap.sizeInBytes();
+        }
+        int interests = rebuilt.size();
+
+        lock.writeLock().lock();
+        try {
+            index = rebuilt;
+            indexedUsers = rebuiltUsers;
+            rebuilding = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Изменения, закоммиченные во время чтения, могли не попасть в снимок
+        if (!changedDuringRebuild.isEmpty()) {
+            reload(new ArrayList<>(changedDuringRebuild));
+            changedDuringRebuild.clear();
+        }
+        ready = true;
+        log.info("Interest index built: {} interests, {} memberships, {} KB in {} ms",
+                interests, memberships, bytes / 1024,
+                System.currentTimeMillis() - start);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // После коммита приводит индекс к переданному набору интересов пользователя
+    public void updateUserAfterCommit(Long userId, Set<String> interestTypes) {
+        Set<String> snapshot = Set.copyOf(interestTypes);
+        afterCommit(() -> {
+            setUserInterests(userId, snapshot);
+            bus.publish(TOPIC, String.valueOf(userId));
+        });
+    }
+
+    public void removeUserAfterCommit(Long userId) {
+        updateUserAfterCommit(userId, Set.of());
+    }
+
+    public void renameAfterCommit(String oldType, String newType) {
+        afterCommit(() -> {
+            lock.writeLock().lock();
+            try {
+                IdBitmap users = index.remove(oldType);
+                if (users != null) {
+                    IdBitmap existing = index.get(newType);
+                    index.put(newType, existing == null ? users : existing.or(users));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            bus.publish(TOPIC, InvalidationBus.ALL_KEYS);
+        });
+    }
+
+    public List<Long> findAll(Collection<String> interestTypes, long after, int limit) {
+        lock.readLock().lock();
+        try {
+            List<IdBitmap> bitmaps = new ArrayList<>(interestTypes.size());
+            for (String type : new HashSet<>(interestTypes)) {
+                IdBitmap bitmap = index.get(type);
+                if (bitmap == null) {
+                    return List.of();
+                }
+                bitmaps.add(bitmap);
+            }
+            if (bitmaps.isEmpty()) {
+                return List.of();
+            }
+            // Начинаем с самого маленького множества, чтобы промежуточные результаты были меньше
+            bitmaps.sort(Comparator.comparingLong(IdBitmap::cardinality));
+            IdBitmap result = bitmaps.get(0);
+            for (int i = 1; i < bitmaps.size() && !result.isEmpty(); i++) {
+                result = result.and(bitmaps.get(i));
+            }
+            return result.page(after, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Long> findAny(Collection<String> interestTypes, long after, int limit) {
+        lock.readLock().lock();
+        try {
+            IdBitmap result = new IdBitmap();
+            for (String type : new HashSet<>(interestTypes)) {
+                IdBitmap bitmap = index.get(type);
+                if (bitmap != null) {
+                    result = result.or(bitmap);
+                }
+            }
+            return result.page(after, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Лучшие по совпадению интересов пользователи. Общий интерес весит тем больше,
+     * чем он реже (idf как в BM25). Подсчёт идёт по контейнерам битмапов: каждый
+     * контейнер покрывает 65536 id и обрабатывается независимо, поэтому при большом
+     * числе кандидатов контейнеры считаются параллельно, каждый поток держит свой
+     * top-K, а в конце они сливаются.
+     */
+    public List<ScoredUser> topMatches(long userId, Collection<String> interestTypes,
+                                       int limit, Set<Long> excluded) {
+        lock.readLock().lock();
+        try {
+            double total = Math.max(1, indexedUsers.cardinality());
+            List<IdBitmap> postings = new ArrayList<>();
+            List<Float> weights = new ArrayList<>();
+            long postingsSize = 0;
+            Set<Long> keys = new TreeSet<>();
+            for (String type : new HashSet<>(interestTypes)) {
+                IdBitmap bitmap = index.get(type);
+                if (bitmap == null) {
+                    continue;
+                }
+                long df = bitmap.cardinality();
+                postings.add(bitmap);
+                weights.add((float) Math.log(1 + (total - df + 0.5) / (df + 0.5)));
+                postingsSize += df;
+                for (long key : bitmap.containerKeys()) {
+                    keys.add(key);
+                }
+            }
+            if (postings.isEmpty() || limit <= 0) {
+                return List.of();
+            }
+
+            LongStream containers = keys.stream().mapToLong(Long::longValue);
+            if (postingsSize >= PARALLEL_THRESHOLD) {
+                containers = containers.parallel();
+            }
+            TopK top = containers.collect(() -> new TopK(limit),
+                    (heap, key) -> scoreContainer(key, postings, weights, userId, excluded,
+                            heap),
+                    TopK::merge);
+            return top.sorted();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public IndexStats stats() {
+        lock.readLock().lock();
+        try {
+            long memberships = 0;
+            for (IdBitmap bitmap : index.values()) {
+                memberships += bitmap.cardinality();
+            }
+            return new IndexStats(ready, index.size(), memberships, sizeInBytes());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void scoreContainer(long key, List<IdBitmap> postings, List<Float> weights,
+                                       long userId, Set<Long> excluded, TopK top) {
+        Scratch scratch = SCRATCH.get();
+        long high = key << 16;
+        for (int i = 0; i < postings.size(); i++) {
+            float weight = weights.get(i);
+            postings.get(i).forEachInContainer(key, low -> scratch.add(low, weight));
+        }
+        for (int i = 0; i < scratch.touchedCount; i++) {
+            int low = scratch.touched[i];
+            long id = high | low;
+            float score = scratch.scores[low];
+            scratch.scores[low] = 0;
+            if (id != userId && !excluded.contains(id)) {
+                top.offer(new ScoredUser(id, score));
+            }
+        }
+        scratch.touchedCount = 0;
+    }
+
+    private void setUserInterests(Long userId, Set<String> interestTypes) {
+        if (rebuilding) {
+            changedDuringRebuild.add(userId);
+        }
+        lock.writeLock().lock();
+        try {
+            index.entrySet().removeIf(entry -> {
+                if (!interestTypes.contains(entry.getKey())) {
+                    entry.getValue().remove(userId);
+                }
+                return entry.getValue().isEmpty();
+            });
+            for (String type : interestTypes) {
+                index.computeIfAbsent(type, k -> new IdBitmap()).add(userId);
+            }
+            if (interestTypes.isEmpty()) {
+                indexedUsers.remove(userId);
+            } else {
+                indexedUsers.add(userId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reload(List<Long> userIds) {
+        Map<Long, Set<String>> interests = new HashMap<>();
+        userIds.forEach(id -> interests.put(id, new HashSet<>()));
+        for (InterestMembership row : interestRepository.findMembershipsByUserIdIn(userIds)) {
+            interests.get(row.getUserId()).add(row.getInterestType());
+        }
+        interests.forEach(this::setUserInterests);
+    }
+
+    private void onRemoteChange(String topic, Set<String> keys) {
+        if (!TOPIC.equals(topic)) {
+            return;
+        }
+        if (keys.contains(InvalidationBus.ALL_KEYS)) {
+            rebuild();
+            return;
+        }
+        List<Long> userIds = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            try {
+                userIds.add(Long.parseLong(key));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid user id '{}' from invalidation bus", key);
+            }
+        }
+        if (!userIds.isEmpty()) {
+            reload(userIds);
+        }
+    }
+
+    private long sizeInBytes() {
+        long total = 0;
+        for (IdBitmap bitmap : index.values()) {
+            total += bitmap.sizeInBytes();
+        }
+        return total;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            action.run();
+                        }
+                    });
+        } else {
+            action.run();
+        }
+    }
+
+    // Накопители очков на один контейнер (65536 id), по одному на поток
+    private static final class Scratch {
+        private final float[] scores = new float[1 << 16];
+        private final int[] touched = new int[1 << 16];
+        private int touchedCount;
+
+        void add(int low, float weight) {
+            if (scores[low] == 0) {
+                touched[touchedCount++] = low;
+            }
+            scores[low] += weight;
+        }
+    }
+
+    private static final class TopK {
+        // Сверху кучи — худший из отобранных: меньший счёт, при равенстве больший id
+        private static final Comparator<ScoredUser> WORST_FIRST =
+                Comparator.comparingDouble(ScoredUser::score)
+                        .thenComparing(ScoredUser::userId, Comparator.reverseOrder());
+
+        private final int limit;
+        private final PriorityQueue<ScoredUser> heap;
+
+        TopK(int limit) {
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(Math.min(limit, 1024) + 1, WORST_FIRST);
+        }
+
+        void offer(ScoredUser candidate) {
+            if (heap.size() < limit) {
+                heap.add(candidate);
+            } else if (WORST_FIRST.compare(candidate, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(candidate);
+            }
+        }
+
+        void merge(TopK other) {
+            other.heap.forEach(this::offer);
+        }
+
+        List<ScoredUser> sorted() {
+            List<ScoredUser> result = new ArrayList<>(heap);
+            result.sort(WORST_FIRST.reversed());
+            return result;
+        }
+    }
+
+    public record ScoredUser(long userId, double score) {
+    }
+
+    public record IndexStats(boolean ready, int interests, long memberships, long sizeInBytes) {
+    }
+}
@@ -0,0 +1,559 @@
+package com.kirill.meetyou.index;
+
+import com.kirill.meetyou.cache.InvalidationBus;
+import com.kirill.meetyou.repository.UserRepository;
+import com.kirill.meetyou.repository.UserRepository.UserKeys;
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Автодополнение по имени и email: сжатое префиксное дерево (radix trie), в котором
+ * цепочки узлов с одним потомком склеены в одну метку.
+ *
+ * <p>Ключи пользователя — нормализованное имя целиком, каждый его хвост начиная
+ * со второго слова (чтобы «петров» находил «Иван Петров») и email. Нормализация
+ * убирает регистр и диакритику (ё → е). По префиксу отдаются id пользователей с
+ * самыми короткими подходящими ключами: узлы обходятся по возрастанию длины
+ * ключа, поэтому запрос стоит O(длина префикса + limit), а не O(размер поддерева).
+ *
+ * <p>Индекс строится при старте и обновляется после коммита изменений
+ * пользователей; другие экземпляры узнают об изменённых id через
+ * {@link InvalidationBus} и перечитывают их из БД.
+ */
+@Slf4j
+@Component
+public class UserSuggestIndex {
+    static final String TOPIC = "user-suggest";
+    private static final int RELOAD_BATCH_SIZE = 1000;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final long[] NO_IDS = new long[0];
+
+    private final UserRepository userRepository;
+    private final InvalidationBus bus;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<Long> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private Node root = new Node(new char[0]);
+    // Ключи каждого пользователя через '\n', чтобы при изменении убрать старые
+    private Map<Long, String> keysByUser = new HashMap<>();
+    private long postings;
+    private volatile boolean ready;
+    private volatile boolean rebuilding;
+
+    public UserSuggestIndex(UserRepository userRepository, InvalidationBus bus,
+                            PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.bus = bus;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        bus.subscribe(this::onRemoteChange);
+    }
+
+    // Вызывается и при старте, и из потока шины инвалидации, поэтому транзакция
+    // открывается явно, а не через @Transactional
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        rebuilding = true;
+        changedDuringRebuild.clear();
+        Node rebuiltRoot = new Node(new char[0]);
+        Map<Long, String> rebuiltKeys = new HashMap<>();
+        long rebuiltPostings = readOnlyTransaction.execute(status -> {
+            long count = 0;
+            try (Stream<UserKeys> rows = userRepository.streamSuggestKeys()) {
+                for (UserKeys row : (Iterable<UserKeys>) rows::iterator) {
+                    List<String> keys = keysFor(row.getName(), row.getEmail());
+                    for (String key : keys) {
+                        insert(rebuiltRoot, key, row.getId());
+                    }
+                    rebuiltKeys.put(row.getId(), String.join("\n", keys));
+                    count += keys.size();
+                }
+            }
+            return count;
+        });
+
+        lock.writeLock().lock();
+        try {
+            root = rebuiltRoot;
+            keysByUser = rebuiltKeys;
+            postings = rebuiltPostings;
+            rebuilding = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // Изменения, закоммиченные во время чтения, могли не попасть в снимок
+        if (!changedDuringRebuild.isEmpty()) {
+            reload(new ArrayList<>(changedDuringRebuild));
+            changedDuringRebuild.clear();
+        }
+        ready = true;
+        log.info("User suggest index built: {} users, {} keys, {} KB in {} ms",
+                rebuiltKeys.size(), rebuiltPostings, stats().sizeInBytes() / 1024,
+                System.currentTimeMillis() - start);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void updateUserAfterCommit(Long userId, String name, String email) {
+        afterCommit(() -> {
+            setUserKeys(userId, keysFor(name, email));
+            bus.publish(TOPIC, String.valueOf(userId));
+        });
+    }
+
+    public void removeUserAfterCommit(Long userId) {
+        afterCommit(() -> {
+            setUserKeys(userId, List.of());
+            bus.publish(TOPIC, String.valueOf(userId));
+        });
+    }
+
+    // id пользователей, у которых есть ключ с таким префиксом; сначала самые короткие ключи
+    public List<Long> suggest(String prefix, int limit) {
+        long start = System.nanoTime();
+        Set<Long> result = new LinkedHashSet<>();
+        String name = normalizeName(prefix);
+        String email = normalizeEmail(prefix);
+        lock.readLock().lock();
+        try {
+            if (!name.isEmpty()) {
+                collect(name, limit, result);
+            }
+            if (!email.isEmpty() && !email.equals(name)) {
+                collect(email, limit, result);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        latency.record(System.nanoTime() - start);
+        return new ArrayList<>(result);
+    }
+
+    public SuggestStats stats() {
+        lock.readLock().lock();
+        try {
+            long nodes = 0;
+            long bytes = 0;
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node node = stack.pop();
+                nodes++;
+                bytes += Node.sizeInBytes(node);
+                for (Node child : node.children) {
+                    stack.push(child);
+                }
+            }
+            for (String keys : keysByUser.values()) {
+                // Запись HashMap, Long и строка с массивом байт
+                bytes += 32 + 16 + 40 + keys.length();
+            }
+            return new SuggestStats(ready, keysByUser.size(), postings, nodes, bytes,
+                    latency.count(), latency.averageMicros(), latency.percentileMicros(0.5),
+                    latency.percentileMicros(0.99), latency.maxMicros());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static List<String> keysFor(String name, String email) {
+        List<String> keys = new ArrayList<>(4);
+        String normalizedName = normalizeName(name);
+        if (!normalizedName.isEmpty()) {
+            keys.add(normalizedName);
+            for (int i = normalizedName.indexOf(' '); i >= 0;
+                 i = normalizedName.indexOf(' ', i + 1)) {
+                keys.add(normalizedName.substring(i + 1));
+            }
+        }
+        String normalizedEmail = normalizeEmail(email);
+        if (!normalizedEmail.isEmpty() && !keys.contains(normalizedEmail)) {
+            keys.add(normalizedEmail);
+        }
+        return keys;
+    }
+
+    static String normalizeName(String value) {
+        if (value == null) {
+            return "";
+        }
+        String folded = foldCase(value);
+        return NON_WORD.matcher(folded).replaceAll(" ").trim();
+    }
+
+    static String normalizeEmail(String value) {
+        if (value == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(foldCase(value)).replaceAll("");
+    }
+
+    private static String foldCase(String value) {
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFKD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    private void collect(String prefix, int limit, Set<Long> result) {
+        Node node = root;
+        int depth = 0;
+        while (depth < prefix.length()) {
+            int index = node.childIndex(prefix.charAt(depth));
+            if (index < 0) {
+                return;
+            }
+            Node child = node.children[index];
+            int matched = child.commonPrefix(prefix, depth);
+            if (depth + matched < prefix.length() && matched < child.label.length) {
+                return;
+            }
+            node = child;
+            depth += child.label.length;
+        }
+
+        // Обход по возрастанию длины ключа; при равной длине — в порядке ключей
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(
+                Comparator.comparingInt(Candidate::depth).thenComparingLong(Candidate::order));
+        long order = 0;
+        queue.add(new Candidate(node, depth, order++));
+        while (!queue.isEmpty() && result.size() < limit) {
+            Candidate candidate = queue.poll();
+            for (long id : candidate.node().ids) {
+                result.add(id);
+                if (result.size() >= limit) {
+                    return;
+                }
+            }
+            for (Node child : candidate.node().children) {
+                queue.add(new Candidate(child, candidate.depth() + child.label.length,
+                        order++));
+            }
+        }
+    }
+
+    private void setUserKeys(Long userId, List<String> keys) {
+        if (rebuilding) {
+            changedDuringRebuild.add(userId);
+        }
+        lock.writeLock().lock();
+        try {
+            String previous = keys.isEmpty()
+                    ? keysByUser.remove(userId)
+                    : keysByUser.put(userId, String.join("\n", keys));
+            Set<String> current = new HashSet<>(keys);
+            if (previous != null) {
+                for (String key : previous.split("\n")) {
+                    if (!current.remove(key) && remove(root, key, userId)) {
+                        postings--;
+                    }
+                }
+            }
+            for (String key : current) {
+                if (insert(root, key, userId)) {
+                    postings++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reload(List<Long> userIds) {
+        for (int from = 0; from < userIds.size(); from += RELOAD_BATCH_SIZE) {
+            List<Long> batch = userIds.subList(from,
+                    Math.min(from + RELOAD_BATCH_SIZE, userIds.size()));
+            List<UserKeys> rows = readOnlyTransaction.execute(
+                    status -> userRepository.findSuggestKeysByIdIn(batch));
+            Set<Long> missing = new HashSet<>(batch);
+            for (UserKeys row : rows) {
+                missing.remove(row.getId());
+                setUserKeys(row.getId(), keysFor(row.getName(), row.getEmail()));
+            }
+            missing.forEach(id -> setUserKeys(id, List.of()));
+        }
+    }
+
+    private void onRemoteChange(String topic, Set<String> keys) {
+        if (!TOPIC.equals(topic)) {
+            return;
+        }
+        if (keys.contains(InvalidationBus.ALL_KEYS)) {
+            rebuild();
+            return;
+        }
+        List<Long> userIds = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            try {
+                userIds.add(Long.parseLong(key));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid user id '{}' from invalidation bus", key);
+            }
+        }
+        if (!userIds.isEmpty()) {
+            reload(userIds);
+        }
+    }
+
+    // true, если пары ключ — id ещё не было
+    private static boolean insert(Node root, String key, long id) {
+        Node node = root;
+        int depth = 0;
+        while (depth < key.length()) {
+            int index = node.childIndex(key.charAt(depth));
+            if (index < 0) {
+                Node leaf = new Node(key.substring(depth).toCharArray());
+                leaf.ids = new long[] {id};
+                node.insertChild(-index - 1, leaf);
+                return true;
+            }
+            Node child = node.children[index];
+            int matched = child.commonPrefix(key, depth);
+            if (matched < child.label.length) {
+                // Ключ расходится с меткой посередине: метка делится на две
+                Node split = new Node(Arrays.copyOf(child.label, matched));
+                child.label = Arrays.copyOfRange(child.label, matched, child.label.length);
+                split.children = new Node[] {child};
+                node.children[index] = split;
+                child = split;
+            }
+            node = child;
+            depth += matched;
+        }
+        int position = Arrays.binarySearch(node.ids, id);
+        if (position >= 0) {
+            return false;
+        }
+        int insertAt = -position - 1;
+        long[] ids = new long[node.ids.length + 1];
+        System.arraycopy(node.ids, 0, ids, 0, insertAt);
+        ids[insertAt] = id;
+        System.arraycopy(node.ids, insertAt, ids, insertAt + 1, node.ids.length - insertAt);
+        node.ids = ids;
+        return true;
+    }
+
+    // Убирает id и склеивает узлы, которые после этого остались с одним потомком
+    private static boolean remove(Node root, String key, long id) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int depth = 0;
+        while (depth < key.length()) {
+            int index = node.childIndex(key.charAt(depth));
+            if (index < 0) {
+                return false;
+            }
+            Node child = node.children[index];
+            if (child.commonPrefix(key, depth) < child.label.length) {
+                return false;
+            }
+            path.add(node);
+            node = child;
+            depth += child.label.length;
+        }
+        int position = Arrays.binarySearch(node.ids, id);
+        if (position < 0) {
+            return false;
+        }
+        long[] ids = node.ids.length == 1 ? NO_IDS : new long[node.ids.length - 1];
+        System.arraycopy(node.ids, 0, ids, 0, position);
+        System.arraycopy(node.ids, position + 1, ids, position, ids.length - position);
+        node.ids = ids;
+
+        if (node.ids.length > 0) {
+            return true;
+        }
+        // Узел без id держится только ради развилки из двух и более потомков
+        if (node.children.length == 0) {
+            Node parent = path.get(path.size() - 1);
+            parent.removeChild(node);
+            if (parent != root && parent.ids.length == 0 && parent.children.length == 1) {
+                parent.absorbOnlyChild();
+            }
+        } else if (node.children.length == 1) {
+            node.absorbOnlyChild();
+        }
+        return true;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            action.run();
+                        }
+                    });
+        } else {
+            action.run();
+        }
+    }
+
+    private static final class Node {
+        private char[] label;
+        private Node[] children = NO_CHILDREN;
+        private long[] ids = NO_IDS;
+
+        private Node(char[] label) {
+            this.label = label;
+        }
+
+        // Потомки упорядочены по первому символу метки, у двух потомков он не совпадает
+        int childIndex(char first) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char value = children[mid].label[0];
+                if (value < first) {
+                    low = mid + 1;
+                } else if (value > first) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        int commonPrefix(String key, int offset) {
+            int max = Math.min(label.length, key.length() - offset);
+            int i = 0;
+            while (i < max && label[i] == key.charAt(offset + i)) {
+                i++;
+            }
+            return i;
+        }
+
+        void insertChild(int index, Node child) {
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, index);
+            grown[index] = child;
+            System.arraycopy(children, index, grown, index + 1, children.length - index);
+            children = grown;
+        }
+
+        void removeChild(Node child) {
+            int index = childIndex(child.label[0]);
+            Node[] shrunk = children.length == 1 ? NO_CHILDREN : new Node[children.length - 1];
+            System.arraycopy(children, 0, shrunk, 0, index);
+            System.arraycopy(children, index + 1, shrunk, index, shrunk.length - index);
+            children = shrunk;
+        }
+
+        void absorbOnlyChild() {
+            Node child = children[0];
+            char[] merged = Arrays.copyOf(label, label.length + child.label.length);
+            System.arraycopy(child.label, 0, merged, label.length, child.label.length);
+            label = merged;
+            children = child.children;
+            ids = child.ids;
+        }
+
+        // Заголовок объекта и три ссылки плюс непустые массивы (сжатые ссылки, 64 бит)
+        static long sizeInBytes(Node node) {
+            long bytes = 24 + align(16 + 2L * node.label.length);
+            if (node.children.length > 0) {
+                bytes += align(16 + 4L * node.children.length);
+            }
+            if (node.ids.length > 0) {
+                bytes += 16 + 8L * node.ids.length;
+            }
+            return bytes;
+        }
+
+        private static long align(long bytes) {
+            return (bytes + 7) & ~7L;
+        }
+    }
+
+    private record Candidate(Node node, int depth, long order) {
+    }
+
+    // Гистограмма задержек по степеням двойки микросекунд
+    private static final class LatencyHistogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(40);
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(1, nanos / 1000);
+            buckets.incrementAndGet(63 - Long.numberOfLeadingZeros(micros));
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        double averageMicros() {
+            long count = count();
+            return count == 0 ? 0 : totalNanos.sum() / 1000.0 / count;
+        }
+
+        // Верхняя граница корзины, в которую попадает перцентиль
+        long percentileMicros(double percentile) {
+            long count = count();
+            if (count == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(count * percentile);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= target) {
+                    return (2L << i) - 1;
+                }
+            }
+            return maxMicros();
+        }
+
+        long maxMicros() {
+            return maxNanos.get() / 1000;
+        }
+    }
+
+    public record SuggestStats(boolean ready, int users, long keys, long nodes,
+                               long sizeInBytes, long queries, double averageMicros,
+                               long p50Micros, long p99Micros, long maxMicros) {
+    }
+}
@@ -0,0 +1,47 @@
+package com.kirill.meetyou.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// Отметка прочтения: reader прочитал все сообщения от interlocutor с id <= lastReadId.
+// Пишется только upsert-ом MessageBatchRepository.markRead
+@Getter
+@Setter
+@Entity
+@Table(name = "conversation_reads")
+@IdClass(ConversationRead.Key.class)
+public class ConversationRead {
+    @Id
+    @Column(name = "reader_id")
+    private Long readerId;
+
+    @Id
+    @Column(name = "interlocutor_id")
+    private Long interlocutorId;
+
+    @Column(name = "last_read_id", nullable = false)
+    private Long lastReadId;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+        private Long readerId;
+        private Long interlocutorId;
+    }
+}
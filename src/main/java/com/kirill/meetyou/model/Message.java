@@ -6,8 +6,10 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
 import jakarta.persistence.Table;
 import java.time.LocalDateTime;
 import lombok.Getter;
@@ -16,7 +18,11 @@ import lombok.Setter;
 @Getter
 @Setter
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    @Index(name = "idx_messages_conversation",
+            columnList = "conversation_low, conversation_high, timestamp, id"),
+    @Index(name = "idx_messages_inbox", columnList = "receiver_id, sender_id, id")
+})
 public class Message {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -36,10 +42,28 @@ public class Message {
     @JoinColumn(name = "receiver_id", nullable = false)
     private User receiver;
 
+    // Больше не обновляется: прочтение хранится отметками в conversation_reads,
+    // прежняя семантика is_read доступна через представление messages_read_state
     @Column(name = "is_read", nullable = false)
     private boolean isRead = false;
 
+    // Ключ переписки — упорядоченная пара id участников: оба направления
+    // лежат в одном диапазоне индекса idx_messages_conversation
+    @Column(name = "conversation_low")
+    private Long conversationLow;
+
+    @Column(name = "conversation_high")
+    private Long conversationHigh;
+
     public Message() {
         this.timestamp = LocalDateTime.now();
     }
+
+    @PrePersist
+    void assignConversationKey() {
+        long senderId = sender.getId();
+        long receiverId = receiver.getId();
+        conversationLow = Math.min(senderId, receiverId);
+        conversationHigh = Math.max(senderId, receiverId);
+    }
 }
\ No newline at end of file
@@ -14,12 +14,14 @@ import jakarta.persistence.OneToMany;
 import jakarta.persistence.OneToOne;
 import jakarta.persistence.Table;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.UpdateTimestamp;
 
 @Setter
 @Getter
@@ -36,6 +38,19 @@ public class User {
     private LocalDate birth;
     private Integer age;
 
+    // Число друзей; меняется только SQL-запросами FriendBatchRepository вместе с
+    // user_friends, поэтому Hibernate его не пишет
+    @Column(name = "friend_count", insertable = false, updatable = false,
+            columnDefinition = "integer not null default 0")
+    @JsonIgnore
+    private int friendCount;
+
+    // Метка последнего изменения: по ней проверяется актуальность сохранённого кэша
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    @JsonIgnore
+    private LocalDateTime updatedAt;
+
     @OneToMany(mappedBy = "sender", cascade = CascadeType.ALL, orphanRemoval = true)
     @JsonIgnore
     private List<Message> sentMessages = new ArrayList<>();
@@ -1,11 +1,45 @@
 package com.kirill.meetyou.repository;
 
 import com.kirill.meetyou.model.Bio;
+import jakarta.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 public interface BioRepository extends JpaRepository<Bio, Long> {
     Optional<Bio> findByUserId(Long userId);
 
     boolean existsByUserId(Long userId);
-}
\ No newline at end of file
+
+    // Тексты биографий для полнотекстового индекса
+    @Query("SELECT b.user.id AS userId, b.userBio AS bio, b.interestFact AS interestFact "
+            + "FROM Bio b")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<BioText> streamAllTexts();
+
+    @Query("SELECT b.user.id AS userId, b.userBio AS bio, b.interestFact AS interestFact "
+            + "FROM Bio b WHERE b.updatedAt IS NULL OR b.updatedAt > :since")
+    List<BioText> findTextsChangedSince(@Param("since") LocalDateTime since);
+
+    @Query("SELECT b.user.id AS userId, b.userBio AS bio, b.interestFact AS interestFact "
+            + "FROM Bio b WHERE b.user.id IN :userIds")
+    List<BioText> findTextsByUserIdIn(@Param("userIds") Collection<Long> userIds);
+
+    @Query("SELECT b.user.id FROM Bio b")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<Long> streamAllUserIds();
+
+    interface BioText {
+        Long getUserId();
+
+        String getBio();
+
+        String getInterestFact();
+    }
+}
@@ -0,0 +1,189 @@
+package com.kirill.meetyou.repository;
+
+import com.kirill.meetyou.dto.FriendPair;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Изменения дружбы напрямую в user_friends, без загрузки User и коллекций
+ * friends/friendOf. Дружба неориентированная: вставка пропускается, если связь
+ * уже есть в любую сторону, удаление убирает обе стороны. Одновременные (A,B) и
+ * (B,A) разводит уникальный индекс по неупорядоченной паре.
+ *
+ * <p>Здесь же ведётся users.friend_count: вызывающий код меняет его в той же
+ * транзакции, что и user_friends.
+ *
+ * <p>Индекс по паре создаётся после инициализации всех бинов (и схемы Hibernate),
+ * но до запуска веб-сервера: без него встречные вставки не разводятся, поэтому
+ * ошибка создания останавливает запуск.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class FriendBatchRepository implements SmartInitializingSingleton {
+    // Существование пользователей проверяется тем же запросом, чтобы строка
+    // с удалённым пользователем не роняла весь пакет на внешнем ключе
+    private static final String INSERT_SQL = "INSERT INTO user_friends (user_id, friend_id) "
+            + "SELECT ?, ? WHERE EXISTS (SELECT 1 FROM users WHERE id = ?) "
+            + "AND EXISTS (SELECT 1 FROM users WHERE id = ?) "
+            + "AND NOT EXISTS (SELECT 1 FROM user_friends WHERE user_id = ? AND friend_id = ?) "
+            + "ON CONFLICT DO NOTHING";
+    private static final String PAIR_INDEX = "idx_user_friends_pair";
+    // Встречные дубли от старого кода: остаётся строка с меньшим user_id
+    private static final String DEDUPLICATE_SQL = "DELETE FROM user_friends f "
+            + "USING user_friends r WHERE f.user_id = r.friend_id AND f.friend_id = r.user_id "
+            + "AND f.user_id > f.friend_id";
+    private static final String PAIR_INDEX_SQL = "CREATE UNIQUE INDEX IF NOT EXISTS "
+            + PAIR_INDEX + " ON user_friends "
+            + "(LEAST(user_id, friend_id), GREATEST(user_id, friend_id))";
+    private static final String DELETE_SQL = "DELETE FROM user_friends "
+            + "WHERE (user_id = ? AND friend_id = ?) OR (user_id = ? AND friend_id = ?)";
+
+    // Друзья считаются без учёта направления и повторов, как в findFriendIds
+    private static final String RECONCILE_SQL = "UPDATE users u SET friend_count = c.friends "
+            + "FROM (SELECT u2.id, COUNT(DISTINCT e.other) AS friends FROM users u2 "
+            + "LEFT JOIN (SELECT user_id AS id, friend_id AS other FROM user_friends "
+            + "UNION ALL SELECT friend_id, user_id FROM user_friends) e ON e.id = u2.id "
+            + "GROUP BY u2.id) c WHERE u.id = c.id AND u.friend_count <> c.friends";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            int duplicates = ensurePairIndex();
+            if (duplicates > 0) {
+                log.info("Removed {} reverse duplicate friendships", duplicates);
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Failed to create " + PAIR_INDEX, e);
+        }
+    }
+
+    // Один раз: убирает встречные дубли и создаёт индекс; ON CONFLICT DO NOTHING
+    // в INSERT_SQL срабатывает и на нём. Возвращает число удалённых дублей
+    private int ensurePairIndex() {
+        Boolean exists = jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, PAIR_INDEX);
+        if (Boolean.TRUE.equals(exists)) {
+            return 0;
+        }
+        int removed = jdbcTemplate.update(DEDUPLICATE_SQL);
+        jdbcTemplate.execute(PAIR_INDEX_SQL);
+        return removed;
+    }
+
+    // false, если пользователи уже друзья или одного из них нет
+    public boolean insert(long userId, long friendId) {
+        return jdbcTemplate.update(INSERT_SQL, userId, friendId, userId, friendId,
+                friendId, userId) > 0;
+    }
+
+    public boolean delete(long userId, long friendId) {
+        return jdbcTemplate.update(DELETE_SQL, userId, friendId, friendId, userId) > 0;
+    }
+
+    // Один JDBC-пакет; для каждой пары — была ли она вставлена
+    public boolean[] insertAll(List<FriendPair> pairs) {
+        return applied(jdbcTemplate.batchUpdate(INSERT_SQL, pairs, pairs.size(),
+                (statement, pair) -> {
+                    statement.setLong(1, pair.userId());
+                    statement.setLong(2, pair.friendId());
+                    statement.setLong(3, pair.userId());
+                    statement.setLong(4, pair.friendId());
+                    statement.setLong(5, pair.friendId());
+                    statement.setLong(6, pair.userId());
+                }));
+    }
+
+    public boolean[] deleteAll(List<FriendPair> pairs) {
+        return applied(jdbcTemplate.batchUpdate(DELETE_SQL, pairs, pairs.size(),
+                (statement, pair) -> {
+                    statement.setLong(1, pair.userId());
+                    statement.setLong(2, pair.friendId());
+                    statement.setLong(3, pair.friendId());
+                    statement.setLong(4, pair.userId());
+                }));
+    }
+
+    private static boolean[] applied(int[][] counts) {
+        int total = 0;
+        for (int[] batch : counts) {
+            total += batch.length;
+        }
+        boolean[] applied = new boolean[total];
+        int index = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                applied[index++] = count > 0;
+            }
+        }
+        return applied;
+    }
+
+    // Удаляет все связи пользователя; возвращает id бывших друзей
+    public List<Long> deleteAllOf(long userId) {
+        List<Long> friends = jdbcTemplate.queryForList(
+                "DELETE FROM user_friends WHERE user_id = ? OR friend_id = ? "
+                        + "RETURNING CASE WHEN user_id = ? THEN friend_id ELSE user_id END",
+                Long.class, userId, userId, userId);
+        return new ArrayList<>(new LinkedHashSet<>(friends));
+    }
+
+    // Строки users обновляются по возрастанию id, чтобы встречные добавления
+    // блокировали их в одном порядке и не взаимоблокировались
+    public void adjustFriendCounts(Map<Long, Integer> deltas) {
+        List<Map.Entry<Long, Integer>> rows = new ArrayList<>(new TreeMap<>(deltas).entrySet());
+        jdbcTemplate.batchUpdate(
+                "UPDATE users SET friend_count = friend_count + ? WHERE id = ?",
+                rows, rows.size(), (statement, row) -> {
+                    statement.setInt(1, row.getValue());
+                    statement.setLong(2, row.getKey());
+                });
+    }
+
+    public int reconcileFriendCounts() {
+        return jdbcTemplate.update(RECONCILE_SQL);
+    }
+
+    public int findFriendCount(long userId) {
+        List<Integer> counts = jdbcTemplate.queryForList(
+                "SELECT friend_count FROM users WHERE id = ?", Integer.class, userId);
+        return counts.isEmpty() ? 0 : counts.get(0);
+    }
+
+    public Map<Long, Integer> findFriendCounts(Collection<Long> userIds) {
+        Map<Long, Integer> counts = new HashMap<>();
+        if (userIds.isEmpty()) {
+            return counts;
+        }
+        namedJdbcTemplate.query("SELECT id, friend_count FROM users WHERE id IN (:ids)",
+                new MapSqlParameterSource("ids", userIds),
+                rs -> {
+                    counts.put(rs.getLong(1), rs.getInt(2));
+                });
+        return counts;
+    }
+
+    // Только пользователи с друзьями: у остальных счётчик и так 0
+    public void forEachFriendCount(BiConsumer<Long, Integer> consumer) {
+        jdbcTemplate.query("SELECT id, friend_count FROM users WHERE friend_count > 0",
+                rs -> {
+                    consumer.accept(rs.getLong(1), rs.getInt(2));
+                });
+    }
+}
@@ -1,16 +1,64 @@
 package com.kirill.meetyou.repository;
 
 import com.kirill.meetyou.model.User;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 public interface FriendRepository extends JpaRepository<User, Long> {
-    @Query("SELECT u FROM User u JOIN u.friends f WHERE f.id = :userId")
+    @Query("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.interests "
+            + "JOIN u.friends f WHERE f.id = :userId")
     List<User> findFriendsOfUser(@Param("userId") Long userId);
 
     @Query("SELECT CASE WHEN COUNT(f) > 0 THEN true ELSE false END FROM User u "
             + "JOIN u.friends f WHERE u.id = :userId AND f.id = :friendId")
     boolean existsFriendship(@Param("userId") Long userId, @Param("friendId") Long friendId);
+
+    // Id друзей в обе стороны связи
+    @Query(value = "SELECT friend_id FROM user_friends WHERE user_id = :userId "
+            + "UNION SELECT user_id FROM user_friends WHERE friend_id = :userId",
+            nativeQuery = true)
+    List<Long> findFriendIds(@Param("userId") Long userId);
+
+    // Страница id друзей после курсора, пока граф друзей в памяти не построен
+    @Query(value = "SELECT id FROM (SELECT friend_id AS id FROM user_friends "
+            + "WHERE user_id = :userId UNION SELECT user_id FROM user_friends "
+            + "WHERE friend_id = :userId) f WHERE id > :after ORDER BY id LIMIT :limit",
+            nativeQuery = true)
+    List<Long> findFriendIdsAfter(@Param("userId") Long userId, @Param("after") Long after,
+                                  @Param("limit") int limit);
+
+    @Query("SELECT u.id AS id, u.name AS name, u.age AS age, u.friendCount AS friendCount "
+            + "FROM User u WHERE u.id IN :ids")
+    List<FriendSummaryView> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Все строки user_friends для построения графа в памяти
+    @Query("SELECT u.id AS userId, f.id AS friendId FROM User u JOIN u.friends f")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<FriendEdge> streamEdges();
+
+    @Query("SELECT u.id AS userId, f.id AS friendId FROM User u JOIN u.friends f "
+            + "WHERE u.id IN :userIds OR f.id IN :userIds")
+    List<FriendEdge> findEdgesOfUsers(@Param("userIds") Collection<Long> userIds);
+
+    interface FriendSummaryView {
+        Long getId();
+
+        String getName();
+
+        Integer getAge();
+
+        int getFriendCount();
+    }
+
+    interface FriendEdge {
+        Long getUserId();
+
+        Long getFriendId();
+    }
 }
@@ -1,11 +1,35 @@
 package com.kirill.meetyou.repository;
 
 import com.kirill.meetyou.model.Interest;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
 public interface InterestRepository extends JpaRepository<Interest, Long> {
     Optional<Interest> findByInterestType(String interestType);
 
     boolean existsByInterestType(String interestType);
+
+    // Все пары интерес — пользователь для построения инвертированного индекса
+    @Query("SELECT i.interestType AS interestType, u.id AS userId "
+            + "FROM Interest i JOIN i.users u")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<InterestMembership> streamMemberships();
+
+    @Query("SELECT i.interestType AS interestType, u.id AS userId "
+            + "FROM Interest i JOIN i.users u WHERE u.id IN :userIds")
+    List<InterestMembership> findMembershipsByUserIdIn(
+            @Param("userIds") Collection<Long> userIds);
+
+    interface InterestMembership {
+        String getInterestType();
+
+        Long getUserId();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,238 @@
+package com.kirill.meetyou.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Служебные запросы к messages в обход Hibernate.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MessageBatchRepository {
+    // Диапазонами первичного ключа: каждый шаг читает только свои id, без
+    // повторного поиска NULL по всей таблице
+    private static final String BACKFILL_SQL = "UPDATE messages "
+            + "SET conversation_low = LEAST(sender_id, receiver_id), "
+            + "conversation_high = GREATEST(sender_id, receiver_id) "
+            + "WHERE id > ? AND id <= ? AND conversation_low IS NULL";
+    private static final String CONVERSATION_KEY_CHECK = "messages_conversation_key_present";
+
+    // Непрочитанное — сообщения от отправителя с id больше отметки получателя;
+    // считается диапазоном по idx_messages_inbox (receiver_id, sender_id, id)
+    private static final String UNREAD_FROM = "FROM messages m "
+            + "LEFT JOIN conversation_reads r "
+            + "ON r.reader_id = m.receiver_id AND r.interlocutor_id = m.sender_id ";
+    private static final String UNREAD_WHERE = "m.id > COALESCE(r.last_read_id, 0) ";
+
+    // Одним запросом сдвигает отметку до последнего сообщения собеседника и
+    // возвращает, сколько сообщений стали прочитанными. Выполняется под
+    // исключительной блокировкой пары, поэтому prev — отметка, зафиксированная
+    // предыдущим прочтением, а не снимок, общий с параллельным вызовом
+    private static final String MARK_READ_SQL = "WITH latest AS ("
+            + "SELECT MAX(id) AS id FROM messages WHERE receiver_id = ? AND sender_id = ?), "
+            + "prev AS (SELECT last_read_id FROM conversation_reads "
+            + "WHERE reader_id = ? AND interlocutor_id = ?), "
+            + "moved AS (INSERT INTO conversation_reads "
+            + "(reader_id, interlocutor_id, last_read_id, updated_at) "
+            + "SELECT ?, ?, latest.id, now() FROM latest WHERE latest.id IS NOT NULL "
+            + "ON CONFLICT (reader_id, interlocutor_id) DO UPDATE "
+            + "SET last_read_id = EXCLUDED.last_read_id, updated_at = EXCLUDED.updated_at "
+            + "WHERE conversation_reads.last_read_id < EXCLUDED.last_read_id "
+            + "RETURNING last_read_id) "
+            + "SELECT COUNT(*) FROM messages m, moved WHERE m.receiver_id = ? "
+            + "AND m.sender_id = ? AND m.id > COALESCE((SELECT last_read_id FROM prev), 0) "
+            + "AND m.id <= moved.last_read_id";
+
+    // Блокировки пар в порядке ключей: отправители пакета не взаимоблокируются
+    // с прочтениями разных пар
+    private static final String LOCK_FOR_SEND_SQL = "SELECT pg_advisory_xact_lock_shared(k) "
+            + "FROM (SELECT DISTINCT k FROM unnest(?::bigint[]) AS k ORDER BY k) AS keys";
+
+    // Прежняя семантика is_read для отчётов и внешних запросов
+    private static final String READ_STATE_VIEW_SQL = "CREATE OR REPLACE VIEW "
+            + "messages_read_state AS SELECT m.id, m.content, m.timestamp, m.sender_id, "
+            + "m.receiver_id, m.id <= COALESCE(r.last_read_id, 0) AS is_read "
+            + "FROM messages m LEFT JOIN conversation_reads r "
+            + "ON r.reader_id = m.receiver_id AND r.interlocutor_id = m.sender_id";
+
+    // Переписки всегда помечались прочитанными целиком, поэтому максимальный
+    // прочитанный id и есть отметка
+    private static final String BACKFILL_WATERMARKS_SQL = "INSERT INTO conversation_reads "
+            + "(reader_id, interlocutor_id, last_read_id, updated_at) "
+            + "SELECT receiver_id, sender_id, MAX(id), now() FROM messages WHERE is_read "
+            + "GROUP BY receiver_id, sender_id ON CONFLICT DO NOTHING";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    /**
+     * Заполняет ключ переписки у сообщений, записанных до его появления, один раз.
+     *
+     * <p>Сначала добавляется CHECK ... NOT VALID: он сразу действует на новые
+     * строки, поэтому достаточно одного прохода до текущего MAX(id). После прохода
+     * VALIDATE проверяет таблицу, не блокируя запись, и проверенное ограничение
+     * служит признаком того, что заполнять больше нечего.
+     */
+    public long backfillConversationKeys(int batchSize) {
+        Boolean validated = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 "
+                + "FROM pg_constraint WHERE conname = ? AND convalidated)", Boolean.class,
+                CONVERSATION_KEY_CHECK);
+        if (Boolean.TRUE.equals(validated)) {
+            return 0;
+        }
+        jdbcTemplate.execute("DO $$ BEGIN ALTER TABLE messages ADD CONSTRAINT "
+                + CONVERSATION_KEY_CHECK + " CHECK (conversation_low IS NOT NULL "
+                + "AND conversation_high IS NOT NULL) NOT VALID; "
+                + "EXCEPTION WHEN duplicate_object THEN NULL; END $$");
+
+        Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM messages", Long.class);
+        long total = 0;
+        for (long from = 0; maxId != null && from < maxId; from += batchSize) {
+            total += jdbcTemplate.update(BACKFILL_SQL, from, Math.min(from + batchSize, maxId));
+        }
+        jdbcTemplate.execute("ALTER TABLE messages VALIDATE CONSTRAINT "
+                + CONVERSATION_KEY_CHECK);
+        return total;
+    }
+
+    public List<Long> reserveIds(int count) {
+        return jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence('messages', 'id')) "
+                        + "FROM generate_series(1, ?)", Long.class, count);
+    }
+
+    // Существующие пользователи; FOR KEY SHARE не даёт удалить их до конца транзакции
+    public Set<Long> lockExistingUsers(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Set.of();
+        }
+        return new HashSet<>(namedJdbcTemplate.queryForList(
+                "SELECT id FROM users WHERE id IN (:ids) FOR KEY SHARE",
+                new MapSqlParameterSource("ids", userIds), Long.class));
+    }
+
+    // Одним JDBC-пакетом; reWriteBatchedInserts превращает его в многострочные INSERT
+    public void insertAll(List<NewMessage> messages) {
+        jdbcTemplate.batchUpdate("INSERT INTO messages (id, content, timestamp, sender_id, "
+                        + "receiver_id, is_read, conversation_low, conversation_high) "
+                        + "VALUES (?, ?, ?, ?, ?, false, ?, ?)",
+                messages, messages.size(), (statement, message) -> {
+                    statement.setLong(1, message.id());
+                    statement.setString(2, message.content());
+                    statement.setTimestamp(3, Timestamp.valueOf(message.timestamp()));
+                    statement.setLong(4, message.senderId());
+                    statement.setLong(5, message.receiverId());
+                    statement.setLong(6, Math.min(message.senderId(), message.receiverId()));
+                    statement.setLong(7, Math.max(message.senderId(), message.receiverId()));
+                });
+    }
+
+    // Переход с is_read на отметки прочтения, один раз: представление создаётся
+    // последним и служит признаком выполненной миграции. Вызывать в транзакции
+    public int migrateReadState() {
+        Boolean migrated = jdbcTemplate.queryForObject(
+                "SELECT to_regclass('messages_read_state') IS NOT NULL", Boolean.class);
+        if (Boolean.TRUE.equals(migrated)) {
+            return 0;
+        }
+        int seeded = jdbcTemplate.update(BACKFILL_WATERMARKS_SQL);
+        jdbcTemplate.execute(READ_STATE_VIEW_SQL);
+        return seeded;
+    }
+
+    /**
+     * Ключ advisory-блокировки пары получатель–отправитель. Совпадение ключей
+     * разных пар только добавляет ожидание.
+     */
+    public static long readLockKey(long receiverId, long senderId) {
+        return (receiverId << 32) ^ senderId;
+    }
+
+    /**
+     * Разделяемые блокировки пар до конца транзакции отправки; брать до выдачи id.
+     *
+     * <p>Отметка прочтения верна, только если сообщения пары становятся видимы в
+     * порядке id: иначе сообщение с меньшим id, закоммиченное после прочтения,
+     * окажется ниже отметки и никогда не будет непрочитанным. Прочтение берёт ту же
+     * блокировку исключительно, поэтому ждёт коммита всех отправок, уже получивших
+     * id, а новые id выдаются после него и больше отметки. Запись в messages в
+     * обход этого метода (ручные INSERT, другие сервисы) такую гарантию нарушает.
+     */
+    public void lockForSend(Collection<Long> lockKeys) {
+        if (lockKeys.isEmpty()) {
+            return;
+        }
+        Long[] keys = lockKeys.toArray(new Long[0]);
+        jdbcTemplate.query(LOCK_FOR_SEND_SQL,
+                statement -> statement.setArray(1,
+                        statement.getConnection().createArrayOf("bigint", keys)),
+                rs -> {
+                });
+    }
+
+    // Вызывать в транзакции: блокировка пары держится до коммита отметки
+    public int markRead(long readerId, long interlocutorId) {
+        jdbcTemplate.query("SELECT pg_advisory_xact_lock(?)", rs -> {
+        }, readLockKey(readerId, interlocutorId));
+        Integer marked = jdbcTemplate.queryForObject(MARK_READ_SQL, Integer.class,
+                readerId, interlocutorId, readerId, interlocutorId, readerId, interlocutorId,
+                readerId, interlocutorId);
+        return marked == null ? 0 : marked;
+    }
+
+    // readerId -> последний прочитанный id для обоих направлений переписки
+    public Map<Long, Long> findReadWatermarks(long user1Id, long user2Id) {
+        Map<Long, Long> watermarks = new HashMap<>();
+        jdbcTemplate.query("SELECT reader_id, last_read_id FROM conversation_reads "
+                        + "WHERE (reader_id = ? AND interlocutor_id = ?) "
+                        + "OR (reader_id = ? AND interlocutor_id = ?)",
+                rs -> {
+                    watermarks.put(rs.getLong(1), rs.getLong(2));
+                }, user1Id, user2Id, user2Id, user1Id);
+        return watermarks;
+    }
+
+    // Непрочитанные получателя по отправителям
+    public Map<Long, Long> findUnreadBySender(long receiverId) {
+        Map<Long, Long> unread = new HashMap<>();
+        jdbcTemplate.query("SELECT m.sender_id, COUNT(*) " + UNREAD_FROM
+                        + "WHERE m.receiver_id = ? AND " + UNREAD_WHERE
+                        + "GROUP BY m.sender_id",
+                rs -> {
+                    unread.put(rs.getLong(1), rs.getLong(2));
+                }, receiverId);
+        return unread;
+    }
+
+    // receiverId -> (senderId -> непрочитанные); получатели без непрочитанных не попадают
+    public Map<Long, Map<Long, Long>> findUnreadBySender(Collection<Long> receiverIds) {
+        Map<Long, Map<Long, Long>> unread = new HashMap<>();
+        if (receiverIds.isEmpty()) {
+            return unread;
+        }
+        namedJdbcTemplate.query("SELECT m.receiver_id, m.sender_id, COUNT(*) " + UNREAD_FROM
+                        + "WHERE m.receiver_id IN (:ids) AND " + UNREAD_WHERE
+                        + "GROUP BY m.receiver_id, m.sender_id",
+                new MapSqlParameterSource("ids", receiverIds),
+                rs -> {
+                    unread.computeIfAbsent(rs.getLong(1), id -> new HashMap<>())
+                            .put(rs.getLong(2), rs.getLong(3));
+                });
+        return unread;
+    }
+
+    public record NewMessage(long id, String content, LocalDateTime timestamp, long senderId,
+                             long receiverId) {
+    }
+}
@@ -1,26 +1,41 @@
 package com.kirill.meetyou.repository;
 
 import com.kirill.meetyou.model.Message;
-import com.kirill.meetyou.model.User;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
-    // Для получения переписки между двумя пользователями
-    @Query("SELECT m FROM Message m WHERE (m.sender = :user1 AND m.receiver = :user2) "
-            + "OR (m.sender = :user2 AND m.receiver = :user1) ORDER BY m.timestamp ASC")
-    List<Message> findConversation(@Param("user1") User user1, @Param("user2") User user2);
+    // Переписка читается диапазоном idx_messages_conversation по (timestamp, id)
+    // вместо (A→B) OR (B→A); low/high — меньший и больший id участников
+    @Query(value = "SELECT * FROM messages WHERE conversation_low = :low "
+            + "AND conversation_high = :high ORDER BY timestamp DESC, id DESC LIMIT :limit",
+            nativeQuery = true)
+    List<Message> findLatest(@Param("low") long low, @Param("high") long high,
+                             @Param("limit") int limit);
 
-    // Для поиска непрочитанных сообщений от конкретного отправителя
-    @Query("SELECT m FROM Message m WHERE m.receiver = :receiver "
-            + "AND m.sender = :sender AND m.isRead = false")
-    List<Message> findByReceiverAndSenderAndIsReadFalse(@Param("rece"
-            + "iver") User receiver, @Param("sender") User sender);
+    @Query(value = "SELECT * FROM messages WHERE conversation_low = :low "
+            + "AND conversation_high = :high AND (timestamp, id) < (:timestamp, :id) "
+            + "ORDER BY timestamp DESC, id DESC LIMIT :limit", nativeQuery = true)
+    List<Message> findBefore(@Param("low") long low, @Param("high") long high,
+                             @Param("timestamp") LocalDateTime timestamp,
+                             @Param("id") long id, @Param("limit") int limit);
 
-    // Для подсчета непрочитанных сообщений
-    @Query("SELECT COUNT(m) FROM Message m WHERE m.receiver = :receiver AND m.isRead = false")
-    long countByReceiverAndIsReadFalse(@Param("receiver") User receiver);
-}
\ No newline at end of file
+    @Query(value = "SELECT * FROM messages WHERE conversation_low = :low "
+            + "AND conversation_high = :high AND (timestamp, id) > (:timestamp, :id) "
+            + "ORDER BY timestamp ASC, id ASC LIMIT :limit", nativeQuery = true)
+    List<Message> findAfter(@Param("low") long low, @Param("high") long high,
+                            @Param("timestamp") LocalDateTime timestamp,
+                            @Param("id") long id, @Param("limit") int limit);
+
+    // Время сообщения-курсора; пусто, если оно не из этой переписки
+    @Query("SELECT m.timestamp FROM Message m WHERE m.id = :id "
+            + "AND m.conversationLow = :low AND m.conversationHigh = :high")
+    Optional<LocalDateTime> findTimestampInConversation(@Param("id") long id,
+                                                        @Param("low") long low,
+                                                        @Param("high") long high);
+}
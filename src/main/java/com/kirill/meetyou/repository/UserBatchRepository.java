@@ -0,0 +1,57 @@
+package com.kirill.meetyou.repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Массовые операции над users в обход Hibernate: id резервируются одним запросом
+ * из последовательности identity-колонки, а вставка уходит JDBC-пакетом.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UserBatchRepository {
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public List<Long> reserveIds(int count) {
+        return jdbcTemplate.queryForList(
+                "SELECT nextval(pg_get_serial_sequence('users', 'id')) "
+                        + "FROM generate_series(1, ?)", Long.class, count);
+    }
+
+    public List<String> findExistingEmails(Collection<String> emails) {
+        if (emails.isEmpty()) {
+            return List.of();
+        }
+        return namedJdbcTemplate.queryForList(
+                "SELECT email FROM users WHERE email IN (:emails)",
+                new MapSqlParameterSource("emails", emails), String.class);
+    }
+
+    public void insertAll(List<NewUser> users) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO users (id, name, email, birth, age, updated_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?)",
+                users, users.size(), (statement, user) -> {
+                    statement.setLong(1, user.id());
+                    statement.setString(2, user.name());
+                    statement.setString(3, user.email());
+                    statement.setDate(4, Date.valueOf(user.birth()));
+                    statement.setInt(5, user.age());
+                    statement.setTimestamp(6, now);
+                });
+    }
+
+    public record NewUser(long id, String name, String email, LocalDate birth, int age) {
+    }
+}
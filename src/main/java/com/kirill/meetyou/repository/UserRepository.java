@@ -1,29 +1,119 @@
 package com.kirill.meetyou.repository;
 
 import com.kirill.meetyou.model.User;
+import jakarta.persistence.QueryHint;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     @Query(value = "select * from users where email = :email", nativeQuery = true)
     Optional<User> findByEmail(String email);
 
-    // Поиск пользователей по названию интереса
-    @Query("SELECT DISTINCT u FROM User u JOIN u.interests i WHERE i.interestType = :interestType")
-    List<User> findUsersByInterestType(@Param("interestType") String interestType);
+    // Пользователь вместе с интересами одним запросом, без ленивой подгрузки
+    @EntityGraph(attributePaths = "interests")
+    Optional<User> findWithInterestsById(Long id);
 
-    @Query("SELECT u FROM User u JOIN u.interests i WHERE i.interestType IN "
-            + ":interestTypes GROUP BY u HAVING COUNT(DISTINCT i) = :interestCount")
-    List<User> findUsersByAllInterestTypes(
+    @Query("SELECT u.id FROM User u")
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    Stream<Long> streamAllIds();
+
+    // Страница id после курсора; сами пользователи догружаются findWithInterestsByIdIn
+    @Query("SELECT u.id FROM User u WHERE u.id > :after ORDER BY u.id")
+    List<Long> findIdsAfter(@Param("after") Long after, Limit limit);
+
+    // bio в графе: необратная OneToOne иначе догружается отдельным запросом на строку
+    @EntityGraph(attributePaths = {"interests", "bio"})
+    List<User> findWithInterestsByIdIn(Collection<Long> ids);
+
+    // Плоские строки пользователь × интерес, отсортированные по id, для потокового экспорта
+    @Query("SELECT u.id AS id, u.name AS name, u.email AS email, u.birth AS birth, "
+            + "u.age AS age, i.id AS interestId, i.interestType AS interest "
+            + "FROM User u LEFT JOIN u.interests i ORDER BY u.id")
+    @QueryHints({
+        @QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+        @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    Stream<UserExportRow> streamForExport();
+
+    // Имя и email для индекса автодополнения
+    @Query("SELECT u.id AS id, u.name AS name, u.email AS email FROM User u")
+    @QueryHints({
+        @QueryHint(name = "org.hibernate.fetchSize", value = "1000"),
+        @QueryHint(name = "org.hibernate.readOnly", value = "true")
+    })
+    Stream<UserKeys> streamSuggestKeys();
+
+    @Query("SELECT u.id AS id, u.name AS name, u.email AS email FROM User u "
+            + "WHERE u.id IN :ids")
+    List<UserKeys> findSuggestKeysByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT u.id AS id, u.updatedAt AS updatedAt FROM User u WHERE u.id IN :ids")
+    List<UserVersion> findVersionsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Переименование интереса меняет записи всех его владельцев: метка нужна, чтобы
+    // сохранённый до переименования кэш не восстановился со старым именем
+    @Modifying
+    @Query("UPDATE User u SET u.updatedAt = :updatedAt WHERE u.id IN "
+            + "(SELECT o.id FROM User o JOIN o.interests i WHERE i.id = :interestId)")
+    int touchByInterestId(@Param("interestId") Long interestId,
+                          @Param("updatedAt") LocalDateTime updatedAt);
+
+    // Поиск id пользователей по интересам; сами пользователи с интересами
+    // догружаются одним запросом findWithInterestsByIdIn
+    @Query("SELECT DISTINCT u.id FROM User u JOIN u.interests i "
+            + "WHERE i.interestType = :interestType")
+    List<Long> findIdsByInterestType(@Param("interestType") String interestType);
+
+    @Query("SELECT u.id FROM User u JOIN u.interests i WHERE i.interestType IN "
+            + ":interestTypes GROUP BY u.id HAVING COUNT(DISTINCT i) = :interestCount")
+    List<Long> findIdsByAllInterestTypes(
             @Param("interestTypes") Set<String> interestTypes,
             @Param("interestCount") long interestCount);
 
-    @Query("SELECT DISTINCT u FROM User u JOIN u.interests i "
+    @Query("SELECT DISTINCT u.id FROM User u JOIN u.interests i "
             + "WHERE i.interestType IN :interestTypes")
-    List<User> findUsersByAnyInterestTypes(
+    List<Long> findIdsByAnyInterestTypes(
             @Param("interestTypes") Set<String> interestTypes);
+
+    interface UserExportRow {
+        Long getId();
+
+        String getName();
+
+        String getEmail();
+
+        LocalDate getBirth();
+
+        Integer getAge();
+
+        Long getInterestId();
+
+        String getInterest();
+    }
+
+    interface UserKeys {
+        Long getId();
+
+        String getName();
+
+        String getEmail();
+    }
+
+    interface UserVersion {
+        Long getId();
+
+        LocalDateTime getUpdatedAt();
+    }
 }
\ No newline at end of file
@@ -1,27 +1,54 @@
 package com.kirill.meetyou.service;
 
+import com.kirill.meetyou.cache.CacheRegistry;
+import com.kirill.meetyou.cache.NamedCache;
 import com.kirill.meetyou.dto.BioDto.CreateRequest;
 import com.kirill.meetyou.dto.BioDto.Response;
+import com.kirill.meetyou.dto.BioDto.SearchHit;
 import com.kirill.meetyou.dto.BioDto.UpdateBioRequest;
 import com.kirill.meetyou.dto.BioDto.UpdateInterestFactRequest;
 import com.kirill.meetyou.exception.ResourceAlreadyExistsException;
 import com.kirill.meetyou.exception.ResourceNotFoundException;
+import com.kirill.meetyou.index.BioSearchIndex;
 import com.kirill.meetyou.model.Bio;
 import com.kirill.meetyou.model.User;
 import com.kirill.meetyou.repository.BioRepository;
+import com.kirill.meetyou.repository.BioRepository.BioText;
 import com.kirill.meetyou.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
 
 @Service
-@RequiredArgsConstructor
 public class BioService {
     private static final String FOR_USER_ID_TEXT = "for user id: ";
     private static final String BIO_NOT_FOUND_TEXT = "Bio not found ";
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 100;
 
     private final BioRepository bioRepository;
     private final UserRepository userRepository;
+    private final NamedCache<Long, Response> bioCache;
+    private final BioSearchIndex bioSearchIndex;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public BioService(BioRepository bioRepository, UserRepository userRepository,
+                      CacheRegistry cacheRegistry, BioSearchIndex bioSearchIndex,
+                      PlatformTransactionManager transactionManager) {
+        this.bioRepository = bioRepository;
+        this.userRepository = userRepository;
+        this.bioCache = cacheRegistry.getCache("bios");
+        this.bioSearchIndex = bioSearchIndex;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
 
     @Transactional
     public Response createUserBio(Long userId, CreateRequest request) {
@@ -44,26 +71,24 @@ public class BioService {
         userBio.setUser(user);
 
         Bio savedBio = bioRepository.save(userBio);
+        bioCache.removeAfterCommit(userId);
+        reindexAfterCommit(userId, savedBio);
         return mapToResponse(savedBio);
     }
 
     @Transactional(readOnly = true)
     public String getBioByUserId(Long userId) {
-        Bio bio = bioRepository.findByUserId(userId)
-                .orElseThrow(() -> new ResourceNotFoundException(BIO_NOT_FOUND_TEXT
-                        + FOR_USER_ID_TEXT + userId));
+        Response bio = getFullBioByUserId(userId);
 
-        if (bio.getUserBio() == null || bio.getUserBio().trim().isEmpty()) {
+        if (bio.getBio() == null || bio.getBio().trim().isEmpty()) {
             throw new ResourceNotFoundException("Bio text not found " + FOR_USER_ID_TEXT + userId);
         }
-        return bio.getUserBio();
+        return bio.getBio();
     }
 
     @Transactional(readOnly = true)
     public String getInterestFactByUserId(Long userId) {
-        Bio bio = bioRepository.findByUserId(userId)
-                .orElseThrow(() -> new ResourceNotFoundException(BIO_NOT_FOUND_TEXT
-                        + FOR_USER_ID_TEXT + userId));
+        Response bio = getFullBioByUserId(userId);
 
         if (bio.getInterestFact() == null || bio.getInterestFact().trim().isEmpty()) {
             throw new ResourceNotFoundException("Interest fact not found "
@@ -72,12 +97,16 @@ public class BioService {
         return bio.getInterestFact();
     }
 
-    @Transactional(readOnly = true)
+    // Транзакцию открывает только загружающий поток, см. UserService.findById
     public Response getFullBioByUserId(Long userId) {
-        Bio bio = bioRepository.findByUserId(userId)
-                .orElseThrow(() -> new ResourceNotFoundException(BIO_NOT_FOUND_TEXT
-                        + FOR_USER_ID_TEXT + userId));
-        return mapToResponse(bio);
+        Response bio = bioCache.get(userId, id -> readOnlyTransaction.execute(
+                status -> bioRepository.findByUserId(id)
+                        .map(this::mapToResponse)
+                        .orElse(null)));
+        if (bio == null) {
+            throw new ResourceNotFoundException(BIO_NOT_FOUND_TEXT + FOR_USER_ID_TEXT + userId);
+        }
+        return bio;
     }
 
     @Transactional
@@ -92,6 +121,8 @@ public class BioService {
 
         userBio.setUserBio(request.getBio());
         Bio updatedBio = bioRepository.save(userBio);
+        bioCache.removeAfterCommit(userId);
+        reindexAfterCommit(userId, updatedBio);
         return mapToResponse(updatedBio);
     }
 
@@ -103,6 +134,8 @@ public class BioService {
 
         userBio.setInterestFact(request.getInterestFact());
         Bio updatedBio = bioRepository.save(userBio);
+        bioCache.removeAfterCommit(userId);
+        reindexAfterCommit(userId, updatedBio);
         return mapToResponse(updatedBio);
     }
 
@@ -112,6 +145,8 @@ public class BioService {
                 .orElseThrow(() -> new ResourceNotFoundException(BIO_NOT_FOUND_TEXT
                         + FOR_USER_ID_TEXT + userId));
         bioRepository.delete(userBio);
+        bioCache.removeAfterCommit(userId);
+        bioSearchIndex.removeAfterCommit(userId);
     }
 
     @Transactional
@@ -121,7 +156,47 @@ public class BioService {
                         + FOR_USER_ID_TEXT + userId));
 
         userBio.setInterestFact(null);
-        bioRepository.save(userBio);
+        Bio updatedBio = bioRepository.save(userBio);
+        bioCache.removeAfterCommit(userId);
+        reindexAfterCommit(userId, updatedBio);
+    }
+
+    // Поиск по биографиям и фактам: BM25, префиксы term* и фразы в кавычках
+    @Transactional(readOnly = true)
+    public List<SearchHit> search(String query, Integer limit) {
+        int size = limit == null ? DEFAULT_SEARCH_LIMIT : limit;
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query cannot be empty");
+        }
+        if (size <= 0 || size > MAX_SEARCH_LIMIT) {
+            throw new IllegalArgumentException("Search limit must be between 1 and "
+                    + MAX_SEARCH_LIMIT);
+        }
+        if (!bioSearchIndex.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Индекс биографий ещё строится");
+        }
+
+        List<BioSearchIndex.SearchHit> hits = bioSearchIndex.search(query, size);
+        if (hits.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, BioText> texts = bioRepository.findTextsByUserIdIn(
+                        hits.stream().map(BioSearchIndex.SearchHit::userId).toList()).stream()
+                .collect(Collectors.toMap(BioText::getUserId, Function.identity()));
+        return hits.stream()
+                .filter(hit -> texts.containsKey(hit.userId()))
+                .map(hit -> SearchHit.builder()
+                        .userId(hit.userId())
+                        .bio(texts.get(hit.userId()).getBio())
+                        .interestFact(texts.get(hit.userId()).getInterestFact())
+                        .score(hit.score())
+                        .build())
+                .toList();
+    }
+
+    private void reindexAfterCommit(Long userId, Bio bio) {
+        bioSearchIndex.indexAfterCommit(userId, bio.getUserBio(), bio.getInterestFact());
     }
 
     private Response mapToResponse(Bio userBio) {
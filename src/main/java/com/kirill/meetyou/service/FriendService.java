@@ -1,65 +1,380 @@
 package com.kirill.meetyou.service;
 
-import com.kirill.meetyou.model.User;
+import com.kirill.meetyou.cache.CacheRegistry;
+import com.kirill.meetyou.cache.FriendCounts;
+import com.kirill.meetyou.cache.NamedCache;
+import com.kirill.meetyou.cache.UserExistenceFilter;
+import com.kirill.meetyou.config.FriendBulkProperties;
+import com.kirill.meetyou.config.FriendPathProperties;
+import com.kirill.meetyou.dto.FriendBulkRequest;
+import com.kirill.meetyou.dto.FriendBulkResponse;
+import com.kirill.meetyou.dto.FriendCount;
+import com.kirill.meetyou.dto.FriendPage;
+import com.kirill.meetyou.dto.FriendPair;
+import com.kirill.meetyou.dto.FriendPath;
+import com.kirill.meetyou.dto.FriendSuggestion;
+import com.kirill.meetyou.dto.FriendSummary;
+import com.kirill.meetyou.dto.MutualFriends;
+import com.kirill.meetyou.dto.UserSnapshot;
+import com.kirill.meetyou.index.FriendGraph;
+import com.kirill.meetyou.repository.FriendBatchRepository;
 import com.kirill.meetyou.repository.FriendRepository;
+import com.kirill.meetyou.repository.FriendRepository.FriendSummaryView;
 import com.kirill.meetyou.repository.UserRepository;
 import jakarta.persistence.EntityNotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import lombok.RequiredArgsConstructor;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
 
+@Slf4j
 @Service
-@RequiredArgsConstructor
 @Transactional
 public class FriendService {
     private static final String USER_WITH_ID_TEXT = "User with id ";
     private static final String NOT_FOUND_TEXT = " not found";
+    private static final int DEFAULT_SUGGESTION_LIMIT = 10;
+    private static final int MAX_SUGGESTION_LIMIT = 100;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
 
     private final UserRepository userRepository;
     private final FriendRepository friendRepository;
+    private final UserExistenceFilter userExistenceFilter;
+    private final NamedCache<Long, List<UserSnapshot>> friendCache;
+    private final FriendGraph friendGraph;
+    private final FriendPathProperties pathProperties;
+    private final FriendBatchRepository friendBatchRepository;
+    private final FriendBulkProperties bulkProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final FriendCounts friendCounts;
 
+    public FriendService(UserRepository userRepository, FriendRepository friendRepository,
+                         UserExistenceFilter userExistenceFilter, CacheRegistry cacheRegistry,
+                         FriendGraph friendGraph, FriendPathProperties pathProperties,
+                         FriendBatchRepository friendBatchRepository,
+                         FriendBulkProperties bulkProperties,
+                         TransactionTemplate transactionTemplate,
+                         PlatformTransactionManager transactionManager,
+                         FriendCounts friendCounts) {
+        this.userRepository = userRepository;
+        this.friendRepository = friendRepository;
+        this.friendBatchRepository = friendBatchRepository;
+        this.bulkProperties = bulkProperties;
+        this.transactionTemplate = transactionTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.friendCounts = friendCounts;
+        this.userExistenceFilter = userExistenceFilter;
+        this.friendCache = cacheRegistry.getCache("friends");
+        this.friendGraph = friendGraph;
+        this.pathProperties = pathProperties;
+    }
+
+    // Одна строка INSERT ... ON CONFLICT DO NOTHING вместо загрузки обоих User
+    // и их коллекций друзей; причина отказа выясняется только при отказе
     public void addFriend(Long userId, Long friendId) {
         if (userId.equals(friendId)) {
             throw new IllegalArgumentException("User cannot be friend with himself");
         }
+        requireKnownUser(userId);
+        requireKnownUser(friendId);
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new EntityNotFoundException(USER_WITH_ID_TEXT
-                        + userId + NOT_FOUND_TEXT));
-        User friend = userRepository.findById(friendId)
-                .orElseThrow(() -> new EntityNotFoundException(USER_WITH_ID_TEXT
-                        + friendId + NOT_FOUND_TEXT));
-
-        if (friendRepository.existsFriendship(userId, friendId)) {
+        if (!friendBatchRepository.insert(userId, friendId)) {
+            requireExistingUser(userId);
+            requireExistingUser(friendId);
             throw new IllegalStateException("Users are already friends");
         }
-
-        user.addFriend(friend);
-        userRepository.save(user);
+        changeFriendCounts(Map.of(userId, 1, friendId, 1));
+        invalidateFriendLists(userId, friendId);
+        friendGraph.addFriendAfterCommit(userId, friendId);
     }
 
     public void removeFriend(Long userId, Long friendId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new EntityNotFoundException(USER_WITH_ID_TEXT
-                        + userId + NOT_FOUND_TEXT));
-        User friend = userRepository.findById(friendId)
-                .orElseThrow(() -> new EntityNotFoundException(USER_WITH_ID_TEXT
-                        + friendId + NOT_FOUND_TEXT));
-
-        if (!friendRepository.existsFriendship(userId, friendId)) {
+        requireKnownUser(userId);
+        requireKnownUser(friendId);
+
+        if (!friendBatchRepository.delete(userId, friendId)) {
+            requireExistingUser(userId);
+            requireExistingUser(friendId);
             throw new IllegalStateException("Users are not friends");
         }
+        changeFriendCounts(Map.of(userId, -1, friendId, -1));
+        invalidateFriendLists(userId, friendId);
+        friendGraph.removeFriendAfterCommit(userId, friendId);
+    }
 
-        user.removeFriend(friend);
-        userRepository.save(user);
+    /**
+     * Массовое изменение дружбы: сначала remove, потом add. Пары проверяются и
+     * схлопываются в памяти, затем уходят JDBC-пакетами по batch-size, каждый пакет
+     * в своей транзакции. Ошибка пакета попадает в ответ и не откатывает остальные.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public FriendBulkResponse applyBulk(FriendBulkRequest request) {
+        List<FriendPair> remove = request == null || request.remove() == null
+                ? List.of() : request.remove();
+        List<FriendPair> add = request == null || request.add() == null
+                ? List.of() : request.add();
+        if (remove.size() + add.size() > bulkProperties.getMaxPairs()) {
+            throw new IllegalArgumentException("Too many pairs in one request, max "
+                    + bulkProperties.getMaxPairs());
+        }
+
+        long start = System.nanoTime();
+        List<String> errors = new ArrayList<>();
+        BulkCounts removed = applyInBatches(validPairs(remove, "remove", errors), false,
+                errors);
+        BulkCounts added = applyInBatches(validPairs(add, "add", errors), true, errors);
+
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        int total = remove.size() + add.size();
+        int skipped = total - added.applied - removed.applied - added.failed - removed.failed;
+        double pairsPerSecond = total * 1_000_000_000.0 / elapsedNanos;
+        log.info("Bulk friendship update: {} pairs ({} added, {} removed, {} skipped, "
+                        + "{} failed) in {} ms, {} pairs/s", total, added.applied,
+                removed.applied, skipped, added.failed + removed.failed,
+                elapsedNanos / 1_000_000, Math.round(pairsPerSecond));
+        return new FriendBulkResponse(added.applied, removed.applied, skipped,
+                added.failed + removed.failed, errors, elapsedNanos / 1_000_000,
+                pairsPerSecond);
     }
 
-    public List<User> getAllFriends(Long userId) {
-        return friendRepository.findFriendsOfUser(userId);
+    // Удаляет все связи пользователя в транзакции его удаления
+    public void removeAllFriendships(Long userId) {
+        List<Long> friends = friendBatchRepository.deleteAllOf(userId);
+        friendGraph.removeUserAfterCommit(userId);
+        friendCache.removeAfterCommit(userId);
+        if (friends.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> deltas = new HashMap<>();
+        friends.forEach(friend -> {
+            deltas.put(friend, -1);
+            friendCache.removeAfterCommit(friend);
+        });
+        changeFriendCounts(deltas);
+    }
+
+    // Keyset-пагинация по id друга; id берутся из графа в памяти, пока он
+    // строится — из user_friends. Карточки догружаются одним запросом на страницу
+    @Transactional(readOnly = true)
+    public FriendPage getFriendsPage(Long userId, Long after, Integer limit) {
+        long cursor = after == null ? 0 : after;
+        int size = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (cursor < 0 || size <= 0 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Invalid page parameters: after >= 0, "
+                    + "0 < limit <= " + MAX_PAGE_SIZE);
+        }
+        requireKnownUser(userId);
+
+        List<Long> ids = friendGraph.isReady()
+                ? friendGraph.friendsAfter(userId, cursor, size)
+                : friendRepository.findFriendIdsAfter(userId, cursor, size);
+        if (ids.isEmpty()) {
+            return new FriendPage(List.of(), null);
+        }
+        Map<Long, FriendSummaryView> views = friendRepository.findSummariesByIdIn(ids)
+                .stream()
+                .collect(Collectors.toMap(FriendSummaryView::getId, Function.identity()));
+        List<FriendSummary> items = ids.stream()
+                .filter(views::containsKey)
+                .map(id -> {
+                    FriendSummaryView view = views.get(id);
+                    return new FriendSummary(id, view.getName(), view.getAge(),
+                            view.getFriendCount());
+                })
+                .toList();
+        Long nextCursor = ids.size() < size ? null : ids.get(ids.size() - 1);
+        return new FriendPage(items, nextCursor);
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public FriendCount getFriendCount(Long userId) {
+        requireKnownUser(userId);
+        return new FriendCount(userId, friendCounts.get(userId));
+    }
+
+    // Без транзакции класса: её открывает только загружающий поток, ожидающие
+    // его результат не держат соединение из пула (см. UserService.findById)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<UserSnapshot> getAllFriends(Long userId) {
+        return friendCache.get(userId, id -> readOnlyTransaction.execute(
+                status -> friendRepository.findFriendsOfUser(id).stream()
+                        .map(UserSnapshot::from)
+                        .toList()));
     }
 
     public boolean checkFriendship(Long userId, Long friendId) {
         return friendRepository.existsFriendship(userId, friendId);
     }
-}
\ No newline at end of file
+
+    // Считается по графу в памяти, без обращения к БД
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public MutualFriends countMutualFriends(Long userId, Long otherId) {
+        requireGraphReady();
+        requireKnownUser(userId);
+        requireKnownUser(otherId);
+        return new MutualFriends(userId, otherId,
+                friendGraph.mutualFriendCount(userId, otherId));
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public List<FriendSuggestion> suggestFriends(Long userId, Integer limit) {
+        int size = limit == null ? DEFAULT_SUGGESTION_LIMIT : limit;
+        if (size <= 0 || size > MAX_SUGGESTION_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and "
+                    + MAX_SUGGESTION_LIMIT);
+        }
+        requireGraphReady();
+        requireKnownUser(userId);
+        return friendGraph.suggestions(userId, size).stream()
+                .map(suggestion -> new FriendSuggestion(suggestion.userId(),
+                        suggestion.mutualFriends()))
+                .toList();
+    }
+
+    // Двунаправленный BFS по графу в памяти с ограничением глубины и времени
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public FriendPath findPath(Long fromId, Long toId, Integer maxDepth) {
+        int depth = maxDepth == null ? pathProperties.getDefaultMaxDepth() : maxDepth;
+        if (depth <= 0 || depth > pathProperties.getMaxDepth()) {
+            throw new IllegalArgumentException("Max depth must be between 1 and "
+                    + pathProperties.getMaxDepth());
+        }
+        requireGraphReady();
+        requireKnownUser(fromId);
+        requireKnownUser(toId);
+        FriendGraph.PathResult result = friendGraph.shortestPath(fromId, toId, depth,
+                pathProperties.getTimeBudget(), pathProperties.getParallelThreshold());
+        Integer degrees = result.path().isEmpty() ? null : result.path().size() - 1;
+        return new FriendPath(fromId, toId, result.path(), degrees, result.timedOut(),
+                result.visited());
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public FriendGraph.GraphStats graphStats() {
+        return friendGraph.stats();
+    }
+
+    private void requireGraphReady() {
+        if (!friendGraph.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Граф друзей ещё строится");
+        }
+    }
+
+    private void requireKnownUser(Long userId) {
+        if (!userExistenceFilter.mightExist(userId)) {
+            throw new EntityNotFoundException(USER_WITH_ID_TEXT + userId + NOT_FOUND_TEXT);
+        }
+    }
+
+    // Отбрасывает пары без id, дружбу с собой, повторы (в любом порядке id) и пары
+    // с пользователями, которых точно нет; такие пары считаются пропущенными
+    private List<FriendPair> validPairs(List<FriendPair> pairs, String operation,
+                                        List<String> errors) {
+        List<FriendPair> valid = new ArrayList<>(pairs.size());
+        Set<FriendPair> seen = new HashSet<>();
+        for (int i = 0; i < pairs.size(); i++) {
+            FriendPair pair = pairs.get(i);
+            if (pair == null || pair.userId() == null || pair.friendId() == null) {
+                errors.add(operation + "[" + i + "]: userId and friendId are required");
+            } else if (pair.userId().equals(pair.friendId())) {
+                errors.add(operation + "[" + i + "]: user cannot be friend with himself");
+            } else if (!userExistenceFilter.mightExist(pair.userId())
+                    || !userExistenceFilter.mightExist(pair.friendId())) {
+                errors.add(operation + "[" + i + "]: user not found");
+            } else if (seen.add(new FriendPair(Math.min(pair.userId(), pair.friendId()),
+                    Math.max(pair.userId(), pair.friendId())))) {
+                valid.add(pair);
+            }
+        }
+        return valid;
+    }
+
+    private BulkCounts applyInBatches(List<FriendPair> pairs, boolean insert,
+                                      List<String> errors) {
+        BulkCounts counts = new BulkCounts();
+        int batchSize = Math.max(1, bulkProperties.getBatchSize());
+        for (int offset = 0; offset < pairs.size(); offset += batchSize) {
+            List<FriendPair> batch = pairs.subList(offset,
+                    Math.min(offset + batchSize, pairs.size()));
+            try {
+                boolean[] applied = transactionTemplate.execute(status -> {
+                    boolean[] result = insert
+                            ? friendBatchRepository.insertAll(batch)
+                            : friendBatchRepository.deleteAll(batch);
+                    Map<Long, Integer> deltas = new HashMap<>();
+                    for (int i = 0; i < result.length; i++) {
+                        if (!result[i]) {
+                            continue;
+                        }
+                        FriendPair pair = batch.get(i);
+                        deltas.merge(pair.userId(), insert ? 1 : -1, Integer::sum);
+                        deltas.merge(pair.friendId(), insert ? 1 : -1, Integer::sum);
+                        invalidateFriendLists(pair.userId(), pair.friendId());
+                        if (insert) {
+                            friendGraph.addFriendAfterCommit(pair.userId(), pair.friendId());
+                        } else {
+                            friendGraph.removeFriendAfterCommit(pair.userId(),
+                                    pair.friendId());
+                        }
+                    }
+                    if (!deltas.isEmpty()) {
+                        changeFriendCounts(deltas);
+                    }
+                    return result;
+                });
+                for (boolean pairApplied : applied) {
+                    if (pairApplied) {
+                        counts.applied++;
+                    }
+                }
+            } catch (DataAccessException e) {
+                log.error("Bulk friendship batch at {} failed. Error: {}", offset,
+                        e.getMessage(), e);
+                counts.failed += batch.size();
+                errors.add((insert ? "add" : "remove") + ": batch of " + batch.size()
+                        + " pairs at " + offset + " failed");
+            }
+        }
+        return counts;
+    }
+
+    private void requireExistingUser(Long userId) {
+        if (!userRepository.existsById(userId)) {
+            userExistenceFilter.markMissing(userId);
+            throw new EntityNotFoundException(USER_WITH_ID_TEXT + userId + NOT_FOUND_TEXT);
+        }
+    }
+
+    // users.friend_count меняется в текущей транзакции, счётчики в памяти — после коммита
+    private void changeFriendCounts(Map<Long, Integer> deltas) {
+        friendBatchRepository.adjustFriendCounts(deltas);
+        friendCounts.applyAfterCommit(deltas);
+    }
+
+    private void invalidateFriendLists(Long userId, Long friendId) {
+        friendCache.removeAfterCommit(userId);
+        friendCache.removeAfterCommit(friendId);
+    }
+
+    private static final class BulkCounts {
+        private int applied;
+        private int failed;
+    }
+}
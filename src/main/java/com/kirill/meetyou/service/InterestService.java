@@ -1,21 +1,28 @@
 package com.kirill.meetyou.service;
 
+import com.kirill.meetyou.cache.CacheRegistry;
+import com.kirill.meetyou.cache.NamedCache;
 import com.kirill.meetyou.cache.UserCache;
+import com.kirill.meetyou.dto.UserSnapshot;
+import com.kirill.meetyou.dto.UserSnapshot.InterestRef;
+import com.kirill.meetyou.index.InterestIndex;
 import com.kirill.meetyou.model.Interest;
 import com.kirill.meetyou.model.User;
 import com.kirill.meetyou.repository.InterestRepository;
 import com.kirill.meetyou.repository.UserRepository;
+import java.time.LocalDateTime;
 import java.util.Set;
-import lombok.RequiredArgsConstructor;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class InterestService {
     private static final String USER_NOT_FOUND = "Пользователь не найден";
     private static final String INTEREST_ALREADY_EXISTS = "Интерес уже существует";
@@ -26,6 +33,22 @@ public class InterestService {
     private final UserRepository userRepository;
     private final InterestRepository interestRepository;
     private final UserCache userCache;
+    private final NamedCache<Long, Set<InterestRef>> interestCache;
+    private final InterestIndex interestIndex;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public InterestService(UserRepository userRepository, InterestRepository interestRepository,
+                           UserCache userCache, CacheRegistry cacheRegistry,
+                           InterestIndex interestIndex,
+                           PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.interestRepository = interestRepository;
+        this.userCache = userCache;
+        this.interestCache = cacheRegistry.getCache("interests");
+        this.interestIndex = interestIndex;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
 
     @Transactional
     public void addInterestToUser(Long userId, String interestType) {
@@ -45,8 +68,12 @@ public class InterestService {
         }
 
         user.getInterests().add(interest);
+        user.setUpdatedAt(LocalDateTime.now());
         User updatedUser = userRepository.save(user);
-        userCache.put(userId, updatedUser);
+        UserSnapshot snapshot = UserSnapshot.from(updatedUser);
+        userCache.put(userId, snapshot);
+        interestCache.removeAfterCommit(userId);
+        interestIndex.updateUserAfterCommit(userId, Set.copyOf(snapshot.interestTypes()));
 
         log.info(String.format(INTEREST_ADDED, formattedInterestType, userId));
     }
@@ -67,8 +94,12 @@ public class InterestService {
         }
 
         user.getInterests().remove(interest);
+        user.setUpdatedAt(LocalDateTime.now());
         User updatedUser = userRepository.save(user);
-        userCache.put(userId, updatedUser);
+        UserSnapshot snapshot = UserSnapshot.from(updatedUser);
+        userCache.put(userId, snapshot);
+        interestCache.removeAfterCommit(userId);
+        interestIndex.updateUserAfterCommit(userId, Set.copyOf(snapshot.interestTypes()));
 
         log.info(String.format(INTEREST_REMOVED, formattedInterestName, userId));
     }
@@ -96,8 +127,16 @@ public class InterestService {
             throw new ResponseStatusException(HttpStatus.CONFLICT, INTEREST_ALREADY_EXISTS);
         }
 
+        String oldInterestType = existingInterest.getInterestType();
         existingInterest.setInterestType(formattedInterestType);
-        return interestRepository.save(existingInterest);
+        Interest savedInterest = interestRepository.save(existingInterest);
+        userRepository.touchByInterestId(interestId, LocalDateTime.now());
+        interestIndex.renameAfterCommit(oldInterestType, formattedInterestType);
+
+        // Интерес общий для всех пользователей: переименование затрагивает все записи
+        interestCache.clearAfterCommit();
+        userCache.clearAfterCommit();
+        return savedInterest;
     }
 
     @Transactional
@@ -124,15 +163,23 @@ public class InterestService {
 
         // Добавляем новый интерес пользователю
         user.getInterests().add(newInterest);
+        user.setUpdatedAt(LocalDateTime.now());
 
         userRepository.save(user);
-        userCache.put(userId, user);
+        UserSnapshot snapshot = UserSnapshot.from(user);
+        userCache.put(userId, snapshot);
+        interestCache.removeAfterCommit(userId);
+        interestIndex.updateUserAfterCommit(userId, Set.copyOf(snapshot.interestTypes()));
     }
 
-    @Transactional(readOnly = true)
-    public Set<Interest> getUserInterests(Long userId) {
+    // В кэше снимки интересов, а не сущности с ленивой коллекцией users; транзакцию
+    // открывает только загружающий поток
+    public Set<InterestRef> getUserInterests(Long userId) {
         log.debug("Получение интересов пользователя {}", userId);
-        return getUserById(userId).getInterests();
+        return interestCache.get(userId, id -> readOnlyTransaction.execute(
+                status -> getUserById(id).getInterests().stream()
+                        .map(InterestRef::from)
+                        .collect(Collectors.toUnmodifiableSet())));
     }
 
     private User getUserById(Long userId) {
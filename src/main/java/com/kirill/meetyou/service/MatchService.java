@@ -0,0 +1,71 @@
+package com.kirill.meetyou.service;
+
+import com.kirill.meetyou.dto.UserMatch;
+import com.kirill.meetyou.dto.UserSnapshot;
+import com.kirill.meetyou.index.InterestIndex;
+import com.kirill.meetyou.index.InterestIndex.ScoredUser;
+import com.kirill.meetyou.repository.FriendRepository;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MatchService {
+    private static final int DEFAULT_LIMIT = 10;
+    private static final int MAX_LIMIT = 100;
+
+    private final UserService userService;
+    private final InterestIndex interestIndex;
+    private final FriendRepository friendRepository;
+
+    public List<UserMatch> findMatches(Long userId, Integer limit, boolean excludeFriends) {
+        int size = limit == null ? DEFAULT_LIMIT : limit;
+        if (size <= 0 || size > MAX_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Некорректный limit: 0 < limit <= " + MAX_LIMIT);
+        }
+        UserSnapshot user = userService.findById(userId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Пользователь не найден"));
+        if (!interestIndex.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Индекс интересов ещё строится");
+        }
+        if (user.interestTypes().isEmpty()) {
+            return List.of();
+        }
+
+        long start = System.nanoTime();
+        Set<Long> excluded = excludeFriends
+                ? new HashSet<>(friendRepository.findFriendIds(userId)) : Set.of();
+        List<ScoredUser> top = interestIndex.topMatches(userId, user.interestTypes(), size,
+                excluded);
+        log.debug("Matches for user {} scored in {} µs", userId,
+                (System.nanoTime() - start) / 1000);
+
+        Map<Long, UserSnapshot> candidates = userService.findSnapshots(
+                        top.stream().map(ScoredUser::userId).toList()).stream()
+                .collect(Collectors.toMap(UserSnapshot::id, Function.identity()));
+        Set<String> interests = new HashSet<>(user.interestTypes());
+        return top.stream()
+                .filter(scored -> candidates.containsKey(scored.userId()))
+                .map(scored -> {
+                    UserSnapshot candidate = candidates.get(scored.userId());
+                    List<String> shared = candidate.interestTypes().stream()
+                            .filter(interests::contains)
+                            .toList();
+                    return new UserMatch(candidate, shared, scored.score());
+                })
+                .toList();
+    }
+}
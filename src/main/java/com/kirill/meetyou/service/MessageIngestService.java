@@ -0,0 +1,305 @@
+package com.kirill.meetyou.service;
+
+import com.kirill.meetyou.cache.UnreadCounters;
+import com.kirill.meetyou.config.MessageIngestProperties;
+import com.kirill.meetyou.dto.IngestStats;
+import com.kirill.meetyou.dto.MessageDto;
+import com.kirill.meetyou.enums.MessageAckMode;
+import com.kirill.meetyou.exception.ResourceNotFoundException;
+import com.kirill.meetyou.repository.MessageBatchRepository;
+import com.kirill.meetyou.repository.MessageBatchRepository.NewMessage;
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Очередь записи сообщений с групповым коммитом.
+ *
+ * <p>Запросы кладут сообщения в ограниченный кольцевой буфер, а один поток
+ * записи забирает всё накопленное (до {@code max-batch-size}) и пишет пакет одной
+ * транзакцией: id резервируются одним запросом из последовательности,
+ * отправители и получатели проверяются одним {@code SELECT ... FOR KEY SHARE},
+ * строки уходят многострочными INSERT. Пока идёт коммит, следующий пакет
+ * набирается сам, поэтому число коммитов в секунду перестаёт ограничивать
+ * число сообщений.
+ *
+ * <p>В режиме {@code ack=commit} отправитель ждёт коммита своего пакета и
+ * получает сообщение с id; в режиме {@code ack=enqueue} ответ уходит сразу после
+ * постановки в очередь, и неподтверждённые сообщения теряются при падении узла.
+ * Ответ 504 при {@code ack=commit} означает только, что коммит не дождались:
+ * сообщение может быть записано позже. Ключа идемпотентности нет, поэтому
+ * клиент перед повтором должен проверить переписку через
+ * {@code /conversation?after=}, иначе получит дубль.
+ *
+ * <p>Ошибка данных в одном сообщении (например, нулевой символ в тексте) не
+ * роняет весь пакет: пакет делится пополам и пишется заново, пока отказ не
+ * останется только у ошибочного сообщения.
+ */
+@Slf4j
+@Service
+public class MessageIngestService {
+    private final MessageBatchRepository messageBatchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final UnreadCounters unreadCounters;
+    private final MessageStreamService messageStreamService;
+    private final MessageIngestProperties properties;
+    private final BlockingQueue<Pending> queue;
+    private final Thread writer;
+    // Постановка в очередь и остановка взаимно исключены: после остановки в
+    // очередь никто не положит сообщение, которое уже некому записать
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+    private volatile boolean running;
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder commitMillis = new LongAdder();
+    private final AtomicInteger maxBatchSize = new AtomicInteger();
+
+    public MessageIngestService(MessageBatchRepository messageBatchRepository,
+                                TransactionTemplate transactionTemplate,
+                                UnreadCounters unreadCounters,
+                                MessageStreamService messageStreamService,
+                                MessageIngestProperties properties) {
+        this.messageBatchRepository = messageBatchRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.unreadCounters = unreadCounters;
+        this.messageStreamService = messageStreamService;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, properties.getCapacity()));
+        this.writer = new Thread(this::writeLoop, "MessageIngestWriter");
+        this.writer.setDaemon(true);
+        if (properties.isEnabled()) {
+            running = true;
+            writer.start();
+        }
+    }
+
+    // Дописывает накопленное до остановки; что не успело — получает отказ
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        runningLock.writeLock().lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+        writer.join(properties.getAckTimeout().toMillis() * 2);
+
+        List<Pending> stranded = new ArrayList<>();
+        queue.drainTo(stranded);
+        if (!stranded.isEmpty()) {
+            log.warn("Message writer stopped, {} queued messages not written", stranded.size());
+            failed.add(stranded.size());
+            stranded.forEach(pending -> pending.result().completeExceptionally(
+                    new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                            "Сервис останавливается, повторите позже")));
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    // Проверки содержимого и существования по фильтру уже сделаны вызывающим кодом
+    public MessageDto send(long senderId, long receiverId, String content) {
+        Pending pending = new Pending(senderId, receiverId, content, LocalDateTime.now(),
+                new CompletableFuture<>());
+        runningLock.readLock().lock();
+        try {
+            if (!running || !queue.offer(pending, properties.getEnqueueTimeout().toMillis(),
+                    TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Очередь сообщений переполнена, повторите позже");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Отправка прервана");
+        } finally {
+            runningLock.readLock().unlock();
+        }
+        enqueued.increment();
+
+        if (properties.getAck() == MessageAckMode.ENQUEUE) {
+            return pending.toDto(null);
+        }
+        try {
+            return pending.result().get(properties.getAckTimeout().toMillis(),
+                    TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Сообщение может ещё записаться: повтор без проверки даст дубль
+            throw new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                    "Запись сообщения не подтверждена вовремя, оно может быть сохранено; "
+                            + "проверьте переписку перед повтором");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Отправка прервана");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public IngestStats stats() {
+        long batchCount = batches.sum();
+        double avgBatchSize = batchCount == 0 ? 0
+                : (double) (written.sum() + failed.sum()) / batchCount;
+        double avgCommitMillis = batchCount == 0 ? 0 : (double) commitMillis.sum() / batchCount;
+        return new IngestStats(properties.isEnabled(), properties.getAck(), queue.size(),
+                properties.getCapacity(), enqueued.sum(), rejected.sum(), written.sum(),
+                failed.sum(), batchCount, avgBatchSize, maxBatchSize.get(), avgCommitMillis);
+    }
+
+    private void writeLoop() {
+        int limit = Math.max(1, properties.getMaxBatchSize());
+        List<Pending> batch = new ArrayList<>(limit);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, limit - 1);
+                writeSplitting(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Message writer interrupted, {} queued messages not written",
+                        queue.size());
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Ошибка данных делит пакет пополам, пока ошибочное сообщение не останется
+    // одно; остальные ошибки (нет соединения и т. п.) общие для всего пакета
+    private void writeSplitting(List<Pending> batch) {
+        try {
+            write(batch);
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                fail(batch, e);
+                return;
+            }
+            log.warn("Failed to write {} queued messages, retrying in halves: {}",
+                    batch.size(), e.getMessage());
+            int middle = batch.size() / 2;
+            writeSplitting(batch.subList(0, middle));
+            writeSplitting(batch.subList(middle, batch.size()));
+        } catch (RuntimeException e) {
+            fail(batch, e);
+        }
+    }
+
+    private void fail(List<Pending> batch, RuntimeException e) {
+        log.error("Failed to write {} queued messages: {}", batch.size(), e.getMessage(), e);
+        failed.add(batch.size());
+        batch.forEach(pending -> pending.result().completeExceptionally(
+                new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                        "Ошибка при сохранении сообщения")));
+    }
+
+    private void write(List<Pending> batch) {
+        long start = System.currentTimeMillis();
+        List<Pending> accepted = new ArrayList<>(batch.size());
+        List<MessageDto> saved = new ArrayList<>(batch.size());
+        transactionTemplate.executeWithoutResult(status -> {
+            Set<Long> userIds = new HashSet<>();
+            batch.forEach(pending -> {
+                userIds.add(pending.senderId());
+                userIds.add(pending.receiverId());
+            });
+            Set<Long> existing = messageBatchRepository.lockExistingUsers(userIds);
+            for (Pending pending : batch) {
+                if (existing.contains(pending.senderId())
+                        && existing.contains(pending.receiverId())) {
+                    accepted.add(pending);
+                }
+            }
+            if (accepted.isEmpty()) {
+                return;
+            }
+
+            messageBatchRepository.lockForSend(accepted.stream()
+                    .map(pending -> MessageBatchRepository.readLockKey(pending.receiverId(),
+                            pending.senderId()))
+                    .toList());
+            List<Long> ids = messageBatchRepository.reserveIds(accepted.size());
+            List<NewMessage> rows = new ArrayList<>(accepted.size());
+            for (int i = 0; i < accepted.size(); i++) {
+                Pending pending = accepted.get(i);
+                rows.add(new NewMessage(ids.get(i), pending.content(), pending.timestamp(),
+                        pending.senderId(), pending.receiverId()));
+                MessageDto dto = pending.toDto(ids.get(i));
+                saved.add(dto);
+                unreadCounters.incrementAfterCommit(pending.receiverId(), pending.senderId(),
+                        () -> messageStreamService.deliverUnread(pending.receiverId(),
+                                pending.senderId(), 1));
+                messageStreamService.publishMessageAfterCommit(dto);
+            }
+            messageBatchRepository.insertAll(rows);
+        });
+
+        // Отправители узнают результат только после коммита
+        for (int i = 0; i < accepted.size(); i++) {
+            accepted.get(i).result().complete(saved.get(i));
+        }
+        int missing = batch.size() - accepted.size();
+        if (missing > 0) {
+            log.warn("Dropped {} queued messages of deleted users", missing);
+            failed.add(missing);
+            batch.stream().filter(pending -> !pending.result().isDone())
+                    .forEach(pending -> pending.result().completeExceptionally(
+                            new ResourceNotFoundException("Пользователь не найден")));
+        }
+        written.add(saved.size());
+        batches.increment();
+        commitMillis.add(System.currentTimeMillis() - start);
+        maxBatchSize.accumulateAndGet(batch.size(), Math::max);
+    }
+
+    private record Pending(long senderId, long receiverId, String content,
+                           LocalDateTime timestamp, CompletableFuture<MessageDto> result) {
+        MessageDto toDto(Long id) {
+            return MessageDto.builder()
+                    .id(id)
+                    .content(content)
+                    .timestamp(timestamp)
+                    .senderId(senderId)
+                    .receiverId(receiverId)
+                    .isRead(false)
+                    .build();
+        }
+    }
+}
@@ -1,18 +1,33 @@
 package com.kirill.meetyou.service;
 
+import com.kirill.meetyou.cache.UnreadCounters;
+import com.kirill.meetyou.cache.UserExistenceFilter;
+import com.kirill.meetyou.dto.IngestStats;
 import com.kirill.meetyou.dto.MessageDto;
+import com.kirill.meetyou.dto.MessagePage;
+import com.kirill.meetyou.dto.StreamStats;
 import com.kirill.meetyou.exception.ResourceNotFoundException;
 import com.kirill.meetyou.model.Message;
 import com.kirill.meetyou.model.User;
+import com.kirill.meetyou.repository.MessageBatchRepository;
 import com.kirill.meetyou.repository.MessageRepository;
 import com.kirill.meetyou.repository.UserRepository;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @Slf4j
 @Service
@@ -22,21 +37,74 @@ public class MessageService {
     private static final String USER_NOT_FOUND_LOG = "❌ Пользователь не найден: ID {}";
     private static final String INTERLOCUTOR_NOT_FOUND_LOG = "❌ Собеседник не найден: ID {}";
     private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int BACKFILL_BATCH_SIZE = 10_000;
 
     private final MessageRepository messageRepository;
+    private final MessageBatchRepository messageBatchRepository;
+    private final MessageStreamService messageStreamService;
+    private final UnreadCounters unreadCounters;
+    private final MessageIngestService messageIngestService;
+    private final TransactionTemplate transactionTemplate;
     private final UserRepository userRepository;
+    private final UserExistenceFilter userExistenceFilter;
     private static final DateTimeFormatter TIMESTAMP_FORMATTER =
             DateTimeFormatter.ofPattern(TIMESTAMP_PATTERN);
 
+    // Быстрая и однократная: без отметок все старые сообщения выглядели бы непрочитанными
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateReadState() {
+        Integer watermarks = transactionTemplate.execute(
+                status -> messageBatchRepository.migrateReadState());
+        if (watermarks != null && watermarks > 0) {
+            log.info("Read watermarks created from is_read for {} conversations", watermarks);
+        }
+    }
+
+    // Не задерживает старт: пока идёт заполнение, в истории переписки видны только
+    // уже заполненные старые сообщения
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillConversationKeys() {
+        long start = System.currentTimeMillis();
+        try {
+            long updated = messageBatchRepository.backfillConversationKeys(BACKFILL_BATCH_SIZE);
+            if (updated > 0) {
+                log.info("Conversation keys backfilled for {} messages in {} ms", updated,
+                        System.currentTimeMillis() - start);
+            }
+        } catch (DataAccessException e) {
+            log.error("Failed to backfill conversation keys: {}", e.getMessage(), e);
+        }
+    }
+
+    private void requireUser(Long userId) {
+        requireUser(userId, USER_NOT_FOUND_LOG);
+    }
+
+    private void requireUser(Long userId, String errorLog) {
+        if (!userExistenceFilter.mightExist(userId) || !userRepository.existsById(userId)) {
+            log.error(errorLog, userId);
+            throw new ResourceNotFoundException(USER_NOT_FOUND_MSG);
+        }
+    }
+
     private User findUserOrThrow(Long userId, String errorLog) {
+        if (!userExistenceFilter.mightExist(userId)) {
+            log.error(errorLog, userId);
+            throw new ResourceNotFoundException(USER_NOT_FOUND_MSG);
+        }
         return userRepository.findById(userId)
                 .orElseThrow(() -> {
+                    userExistenceFilter.markMissing(userId);
                     log.error(errorLog, userId);
                     return new ResourceNotFoundException(USER_NOT_FOUND_MSG);
                 });
     }
 
-    @Transactional
+    // С включённой очередью записи сообщение уходит в пакет с групповым коммитом,
+    // пользователи тогда проверяются фильтром здесь и одним запросом на пакет
     public MessageDto sendMessage(Long senderId, Long receiverId, String content) {
         log.info("🔄 Попытка отправки сообщения от {} к {}", senderId, receiverId);
         log.debug("Содержимое сообщения: {}", content);
@@ -45,21 +113,36 @@ public class MessageService {
             log.error("❌ Отклонено: пустое содержание сообщения");
             throw new IllegalArgumentException("Текст сообщения не может быть пустым");
         }
-
-        User sender = findUserOrThrow(senderId, USER_NOT_FOUND_LOG);
-        User receiver = findUserOrThrow(receiverId, USER_NOT_FOUND_LOG);
-
         if (senderId.equals(receiverId)) {
             log.warn("⚠️ Попытка самосообщения: {}", senderId);
             throw new IllegalArgumentException("Нельзя отправить сообщение самому себе");
         }
 
+        if (messageIngestService.isEnabled()) {
+            for (Long userId : List.of(senderId, receiverId)) {
+                if (!userExistenceFilter.mightExist(userId)) {
+                    log.error(USER_NOT_FOUND_LOG, userId);
+                    throw new ResourceNotFoundException(USER_NOT_FOUND_MSG);
+                }
+            }
+            return messageIngestService.send(senderId, receiverId, content);
+        }
+        return transactionTemplate.execute(status ->
+                saveMessage(senderId, receiverId, content));
+    }
+
+    private MessageDto saveMessage(Long senderId, Long receiverId, String content) {
+        User sender = findUserOrThrow(senderId, USER_NOT_FOUND_LOG);
+        User receiver = findUserOrThrow(receiverId, USER_NOT_FOUND_LOG);
+
         Message message = new Message();
         message.setContent(content);
         message.setSender(sender);
         message.setReceiver(receiver);
         message.setTimestamp(LocalDateTime.now());
 
+        messageBatchRepository.lockForSend(
+                List.of(MessageBatchRepository.readLockKey(receiverId, senderId)));
         Message savedMessage = messageRepository.save(message);
 
         log.info("✅ Сообщение #{} успешно отправлено от {} к {} в {}",
@@ -68,23 +151,74 @@ public class MessageService {
                 receiverId,
                 savedMessage.getTimestamp().format(TIMESTAMP_FORMATTER));
 
-        return convertToDto(savedMessage);
+        MessageDto dto = convertToDto(savedMessage);
+        unreadCounters.incrementAfterCommit(receiverId, senderId,
+                () -> messageStreamService.deliverUnread(receiverId, senderId, 1));
+        messageStreamService.publishMessageAfterCommit(dto);
+        return dto;
     }
 
+    // Без курсоров — последние limit сообщений одним обратным проходом по индексу.
+    // before/after — id сообщения, от которого страница идёт в прошлое или в будущее;
+    // сравнение по (timestamp, id), поэтому сообщения с одинаковым временем не теряются
     @Transactional(readOnly = true)
-    public List<MessageDto> getConversation(Long user1Id, Long user2Id) {
+    public MessagePage getConversation(Long user1Id, Long user2Id, Long before, Long after,
+                                       Integer limit) {
         log.info("📖 Запрос переписки между {} и {}", user1Id, user2Id);
 
-        User user1 = findUserOrThrow(user1Id, USER_NOT_FOUND_LOG);
-        User user2 = findUserOrThrow(user2Id, USER_NOT_FOUND_LOG);
+        int size = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (size <= 0 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Размер страницы должен быть от 1 до "
+                    + MAX_PAGE_SIZE);
+        }
+        if (before != null && after != null) {
+            throw new IllegalArgumentException("Нельзя указать before и after одновременно");
+        }
+        requireUser(user1Id);
+        requireUser(user2Id);
+
+        long low = Math.min(user1Id, user2Id);
+        long high = Math.max(user1Id, user2Id);
+        // На одну строку больше, чтобы знать, есть ли сообщения за страницей
+        List<Message> rows;
+        if (after != null) {
+            rows = messageRepository.findAfter(low, high,
+                    cursorTimestamp(after, low, high), after, size + 1);
+        } else if (before != null) {
+            rows = messageRepository.findBefore(low, high,
+                    cursorTimestamp(before, low, high), before, size + 1);
+        } else {
+            rows = messageRepository.findLatest(low, high, size + 1);
+        }
 
-        List<MessageDto> conversation = messageRepository.findConversation(user1, user2)
-                .stream()
-                .map(this::convertToDto)
+        boolean more = rows.size() > size;
+        List<Message> page = new ArrayList<>(more ? rows.subList(0, size) : rows);
+        if (after == null) {
+            Collections.reverse(page);
+        }
+        // Прочитано ли сообщение — по отметке его получателя
+        Map<Long, Long> watermarks = page.isEmpty() ? Map.of()
+                : messageBatchRepository.findReadWatermarks(user1Id, user2Id);
+        List<MessageDto> items = page.stream()
+                .map(message -> MessageDto.from(message, message.getId()
+                        <= watermarks.getOrDefault(message.getReceiver().getId(), 0L)))
                 .toList();
+        logConversationStats(items);
+        if (items.isEmpty()) {
+            return new MessagePage(items, null, null);
+        }
+
+        Long oldest = items.get(0).getId();
+        Long newest = items.get(items.size() - 1).getId();
+        boolean older = after != null || more;
+        boolean newer = after != null ? more : before != null;
+        return new MessagePage(items, older ? oldest : null, newer ? newest : null);
+    }
 
-        logConversationStats(conversation);
-        return conversation;
+    private LocalDateTime cursorTimestamp(long messageId, long low, long high) {
+        return messageRepository.findTimestampInConversation(messageId, low, high)
+                .orElseThrow(() -> new IllegalArgumentException(
+                        "Сообщение " + messageId + " не относится к этой переписке"));
     }
 
     private void logConversationStats(List<MessageDto> conversation) {
@@ -95,51 +229,75 @@ public class MessageService {
         }
     }
 
+    // Один upsert отметки прочтения вместо UPDATE на каждое сообщение
     @Transactional
     public void markMessagesAsRead(Long userId, Long interlocutorId) {
         log.info("👁️ Пользователь {} помечает сообщения от {} как прочитанные",
                 userId, interlocutorId);
 
-        User user = findUserOrThrow(userId, USER_NOT_FOUND_LOG);
-        User interlocutor = findUserOrThrow(interlocutorId, INTERLOCUTOR_NOT_FOUND_LOG);
+        requireUser(userId);
+        requireUser(interlocutorId, INTERLOCUTOR_NOT_FOUND_LOG);
 
-        List<Message> unreadMessages = messageRepository
-                .findByReceiverAndSenderAndIsReadFalse(user, interlocutor);
+        int marked = messageBatchRepository.markRead(userId, interlocutorId);
+        logUnreadMessagesCount(marked);
+        if (marked > 0) {
+            unreadCounters.markReadAfterCommit(userId, interlocutorId, marked,
+                    () -> messageStreamService.deliverUnread(userId, interlocutorId, -marked));
+            messageStreamService.publishReadAfterCommit(userId, interlocutorId, marked);
+        }
+        log.info("✅ Все сообщения от {} помечены как прочитанные", interlocutorId);
+    }
 
-        logUnreadMessagesCount(unreadMessages.size());
+    private void logUnreadMessagesCount(int count) {
+        log.info("📌 Прочитано {} новых сообщений", count);
+    }
 
-        unreadMessages.forEach(message -> {
-            message.setRead(true);
-            log.debug("Сообщение #{} помечено как прочитанное", message.getId());
-        });
+    // Поток событий вместо опроса /unread/count и /conversation. Подписка и
+    // начальное число — под блокировкой счётчиков получателя: дельта, применённая
+    // между ними, иначе не попала бы ни в число, ни в поток
+    public SseEmitter openStream(Long userId) {
+        requireUnreadCounters(userId);
+        return unreadCounters.withTotal(userId,
+                unread -> messageStreamService.subscribe(userId, unread));
+    }
 
-        messageRepository.saveAll(unreadMessages);
-        log.info("✅ Все сообщения от {} помечены как прочитанные", interlocutorId);
+    public IngestStats ingestStats() {
+        return messageIngestService.stats();
     }
 
-    private void logUnreadMessagesCount(int count) {
-        log.info("📌 Найдено {} непрочитанных сообщений", count);
+    public StreamStats streamStats() {
+        return messageStreamService.stats();
     }
 
-    @Transactional(readOnly = true)
+    // Из счётчиков в памяти; к БД — только при первом обращении к получателю
     public long getUnreadMessagesCount(Long userId) {
-        log.debug("🔍 Запрос количества непрочитанных сообщений для {}", userId);
+        requireUnreadCounters(userId);
+        long count = unreadCounters.total(userId);
+        log.debug("📊 Пользователь {} имеет {} непрочитанных сообщений", userId, count);
+        return count;
+    }
 
-        User user = findUserOrThrow(userId, USER_NOT_FOUND_LOG);
-        long count = messageRepository.countByReceiverAndIsReadFalse(user);
+    public Map<Long, Long> getUnreadBySender(Long userId) {
+        requireUnreadCounters(userId);
+        return unreadCounters.bySender(userId);
+    }
 
-        log.info("📊 Пользователь {} имеет {} непрочитанных сообщений", userId, count);
-        return count;
+    public UnreadCounters.CounterStats unreadStats() {
+        return unreadCounters.stats();
+    }
+
+    // Загруженные счётчики означают, что пользователь уже проверен
+    private void requireUnreadCounters(Long userId) {
+        if (!userExistenceFilter.mightExist(userId)) {
+            log.error(USER_NOT_FOUND_LOG, userId);
+            throw new ResourceNotFoundException(USER_NOT_FOUND_MSG);
+        }
+        if (!unreadCounters.isLoaded(userId)) {
+            requireUser(userId);
+        }
     }
 
     private MessageDto convertToDto(Message message) {
-        return MessageDto.builder()
-                .id(message.getId())
-                .content(message.getContent())
-                .timestamp(message.getTimestamp())
-                .senderId(message.getSender().getId())
-                .receiverId(message.getReceiver().getId())
-                .isRead(message.isRead())
-                .build();
+        return MessageDto.from(message);
     }
 }
\ No newline at end of file
@@ -0,0 +1,406 @@
+package com.kirill.meetyou.service;
+
+import com.kirill.meetyou.cache.InvalidationBus;
+import com.kirill.meetyou.config.MessageStreamProperties;
+import com.kirill.meetyou.dto.MessageDto;
+import com.kirill.meetyou.dto.StreamStats;
+import com.kirill.meetyou.dto.UnreadEvent;
+import com.kirill.meetyou.repository.MessageRepository;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+/**
+ * Доставка новых сообщений и изменений числа непрочитанных по SSE.
+ *
+ * <p>Подключение — асинхронный запрос Tomcat NIO: пока событий нет, поток на него
+ * не тратится. У каждого подключения своя ограниченная очередь; её разбирают
+ * несколько общих потоков отправки, не больше одного на подключение за раз.
+ * Клиент, который не успевает читать, отключается при переполнении очереди и
+ * после переподключения догружает пропущенное через {@code /conversation?after=}.
+ *
+ * <p>Запись в сокет блокирующая: клиент с заполненным TCP-окном держит поток
+ * отправки до таймаута сокета. Запись дольше {@code write-timeout} считается
+ * зависшей — подключение отключается, а пул получает дополнительный поток, пока
+ * зависшая запись не вернётся. Завершает emitter только поток отправки: пока
+ * запись висит, его монитор занят, и вызов complete() из другого потока завис бы
+ * вместе с ней.
+ * Молчащим подключениям раз в {@code heartbeat-interval} уходит комментарий,
+ * чтобы их не закрыли прокси.
+ *
+ * <p>События рассылаются после коммита; другие экземпляры получают id сообщений
+ * через {@link InvalidationBus} и перечитывают их из БД, только если у них есть
+ * подключения отправителя или получателя.
+ */
+@Slf4j
+@Service
+public class MessageStreamService {
+    static final String TOPIC = "message-stream";
+    private static final String MESSAGE_KEY = "m";
+    private static final String READ_KEY = "r";
+    // После стольких событий подряд поток отправки переходит к другим подключениям
+    private static final int DRAIN_BATCH = 32;
+
+    private final MessageRepository messageRepository;
+    private final InvalidationBus bus;
+    private final MessageStreamProperties properties;
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ThreadPoolExecutor sender;
+    private final ScheduledExecutorService heartbeat;
+    // Подключения, у которых сейчас идёт запись; их проверяет сторож записи
+    private final Set<Subscriber> writing = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger stalledNow = new AtomicInteger();
+    private final LongAdder sentEvents = new LongAdder();
+    private final LongAdder droppedConnections = new LongAdder();
+    private final LongAdder stalledWrites = new LongAdder();
+
+    public MessageStreamService(MessageRepository messageRepository, InvalidationBus bus,
+                                MessageStreamProperties properties) {
+        this.messageRepository = messageRepository;
+        this.bus = bus;
+        this.properties = properties;
+        AtomicInteger threadNumber = new AtomicInteger();
+        int threads = Math.max(1, properties.getSendThreads());
+        this.sender = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable,
+                            "MessageStreamSend-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MessageStreamHeartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getHeartbeatInterval().toMillis();
+        if (interval > 0) {
+            heartbeat.scheduleWithFixedDelay(this::sendHeartbeats, interval, interval,
+                    TimeUnit.MILLISECONDS);
+        }
+        long writeCheck = Math.max(100, properties.getWriteTimeout().toMillis() / 2);
+        heartbeat.scheduleWithFixedDelay(this::dropStalledWrites, writeCheck, writeCheck,
+                TimeUnit.MILLISECONDS);
+        bus.subscribe(this::onRemoteChange);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        sender.shutdownNow();
+        subscribers.values().forEach(set -> set.forEach(Subscriber::close));
+    }
+
+    // Первым событием подключение получает текущее число непрочитанных; вызывать
+    // из UnreadCounters.withTotal, чтобы между ним и дельтами не было разрыва
+    public SseEmitter subscribe(long userId, long unreadTotal) {
+        if (connections.incrementAndGet() > properties.getMaxConnections()) {
+            connections.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Слишком много подключений, повторите позже");
+        }
+        SseEmitter emitter = new SseEmitter(properties.getTimeout().toMillis());
+        Subscriber subscriber = new Subscriber(userId, emitter);
+        AtomicBoolean added = new AtomicBoolean();
+        // Под блокировкой ключа, чтобы не добавить в набор, который close() как раз убирает
+        subscribers.compute(userId, (id, set) -> {
+            Set<Subscriber> userSubscribers = set == null ? new CopyOnWriteArraySet<>() : set;
+            if (userSubscribers.size() < properties.getMaxConnectionsPerUser()) {
+                added.set(userSubscribers.add(subscriber));
+            }
+            return userSubscribers.isEmpty() ? null : userSubscribers;
+        });
+        if (!added.get()) {
+            connections.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                    "Слишком много подключений пользователя");
+        }
+
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        subscriber.offer(SseEmitter.event().name("unread-total").data(unreadTotal));
+        return emitter;
+    }
+
+    // Дельту непрочитанных получателю доставляет deliverUnread из UnreadCounters
+    public void publishMessageAfterCommit(MessageDto message) {
+        afterCommit(() -> {
+            deliverMessage(message, false);
+            bus.publish(TOPIC, String.join(":", MESSAGE_KEY, String.valueOf(message.getId()),
+                    String.valueOf(message.getSenderId()),
+                    String.valueOf(message.getReceiverId())));
+        });
+    }
+
+    // Другие экземпляры узнают, что непрочитанных от собеседника стало меньше;
+    // здесь дельту доставляет deliverUnread из UnreadCounters
+    public void publishReadAfterCommit(long userId, long interlocutorId, int count) {
+        afterCommit(() -> {
+            bus.publish(TOPIC, String.join(":", READ_KEY, String.valueOf(userId),
+                    String.valueOf(interlocutorId), String.valueOf(count)));
+        });
+    }
+
+    public StreamStats stats() {
+        long queued = 0;
+        for (Set<Subscriber> set : subscribers.values()) {
+            for (Subscriber subscriber : set) {
+                queued += subscriber.queued.get();
+            }
+        }
+        return new StreamStats(connections.get(), subscribers.size(), queued,
+                sentEvents.sum(), droppedConnections.sum(), stalledWrites.sum());
+    }
+
+    // Изменение числа непрочитанных получателя от отправителя на delta
+    public void deliverUnread(long receiverId, long senderId, int delta) {
+        offer(receiverId, SseEmitter.event().name("unread")
+                .data(new UnreadEvent(senderId, delta)));
+    }
+
+    private void deliverMessage(MessageDto message, boolean withUnread) {
+        SseEventBuilder event = SseEmitter.event().name("message")
+                .id(String.valueOf(message.getId())).data(message);
+        offer(message.getSenderId(), event);
+        offer(message.getReceiverId(), event);
+        if (withUnread) {
+            deliverUnread(message.getReceiverId(), message.getSenderId(), 1);
+        }
+    }
+
+    private void offer(long userId, SseEventBuilder event) {
+        Set<Subscriber> userSubscribers = subscribers.get(userId);
+        if (userSubscribers != null) {
+            userSubscribers.forEach(subscriber -> subscriber.offer(event));
+        }
+    }
+
+    private void sendHeartbeats() {
+        long threshold = System.currentTimeMillis()
+                - properties.getHeartbeatInterval().toMillis();
+        for (Set<Subscriber> set : subscribers.values()) {
+            for (Subscriber subscriber : set) {
+                if (subscriber.lastActivity < threshold && subscriber.queued.get() == 0) {
+                    subscriber.offer(SseEmitter.event().comment("heartbeat"));
+                }
+            }
+        }
+    }
+
+    private void dropStalledWrites() {
+        long threshold = System.currentTimeMillis() - properties.getWriteTimeout().toMillis();
+        for (Subscriber subscriber : writing) {
+            long startedAt = subscriber.writeStartedAt;
+            if (startedAt != 0 && startedAt < threshold) {
+                subscriber.stall();
+            }
+        }
+    }
+
+    // Поток, застрявший в записи, не считается: пул временно растёт на один поток
+    private synchronized void replaceStalledThread() {
+        sender.setMaximumPoolSize(sender.getMaximumPoolSize() + 1);
+        sender.setCorePoolSize(sender.getCorePoolSize() + 1);
+    }
+
+    private synchronized void releaseStalledThread() {
+        sender.setCorePoolSize(sender.getCorePoolSize() - 1);
+        sender.setMaximumPoolSize(sender.getMaximumPoolSize() - 1);
+    }
+
+    private void onRemoteChange(String topic, Set<String> keys) {
+        if (!TOPIC.equals(topic)) {
+            return;
+        }
+        List<Long> messageIds = new ArrayList<>();
+        for (String key : keys) {
+            String[] parts = key.split(":");
+            try {
+                if (MESSAGE_KEY.equals(parts[0]) && parts.length == 4
+                        && (hasLocal(parts[2]) || hasLocal(parts[3]))) {
+                    messageIds.add(Long.parseLong(parts[1]));
+                } else if (READ_KEY.equals(parts[0]) && parts.length == 4) {
+                    deliverUnread(Long.parseLong(parts[1]), Long.parseLong(parts[2]),
+                            -Integer.parseInt(parts[3]));
+                }
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid message stream key '{}' from invalidation bus", key);
+            }
+        }
+        if (!messageIds.isEmpty()) {
+            messageRepository.findAllById(messageIds).stream()
+                    .map(MessageDto::from)
+                    .forEach(message -> deliverMessage(message, true));
+        }
+    }
+
+    private boolean hasLocal(String userId) {
+        return subscribers.containsKey(Long.parseLong(userId));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            action.run();
+                        }
+                    });
+        } else {
+            action.run();
+        }
+    }
+
+    private final class Subscriber {
+        private final long userId;
+        private final SseEmitter emitter;
+        private final Queue<SseEventBuilder> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final AtomicBoolean completeOnDrain = new AtomicBoolean();
+        private final AtomicBoolean stalled = new AtomicBoolean();
+        private boolean replaced;
+        private volatile long lastActivity = System.currentTimeMillis();
+        // Начало текущей записи; 0 — запись не идёт
+        private volatile long writeStartedAt;
+
+        private Subscriber(long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void offer(SseEventBuilder event) {
+            if (closed.get()) {
+                return;
+            }
+            if (queued.incrementAndGet() > properties.getQueueCapacity()) {
+                queued.decrementAndGet();
+                log.warn("Message stream of user {} overflowed, disconnecting", userId);
+                droppedConnections.increment();
+                disconnect();
+                return;
+            }
+            queue.add(event);
+            schedule();
+        }
+
+        // Вызывается сторожем: запись висит дольше write-timeout. Под монитором
+        // подписчика, чтобы замена потока и её возврат в drain() не разошлись
+        void stall() {
+            synchronized (this) {
+                if (writeStartedAt == 0 || !stalled.compareAndSet(false, true)) {
+                    return;
+                }
+                if (stalledNow.incrementAndGet() <= properties.getMaxStalledWrites()) {
+                    replaced = true;
+                    replaceStalledThread();
+                } else {
+                    stalledNow.decrementAndGet();
+                }
+            }
+            log.warn("Message stream of user {} stalled in write, disconnecting", userId);
+            stalledWrites.increment();
+            droppedConnections.increment();
+            disconnect();
+        }
+
+        // Отключение по решению сервера; emitter завершит поток отправки
+        private void disconnect() {
+            close();
+            completeOnDrain.set(true);
+            schedule();
+        }
+
+        private void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                SseEventBuilder event;
+                int sent = 0;
+                while (sent < DRAIN_BATCH && !closed.get() && (event = queue.poll()) != null) {
+                    queued.decrementAndGet();
+                    writeStartedAt = System.currentTimeMillis();
+                    writing.add(this);
+                    emitter.send(event);
+                    writing.remove(this);
+                    writeStartedAt = 0;
+                    lastActivity = System.currentTimeMillis();
+                    sentEvents.increment();
+                    sent++;
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Message stream of user {} closed: {}", userId, e.getMessage());
+                close();
+            } finally {
+                writing.remove(this);
+                synchronized (this) {
+                    writeStartedAt = 0;
+                    if (replaced) {
+                        replaced = false;
+                        stalledNow.decrementAndGet();
+                        releaseStalledThread();
+                    }
+                }
+                if (closed.get() && completeOnDrain.compareAndSet(true, false)) {
+                    completeQuietly();
+                }
+                draining.set(false);
+                if (!closed.get() && !queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private void completeQuietly() {
+            try {
+                emitter.complete();
+            } catch (IllegalStateException e) {
+                log.debug("Message stream of user {} already completed", userId);
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            queue.clear();
+            queued.set(0);
+            connections.decrementAndGet();
+            subscribers.computeIfPresent(userId, (id, set) -> {
+                set.remove(this);
+                return set.isEmpty() ? null : set;
+            });
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.kirill.meetyou.service;
 
+import com.kirill.meetyou.cache.CacheRegistry;
+import com.kirill.meetyou.cache.NamedCache;
+import com.kirill.meetyou.cache.UserExistenceFilter;
+import com.kirill.meetyou.dto.PhotoSnapshot;
 import com.kirill.meetyou.exception.ResourceNotFoundException;
 import com.kirill.meetyou.model.Photo;
 import com.kirill.meetyou.model.User;
@@ -14,7 +18,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -24,7 +27,6 @@ import org.springframework.web.server.ResponseStatusException;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class PhotoService {
     private static final String CLEAR_MAIN_PHOTOS_LOG = "Очистка текущих главных фотографий для пользователя {}";
     private static final String IMAGES_DIR = "/home/kirill/Изображения/";
@@ -33,6 +35,16 @@ public class PhotoService {
 
     private final PhotoRepository photoRepository;
     private final UserRepository userRepository;
+    private final UserExistenceFilter userExistenceFilter;
+    private final NamedCache<Long, List<PhotoSnapshot>> photoCache;
+
+    public PhotoService(PhotoRepository photoRepository, UserRepository userRepository,
+                        UserExistenceFilter userExistenceFilter, CacheRegistry cacheRegistry) {
+        this.photoRepository = photoRepository;
+        this.userRepository = userRepository;
+        this.userExistenceFilter = userExistenceFilter;
+        this.photoCache = cacheRegistry.getCache("photos");
+    }
 
     @Transactional
     public Photo addPhoto(Long userId, MultipartFile file, String isMain) {
@@ -53,6 +65,7 @@ public class PhotoService {
             }
 
             Photo savedPhoto = photoRepository.save(photo);
+            photoCache.removeAfterCommit(userId);
             log.info("Фотография успешно добавлена для пользователя {}", userId);
             return savedPhoto;
         } catch (IOException e) {
@@ -62,11 +75,16 @@ public class PhotoService {
         }
     }
 
-    public List<Photo> getAllUserPhotos(Long userId) {
+    // В кэше снимки, а не сущности: их не изменит и не попытается дозагрузить
+    // другой поток или закрытая сессия
+    public List<PhotoSnapshot> getAllUserPhotos(Long userId) {
         validateUserId(userId);
         log.debug("Получение всех фотографий для пользователя {}", userId);
 
-        List<Photo> photos = photoRepository.findByUserId(userId);
+        List<PhotoSnapshot> photos = photoCache.get(userId,
+                id -> photoRepository.findByUserId(id).stream()
+                        .map(PhotoSnapshot::from)
+                        .toList());
         if (photos.isEmpty()) {
             log.info("Фотографии для пользователя {} не найдены", userId);
         }
@@ -99,6 +117,7 @@ public class PhotoService {
 
         updatePhotoFields(photo, photoDetails);
         Photo updatedPhoto = photoRepository.save(photo);
+        photoCache.removeAfterCommit(userId);
         log.info("Фотография {} успешно обновлена для пользователя {}", photoId, userId);
         return updatedPhoto;
     }
@@ -112,6 +131,7 @@ public class PhotoService {
         deletePhotoFile(photo.getPhotoUrl());
 
         photoRepository.delete(photo);
+        photoCache.removeAfterCommit(userId);
 
         if (isMainPhoto(photo)) {
             log.debug("Удалена основная фотография для пользователя {}", userId);
@@ -140,6 +160,7 @@ public class PhotoService {
         List<String> failedFiles = new ArrayList<>();
 
         processFiles(userId, files, hasMainPhoto, photos, failedFiles);
+        photoCache.removeAfterCommit(userId);
 
         return handlePhotoSaveResults(userId, photos, failedFiles);
     }
@@ -154,6 +175,7 @@ public class PhotoService {
         photo.setIsMainString(TRUE_STRING);
 
         Photo savedPhoto = photoRepository.save(photo);
+        photoCache.removeAfterCommit(userId);
         log.info("Фотография {} установлена как главная для пользователя {}", photoId, userId);
         return savedPhoto;
     }
@@ -207,9 +229,16 @@ public class PhotoService {
     }
 
     private User getUserById(Long userId) {
+        if (!userExistenceFilter.mightExist(userId)) {
+            throw new ResourceNotFoundException(
+                    String.format("Пользователь с id: %d не найден", userId));
+        }
         return userRepository.findById(userId)
-                .orElseThrow(() -> new ResourceNotFoundException(
-                        String.format("Пользователь с id: %d не найден", userId)));
+                .orElseThrow(() -> {
+                    userExistenceFilter.markMissing(userId);
+                    return new ResourceNotFoundException(
+                            String.format("Пользователь с id: %d не найден", userId));
+                });
     }
 
     private Photo createPhotoEntity(String photoUrl, String isMain, User user) {
@@ -0,0 +1,76 @@
+package com.kirill.meetyou.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kirill.meetyou.dto.UserSnapshot;
+import com.kirill.meetyou.dto.UserSnapshot.InterestRef;
+import com.kirill.meetyou.repository.UserRepository;
+import com.kirill.meetyou.repository.UserRepository.UserExportRow;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Выгрузка всех пользователей JSON-массивом без загрузки таблицы в память:
+ * строки читаются курсором с фиксированным fetch size, склеиваются по id
+ * (запрос отсортирован) и сразу пишутся через потоковый JsonGenerator.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserExportService {
+    private static final int FLUSH_EVERY = 1000;
+
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(readOnly = true)
+    public long exportAll(OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        long written = 0;
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+             Stream<UserExportRow> rows = userRepository.streamForExport()) {
+            generator.writeStartArray();
+
+            Iterator<UserExportRow> iterator = rows.iterator();
+            UserExportRow current = null;
+            List<InterestRef> interests = new ArrayList<>();
+            while (iterator.hasNext()) {
+                UserExportRow row = iterator.next();
+                if (current != null && !current.getId().equals(row.getId())) {
+                    writeUser(generator, current, interests);
+                    interests.clear();
+                    if (++written % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                }
+                current = row;
+                if (row.getInterest() != null) {
+                    interests.add(new InterestRef(row.getInterestId(), row.getInterest()));
+                }
+            }
+            if (current != null) {
+                writeUser(generator, current, interests);
+                written++;
+            }
+            generator.writeEndArray();
+        }
+        log.info("Exported {} users in {} ms", written, System.currentTimeMillis() - start);
+        return written;
+    }
+
+    private static void writeUser(JsonGenerator generator, UserExportRow row,
+                                  List<InterestRef> interests) throws IOException {
+        interests.sort(Comparator.comparing(InterestRef::interestType));
+        generator.writeObject(new UserSnapshot(row.getId(), row.getName(), row.getEmail(),
+                row.getBirth(), row.getAge(), interests));
+    }
+}
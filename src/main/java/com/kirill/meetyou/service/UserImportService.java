@@ -0,0 +1,63 @@
+package com.kirill.meetyou.service;
+
+import com.kirill.meetyou.config.UserImportProperties;
+import com.kirill.meetyou.dto.ImportTask;
+import com.kirill.meetyou.enums.ImportTaskStatus;
+import com.kirill.meetyou.utils.UserImportProcessor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class UserImportService {
+    public static final String FORMAT_NDJSON = "ndjson";
+    public static final String FORMAT_CSV = "csv";
+
+    private final Map<String, ImportTask> tasks = new ConcurrentHashMap<>();
+    private final UserImportProcessor importProcessor;
+    private final UserImportProperties properties;
+
+    // Тело запроса сразу копируется на диск потоком, чтобы не держать его в памяти
+    // и не занимать HTTP-соединение на время импорта
+    public ImportTask startImport(InputStream body, String format) {
+        String id = UUID.randomUUID().toString();
+        Path file;
+        try {
+            Path dir = Paths.get(properties.getSpoolDir()).toAbsolutePath().normalize();
+            Files.createDirectories(dir);
+            file = dir.resolve("users-import-" + id + "." + format);
+            Files.copy(body, file);
+        } catch (IOException e) {
+            log.error("Failed to spool user import {}. Error: {}", id, e.getMessage(), e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
+                    "Ошибка при получении файла импорта");
+        }
+
+        ImportTask task = new ImportTask();
+        task.setId(id);
+        task.setFormat(format);
+        task.setStatus(ImportTaskStatus.PENDING);
+        task.setStartedAt(LocalDateTime.now());
+        tasks.put(id, task);
+
+        importProcessor.process(task, file);
+        return task;
+    }
+
+    public ImportTask getStatus(String id) {
+        return tasks.get(id);
+    }
+}
@@ -1,45 +1,166 @@
 package com.kirill.meetyou.service;
 
 import com.kirill.meetyou.cache.UserCache;
+import com.kirill.meetyou.cache.UserExistenceFilter;
+import com.kirill.meetyou.config.UserBulkProperties;
 import com.kirill.meetyou.dto.BulkResponse;
 import com.kirill.meetyou.dto.UserCreateDto;
+import com.kirill.meetyou.dto.UserPage;
+import com.kirill.meetyou.dto.UserSnapshot;
 import com.kirill.meetyou.dto.UserUpdateDto;
+import com.kirill.meetyou.index.BioSearchIndex;
+import com.kirill.meetyou.index.InterestIndex;
+import com.kirill.meetyou.index.UserSuggestIndex;
 import com.kirill.meetyou.model.User;
+import com.kirill.meetyou.repository.UserBatchRepository;
 import com.kirill.meetyou.repository.UserRepository;
 import java.time.LocalDate;
 import java.time.Period;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 @Slf4j
 @Service
 public class UserService {
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int FETCH_BATCH_SIZE = 1000;
+    private static final int DEFAULT_SUGGEST_LIMIT = 10;
+    private static final int MAX_SUGGEST_LIMIT = 50;
+
     private final UserRepository userRepository;
     private final UserCache cache;
+    private final UserExistenceFilter existenceFilter;
+    private final UserBatchRepository batchRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final UserBulkProperties bulkProperties;
+    private final InterestIndex interestIndex;
+    private final BioSearchIndex bioSearchIndex;
+    private final UserSuggestIndex suggestIndex;
+    private final FriendService friendService;
 
-    public UserService(UserRepository userRepository, UserCache cache) {
+    public UserService(UserRepository userRepository, UserCache cache,
+                       UserExistenceFilter existenceFilter,
+                       UserBatchRepository batchRepository,
+                       TransactionTemplate transactionTemplate,
+                       PlatformTransactionManager transactionManager,
+                       UserBulkProperties bulkProperties,
+                       InterestIndex interestIndex,
+                       BioSearchIndex bioSearchIndex,
+                       UserSuggestIndex suggestIndex,
+                       FriendService friendService) {
         this.userRepository = userRepository;
         this.cache = cache;
+        this.existenceFilter = existenceFilter;
+        this.batchRepository = batchRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.bulkProperties = bulkProperties;
+        this.interestIndex = interestIndex;
+        this.bioSearchIndex = bioSearchIndex;
+        this.suggestIndex = suggestIndex;
+        this.friendService = friendService;
     }
 
-    public List<User> findAll() {
+    // Keyset-пагинация: WHERE id > after ORDER BY id LIMIT limit, без OFFSET
+    @Transactional(readOnly = true)
+    public UserPage findPage(Long after, Integer limit) {
+        long cursor = after == null ? 0 : after;
+        int size = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (cursor < 0 || size <= 0 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Некорректные параметры страницы: after >= 0, 0 < limit <= "
+                            + MAX_PAGE_SIZE);
+        }
+
         try {
-            log.debug("Fetching all users");
-            return userRepository.findAll();
+            List<Long> ids = userRepository.findIdsAfter(cursor, Limit.of(size));
+            List<UserSnapshot> items = loadSnapshots(ids);
+            Long nextCursor = ids.size() < size ? null : ids.get(ids.size() - 1);
+            return new UserPage(items, nextCursor);
         } catch (Exception e) {
-            log.error("Failed to fetch all users. Error: {}", e.getMessage(), e);
+            log.error("Failed to fetch users after {}. Error: {}", cursor, e.getMessage(), e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
                     "Ошибка при получении пользователей");
         }
     }
 
-    public Optional<User> findById(Long id) {
+    // Автодополнение только по префиксному дереву в памяти: LIKE 'abc%' по таблице
+    // на нашем объёме не годится, поэтому пока дерево строится — 503
+    public List<Long> suggest(String prefix, Integer limit) {
+        int size = limit == null ? DEFAULT_SUGGEST_LIMIT : limit;
+        if (prefix == null || prefix.isBlank() || size <= 0 || size > MAX_SUGGEST_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Некорректные параметры: непустой prefix, 0 < limit <= "
+                            + MAX_SUGGEST_LIMIT);
+        }
+        if (!suggestIndex.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Индекс автодополнения ещё строится");
+        }
+        return suggestIndex.suggest(prefix, size);
+    }
+
+    public UserSuggestIndex.SuggestStats suggestStats() {
+        return suggestIndex.stats();
+    }
+
+    // Id берутся из инвертированного индекса пересечением или объединением
+    // битмапов; пока индекс строится — из БД. Пользователи с интересами
+    // догружаются одним запросом на страницу
+    @Transactional(readOnly = true)
+    public List<UserSnapshot> findByInterest(String interestType, Long after, Integer limit) {
+        return findByAllInterests(Set.of(interestType), after, limit);
+    }
+
+    @Transactional(readOnly = true)
+    public List<UserSnapshot> findByAllInterests(Set<String> interestTypes, Long after,
+                                                 Integer limit) {
+        long cursor = validateCursor(after);
+        int size = validateSearchLimit(limit);
+        List<Long> ids = interestIndex.isReady()
+                ? interestIndex.findAll(interestTypes, cursor, size)
+                : pageIds(userRepository.findIdsByAllInterestTypes(interestTypes,
+                        interestTypes.size()), cursor, size);
+        return loadSnapshots(ids);
+    }
+
+    @Transactional(readOnly = true)
+    public List<UserSnapshot> findByAnyInterest(Set<String> interestTypes, Long after,
+                                                Integer limit) {
+        long cursor = validateCursor(after);
+        int size = validateSearchLimit(limit);
+        List<Long> ids = interestIndex.isReady()
+                ? interestIndex.findAny(interestTypes, cursor, size)
+                : pageIds(userRepository.findIdsByAnyInterestTypes(interestTypes), cursor, size);
+        return loadSnapshots(ids);
+    }
+
+    // Снимки пользователей по списку id одним запросом на каждую тысячу id
+    @Transactional(readOnly = true)
+    public List<UserSnapshot> findSnapshots(List<Long> ids) {
+        return loadSnapshots(ids);
+    }
+
+    // Без @Transactional: при промахе транзакцию открывает только загружающий
+    // поток, ожидающие его результат не держат соединение из пула
+    public Optional<UserSnapshot> findById(Long id) {
         try {
             if (id == null || id <= 0) {
                 log.warn("Invalid user ID requested: {}", id);
@@ -47,15 +168,16 @@ public class UserService {
                         "Некорректный ID пользователя");
             }
 
-            User cachedUser = cache.get(id);
-            if (cachedUser != null) {
-                log.info("User {} retrieved from cache", id);
-                return Optional.of(cachedUser);
+            if (!existenceFilter.mightExist(id)) {
+                log.debug("User {} rejected by existence filter", id);
+                return Optional.empty();
             }
 
-            Optional<User> userOptional = userRepository.findById(id);
-            userOptional.ifPresent(user -> cache.put(id, user));
-            return userOptional;
+            UserSnapshot snapshot = cache.get(id, this::loadSnapshot);
+            if (snapshot == null) {
+                existenceFilter.markMissing(id);
+            }
+            return Optional.ofNullable(snapshot);
         } catch (Exception e) {
             log.error("Failed to find user with ID: {}. Error: {}", id, e.getMessage(), e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
@@ -69,7 +191,10 @@ public class UserService {
             user.setAge(Period.between(user.getBirth(), LocalDate.now()).getYears());
 
             User savedUser = userRepository.save(user);
-            cache.put(savedUser.getId(), savedUser);
+            existenceFilter.markExists(savedUser.getId());
+            cache.put(savedUser.getId(), UserSnapshot.from(savedUser));
+            suggestIndex.updateUserAfterCommit(savedUser.getId(), savedUser.getName(),
+                    savedUser.getEmail());
             return savedUser;
         } catch (Exception e) {
             log.error("Failed to create user. Error: {}", e.getMessage(), e);
@@ -78,16 +203,23 @@ public class UserService {
         }
     }
 
+    // В одной транзакции с удалением связей дружбы и пересчётом friend_count друзей
+    @Transactional
     public void delete(Long id) {
         try {
             validateUserId(id);
-            if (!userRepository.existsById(id)) {
+            if (!existenceFilter.mightExist(id) || !userRepository.existsById(id)) {
                 throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                         "Пользователь не найден");
             }
 
+            friendService.removeAllFriendships(id);
             userRepository.deleteById(id);
-            cache.remove(id);
+            existenceFilter.markDeletedAfterCommit(id);
+            interestIndex.removeUserAfterCommit(id);
+            bioSearchIndex.removeAfterCommit(id);
+            suggestIndex.removeUserAfterCommit(id);
+            cache.removeAfterCommit(id);
         } catch (Exception e) {
             log.error("Failed to delete user. Error: {}", e.getMessage(), e);
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
@@ -125,7 +257,9 @@ public class UserService {
             }
 
             User updatedUser = userRepository.save(user);
-            cache.put(id, updatedUser);
+            cache.put(id, UserSnapshot.from(updatedUser));
+            suggestIndex.updateUserAfterCommit(id, updatedUser.getName(),
+                    updatedUser.getEmail());
             return updatedUser;
         } catch (Exception e) {
             log.error("Failed to update user. Error: {}", e.getMessage(), e);
@@ -134,43 +268,180 @@ public class UserService {
         }
     }
 
-    @Transactional
+    // Без общей транзакции: строки коммитятся пакетами по chunk-size, ошибки
+    // отдельных строк попадают в ответ и не откатывают остальные
     public BulkResponse bulkCreate(List<UserCreateDto> userDtos) {
-        BulkResponse.BulkResponseBuilder response = BulkResponse.builder()
-                .successCount(0)
-                .failCount(0)
-                .errors(new ArrayList<>());
-
         if (userDtos == null || userDtos.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
                     "Список пользователей не может быть пустым");
         }
 
-        for (UserCreateDto dto : userDtos) {
-            try {
-                User user = new User();
-                user.setEmail(dto.getEmail());
-                user.setName(dto.getName());
-                user.setBirth(dto.getBirth());
-                validateUserForCreation(user);
-                user.setAge(Period.between(dto.getBirth(), LocalDate.now()).getYears());
-
-                User saved = userRepository.save(user);
-                cache.put(saved.getId(), saved);
-                response.successCount(response.build().getSuccessCount() + 1);
-            } catch (Exception e) {
-                response.failCount(response.build().getFailCount() + 1);
-                response.errors(List.of("Ошибка для "
-                        + "email " + dto.getEmail() + ": " + e.getMessage()));
-            }
+        long start = System.currentTimeMillis();
+        int chunkSize = Math.max(1, bulkProperties.getChunkSize());
+        Set<String> seenEmails = new HashSet<>();
+        List<String> errors = new ArrayList<>();
+        int successCount = 0;
+
+        for (int from = 0; from < userDtos.size(); from += chunkSize) {
+            List<UserCreateDto> chunk = userDtos.subList(from,
+                    Math.min(from + chunkSize, userDtos.size()));
+            successCount += insertChunk(chunk, from, seenEmails, errors);
         }
 
-        return response.build();
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        log.info("Bulk create: {} of {} users inserted in {} ms ({} users/s)",
+                successCount, userDtos.size(), elapsed, successCount * 1000L / elapsed);
+        return BulkResponse.builder()
+                .successCount(successCount)
+                .failCount(userDtos.size() - successCount)
+                .errors(errors)
+                .build();
+    }
+
+    // Проверка полей без обращения к БД: текст ошибки или null
+    public String validateNewUser(UserCreateDto dto) {
+        if (dto == null) {
+            return "Пользователь не может быть null";
+        }
+        User user = new User();
+        user.setEmail(dto.getEmail());
+        user.setName(dto.getName());
+        user.setBirth(dto.getBirth());
+        try {
+            validateUserFields(user);
+            return null;
+        } catch (ResponseStatusException e) {
+            return e.getReason();
+        }
     }
 
     // === Helpers ===
 
+    private static List<Long> pageIds(List<Long> ids, long after, int limit) {
+        return ids.stream()
+                .filter(id -> id > after)
+                .sorted()
+                .limit(limit)
+                .toList();
+    }
+
+    private static long validateCursor(Long after) {
+        if (after != null && after < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Некорректный курсор: after >= 0");
+        }
+        return after == null ? 0 : after;
+    }
+
+    // Без limit поиск по интересам возвращает всех найденных, как и раньше
+    private static int validateSearchLimit(Integer limit) {
+        if (limit != null && limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Некорректный limit: limit > 0");
+        }
+        return limit == null ? Integer.MAX_VALUE : limit;
+    }
+
+    // Пачками по FETCH_BATCH_SIZE id, чтобы не упереться в лимит параметров запроса
+    private List<UserSnapshot> loadSnapshots(List<Long> ids) {
+        List<UserSnapshot> snapshots = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += FETCH_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + FETCH_BATCH_SIZE, ids.size()));
+            userRepository.findWithInterestsByIdIn(batch).forEach(
+                    user -> snapshots.add(UserSnapshot.from(user)));
+        }
+        snapshots.sort(Comparator.comparing(UserSnapshot::id));
+        return snapshots;
+    }
+
+    private UserSnapshot loadSnapshot(Long id) {
+        return readOnlyTransaction.execute(status -> userRepository.findWithInterestsById(id)
+                .map(UserSnapshot::from)
+                .orElse(null));
+    }
+
+    private int insertChunk(List<UserCreateDto> chunk, int offset, Set<String> seenEmails,
+                            List<String> errors) {
+        List<UserCreateDto> candidates = new ArrayList<>(chunk.size());
+        List<Integer> rows = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            UserCreateDto dto = chunk.get(i);
+            String error = validateNewUser(dto);
+            if (error != null) {
+                errors.add(bulkRowError(offset + i, dto, error));
+            } else if (!seenEmails.add(dto.getEmail())) {
+                errors.add(bulkRowError(offset + i, dto, "email повторяется в запросе"));
+            } else {
+                candidates.add(dto);
+                rows.add(offset + i);
+            }
+        }
+
+        // Один IN-запрос на пакет вместо findByEmail на каждую строку
+        Set<String> existing = new HashSet<>(batchRepository.findExistingEmails(
+                candidates.stream().map(UserCreateDto::getEmail).toList()));
+        LocalDate today = LocalDate.now();
+        List<UserCreateDto> accepted = new ArrayList<>(candidates.size());
+        List<Integer> acceptedRows = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            UserCreateDto dto = candidates.get(i);
+            if (existing.contains(dto.getEmail())) {
+                errors.add(bulkRowError(rows.get(i), dto,
+                        "Пользователь с таким email уже существует"));
+            } else {
+                accepted.add(dto);
+                acceptedRows.add(rows.get(i));
+            }
+        }
+        if (accepted.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            List<UserBatchRepository.NewUser> inserted = transactionTemplate.execute(status -> {
+                List<Long> ids = batchRepository.reserveIds(accepted.size());
+                List<UserBatchRepository.NewUser> users = new ArrayList<>(accepted.size());
+                for (int i = 0; i < accepted.size(); i++) {
+                    UserCreateDto dto = accepted.get(i);
+                    users.add(new UserBatchRepository.NewUser(ids.get(i), dto.getName(),
+                            dto.getEmail(), dto.getBirth(),
+                            Period.between(dto.getBirth(), today).getYears()));
+                }
+                batchRepository.insertAll(users);
+                return users;
+            });
+            // В кэш новые записи не кладутся: их ещё никто не читал
+            inserted.forEach(user -> {
+                existenceFilter.markExists(user.id());
+                suggestIndex.updateUserAfterCommit(user.id(), user.name(), user.email());
+            });
+            return inserted.size();
+        } catch (DataAccessException | TransactionException e) {
+            // TransactionException — сбой коммита или таймаут: пакет целиком не записан
+            log.error("Bulk create chunk at row {} failed. Error: {}", offset, e.getMessage(), e);
+            for (int i = 0; i < accepted.size(); i++) {
+                errors.add(bulkRowError(acceptedRows.get(i), accepted.get(i),
+                        "ошибка записи пакета"));
+            }
+            return 0;
+        }
+    }
+
+    private static String bulkRowError(int row, UserCreateDto dto, String message) {
+        return "Ошибка для строки " + (row + 1) + ", email "
+                + (dto == null ? null : dto.getEmail()) + ": " + message;
+    }
+
     private void validateUserForCreation(User user) {
+        validateUserFields(user);
+
+        if (userRepository.findByEmail(user.getEmail()).isPresent()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Пользователь с таким email уже существует");
+        }
+    }
+
+    private void validateUserFields(User user) {
         if (user == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
                     "Пользователь не может быть null");
@@ -182,11 +453,6 @@ public class UserService {
                     "Email обязателен");
         }
 
-        if (userRepository.findByEmail(user.getEmail()).isPresent()) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                    "Пользователь с таким email уже существует");
-        }
-
         if (user.getName() == null || user.getName().trim().isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
                     "Имя обязательно");
@@ -0,0 +1,314 @@
+package com.kirill.meetyou.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kirill.meetyou.cache.UserExistenceFilter;
+import com.kirill.meetyou.config.UserImportProperties;
+import com.kirill.meetyou.dto.ImportTask;
+import com.kirill.meetyou.dto.UserCreateDto;
+import com.kirill.meetyou.enums.ImportTaskStatus;
+import com.kirill.meetyou.index.UserSuggestIndex;
+import com.kirill.meetyou.repository.UserBatchRepository;
+import com.kirill.meetyou.service.UserImportService;
+import com.kirill.meetyou.service.UserService;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.sql.DataSource;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+/**
+ * Потоковый импорт пользователей из NDJSON или CSV.
+ *
+ * <p>Файл читается построчно. Строки проверяются пакетами по
+ * {@code validation-batch-size} (поля и повторы в памяти, занятые email — одним
+ * IN-запросом), получают id из последовательности и уходят в
+ * {@code COPY users FROM STDIN}. COPY закрывается и коммитится каждые
+ * {@code commit-every} строк, поэтому память не зависит от размера файла.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserImportProcessor {
+    private static final String COPY_SQL = "COPY users (id, name, email, birth, age, updated_at) "
+            + "FROM STDIN WITH (FORMAT csv)";
+
+    private final DataSource dataSource;
+    private final UserBatchRepository batchRepository;
+    private final UserService userService;
+    private final UserExistenceFilter existenceFilter;
+    private final UserSuggestIndex suggestIndex;
+    private final UserImportProperties properties;
+    private final ObjectMapper objectMapper;
+
+    @Async
+    public void process(ImportTask task, Path file) {
+        task.setStatus(ImportTaskStatus.RUNNING);
+        long start = System.currentTimeMillis();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+            try {
+                new ImportRun(task, connection, copyManager).run(reader);
+            } catch (IOException | SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+            task.setStatus(ImportTaskStatus.SUCCESS);
+            log.info("[ASYNC] Импорт {} завершён за {} мс: импортировано {}, отклонено {}",
+                    task.getId(), System.currentTimeMillis() - start, task.getRowsImported(),
+                    task.getRowsRejected());
+        } catch (IOException | SQLException | RuntimeException e) {
+            task.setStatus(ImportTaskStatus.FAILED);
+            task.setError(e.getMessage());
+            log.error("[ASYNC] Ошибка импорта пользователей {}: {}", task.getId(),
+                    e.getMessage());
+        } finally {
+            task.setFinishedAt(LocalDateTime.now());
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Failed to delete import file {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private final class ImportRun {
+        private final ImportTask task;
+        private final Connection connection;
+        private final CopyManager copyManager;
+        private final List<PendingRow> pending = new ArrayList<>();
+        private final Set<String> chunkEmails = new HashSet<>();
+        private final List<Long> chunkIds = new ArrayList<>();
+        private final List<UserCreateDto> chunkUsers = new ArrayList<>();
+        private final LocalDate today = LocalDate.now();
+        private final String updatedAt = LocalDateTime.now().toString();
+        private CopyIn copyIn;
+        private int[] csvColumns;
+
+        private ImportRun(ImportTask task, Connection connection, CopyManager copyManager) {
+            this.task = task;
+            this.connection = connection;
+            this.copyManager = copyManager;
+        }
+
+        void run(BufferedReader reader) throws IOException, SQLException {
+            boolean csv = UserImportService.FORMAT_CSV.equals(task.getFormat());
+            int batchSize = Math.max(1, properties.getValidationBatchSize());
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (csv && csvColumns == null) {
+                    csvColumns = parseCsvHeader(line);
+                    continue;
+                }
+
+                task.setRowsRead(task.getRowsRead() + 1);
+                UserCreateDto dto;
+                try {
+                    dto = csv ? parseCsvRow(line) : objectMapper.readValue(line,
+                            UserCreateDto.class);
+                } catch (IOException | RuntimeException e) {
+                    reject(lineNumber, "строка не разобрана");
+                    continue;
+                }
+
+                String error = userService.validateNewUser(dto);
+                if (error != null) {
+                    reject(lineNumber, error);
+                } else if (!chunkEmails.add(dto.getEmail())) {
+                    reject(lineNumber, "email повторяется в файле");
+                } else {
+                    pending.add(new PendingRow(lineNumber, dto));
+                    if (pending.size() >= batchSize) {
+                        flushPending();
+                    }
+                }
+            }
+            flushPending();
+            commitChunk();
+        }
+
+        private void flushPending() throws SQLException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Set<String> existing = new HashSet<>(batchRepository.findExistingEmails(
+                    pending.stream().map(row -> row.user().getEmail()).toList()));
+            List<PendingRow> accepted = new ArrayList<>(pending.size());
+            for (PendingRow row : pending) {
+                if (existing.contains(row.user().getEmail())) {
+                    reject(row.lineNumber(), "Пользователь с таким email уже существует");
+                } else {
+                    accepted.add(row);
+                }
+            }
+            pending.clear();
+            if (accepted.isEmpty()) {
+                return;
+            }
+
+            List<Long> ids = batchRepository.reserveIds(accepted.size());
+            StringBuilder rows = new StringBuilder(accepted.size() * 96);
+            for (int i = 0; i < accepted.size(); i++) {
+                UserCreateDto user = accepted.get(i).user();
+                rows.append(ids.get(i)).append(',');
+                appendCsv(rows, user.getName()).append(',');
+                appendCsv(rows, user.getEmail()).append(',');
+                rows.append(user.getBirth()).append(',')
+                        .append(Period.between(user.getBirth(), today).getYears()).append(',')
+                        .append(updatedAt).append('\n');
+            }
+
+            if (copyIn == null) {
+                copyIn = copyManager.copyIn(COPY_SQL);
+            }
+            byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            chunkIds.addAll(ids);
+            accepted.forEach(row -> chunkUsers.add(row.user()));
+
+            if (chunkIds.size() >= properties.getCommitEvery()) {
+                commitChunk();
+            }
+        }
+
+        private void commitChunk() throws SQLException {
+            if (copyIn == null) {
+                return;
+            }
+            copyIn.endCopy();
+            copyIn = null;
+            connection.commit();
+
+            chunkIds.forEach(existenceFilter::markExists);
+            for (int i = 0; i < chunkIds.size(); i++) {
+                UserCreateDto user = chunkUsers.get(i);
+                suggestIndex.updateUserAfterCommit(chunkIds.get(i), user.getName(),
+                        user.getEmail());
+            }
+            task.setRowsImported(task.getRowsImported() + chunkIds.size());
+            chunkIds.clear();
+            chunkUsers.clear();
+            chunkEmails.clear();
+        }
+
+        private void reject(long lineNumber, String reason) {
+            task.setRowsRejected(task.getRowsRejected() + 1);
+            if (task.getRejectedLines().size() < properties.getMaxReportedErrors()) {
+                task.getRejectedLines().add("Строка " + lineNumber + ": " + reason);
+            }
+        }
+
+        private int[] parseCsvHeader(String line) {
+            List<String> names = parseCsvLine(line);
+            int[] columns = {-1, -1, -1};
+            for (int i = 0; i < names.size(); i++) {
+                switch (names.get(i).trim().toLowerCase(Locale.ROOT)) {
+                    case "name" -> columns[0] = i;
+                    case "email" -> columns[1] = i;
+                    case "birth" -> columns[2] = i;
+                    default -> {
+                        // Лишние колонки игнорируются
+                    }
+                }
+            }
+            if (columns[0] < 0 || columns[1] < 0 || columns[2] < 0) {
+                throw new IllegalArgumentException(
+                        "CSV должен начинаться с заголовка с колонками name, email, birth");
+            }
+            return columns;
+        }
+
+        private UserCreateDto parseCsvRow(String line) {
+            List<String> values = parseCsvLine(line);
+            UserCreateDto dto = new UserCreateDto();
+            dto.setName(csvValue(values, csvColumns[0]));
+            dto.setEmail(csvValue(values, csvColumns[1]));
+            String birth = csvValue(values, csvColumns[2]);
+            try {
+                dto.setBirth(birth == null ? null : LocalDate.parse(birth.trim()));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("некорректная дата", e);
+            }
+            return dto;
+        }
+    }
+
+    private static String csvValue(List<String> values, int index) {
+        if (index >= values.size() || values.get(index).isEmpty()) {
+            return null;
+        }
+        return values.get(index);
+    }
+
+    // Одна строка CSV (RFC 4180) без переносов внутри кавычек
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("незакрытые кавычки");
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static StringBuilder appendCsv(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        return out.append('"');
+    }
+
+    private record PendingRow(long lineNumber, UserCreateDto user) {
+    }
+}
@@ -0,0 +1,66 @@
+package com.kirill.meetyou.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * put внутри транзакции не должен показывать значение другим потокам до коммита
+ * и не должен оставлять его в кэше после отката.
+ */
+class NamedCacheTransactionTest {
+    private NamedCache<Long, String> cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new NamedCache<>("test", new CacheSpec(), mock(InvalidationBus.class),
+                Long::valueOf);
+        cache.putLocal(1L, "committed");
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        cache.shutdown();
+    }
+
+    @Test
+    void putBecomesVisibleOnlyAfterCommit() {
+        cache.put(1L, "uncommitted");
+        assertThat(cache.get(1L)).isNull();
+
+        complete(true);
+        assertThat(cache.get(1L)).isEqualTo("uncommitted");
+    }
+
+    @Test
+    void rolledBackPutLeavesNothingInCache() {
+        cache.put(1L, "uncommitted");
+
+        complete(false);
+        assertThat(cache.get(1L)).isNull();
+    }
+
+    private static void complete(boolean commit) {
+        List<TransactionSynchronization> synchronizations =
+                TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            if (commit) {
+                synchronization.afterCommit();
+            }
+            synchronization.afterCompletion(commit
+                    ? TransactionSynchronization.STATUS_COMMITTED
+                    : TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+    }
+}
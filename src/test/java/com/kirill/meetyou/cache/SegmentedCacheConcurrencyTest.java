@@ -0,0 +1,127 @@
+package com.kirill.meetyou.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Одновременные put/get/remove из нескольких потоков: кэш не превышает ёмкость,
+ * не отдаёт чужих значений и не теряет записи владельца ключа раньше вытеснения.
+ */
+class SegmentedCacheConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 50_000;
+    private static final int MAX_SIZE = 256;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void mixedOperationsKeepSizeBoundAndReturnOnlyValuesOfTheKey() throws Exception {
+        SegmentedCache<Integer, String> cache = new SegmentedCache<>(MAX_SIZE,
+                Duration.ofMinutes(1), 8);
+
+        runConcurrently(thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OPERATIONS; i++) {
+                int key = random.nextInt(MAX_SIZE * 4);
+                int operation = random.nextInt(10);
+                if (operation < 6) {
+                    String value = cache.get(key);
+                    assertThat(value == null || value.startsWith(key + ":")).isTrue();
+                } else if (operation < 9) {
+                    cache.put(key, key + ":" + thread);
+                } else {
+                    cache.remove(key);
+                }
+            }
+        });
+
+        assertThat(cache.size()).isLessThanOrEqualTo(MAX_SIZE);
+        for (SegmentedCache.EntrySnapshot<Integer, String> entry : cache.hottest(MAX_SIZE * 4)) {
+            assertThat(entry.value()).startsWith(entry.key() + ":");
+        }
+    }
+
+    @Test
+    void ownerSeesItsLatestWriteUnlessEvicted() throws Exception {
+        SegmentedCache<Long, Long> cache = new SegmentedCache<>(MAX_SIZE,
+                Duration.ofMinutes(1), 8);
+
+        // Каждый поток пишет только свои ключи, поэтому прочитанная версия не
+        // может быть старше последней записанной им
+        runConcurrently(thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long[] written = new long[64];
+            for (int i = 1; i <= OPERATIONS; i++) {
+                int slot = random.nextInt(written.length);
+                long key = (long) thread * written.length + slot;
+                cache.put(key, (long) i);
+                written[slot] = i;
+                Long read = cache.get(key);
+                assertThat(read == null || read >= written[slot]).isTrue();
+            }
+        });
+
+        assertThat(cache.size()).isLessThanOrEqualTo(MAX_SIZE);
+    }
+
+    @Test
+    void loaderPutIsDroppedAfterConcurrentRemove() throws Exception {
+        SegmentedCache<Long, String> cache = new SegmentedCache<>(MAX_SIZE,
+                Duration.ofMinutes(1), 1);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch removed = new CountDownLatch(1);
+
+        Future<Boolean> loader = executor.submit(() -> {
+            long generation = cache.generation(1L);
+            loading.countDown();
+            removed.await(10, TimeUnit.SECONDS);
+            return cache.putIfUnchanged(1L, "stale", generation);
+        });
+        loading.await(10, TimeUnit.SECONDS);
+        cache.put(1L, "fresh");
+        cache.remove(1L);
+        removed.countDown();
+
+        assertThat(loader.get(10, TimeUnit.SECONDS)).isFalse();
+        assertThat(cache.get(1L)).isNull();
+    }
+
+    private void runConcurrently(ThreadTask task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                task.run(thread);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            // Ошибка проверки в потоке пробрасывается отсюда как ExecutionException
+            future.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+        void run(int thread) throws Exception;
+    }
+}
@@ -0,0 +1,122 @@
+package com.kirill.meetyou.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.kirill.meetyou.config.UnreadCounterProperties;
+import com.kirill.meetyou.repository.MessageBatchRepository;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Новое сообщение, закоммиченное во время промаха, учитывается ровно один раз,
+ * видел его запрос загрузки или нет.
+ */
+class UnreadCountersTest {
+    private static final long RECEIVER = 1L;
+    private static final long SENDER = 2L;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Непрочитанные в БД: то, что видит запрос после коммита
+    private final AtomicLong committed = new AtomicLong();
+    private MessageBatchRepository repository;
+    private UnreadCounters unreadCounters;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(MessageBatchRepository.class);
+        when(repository.findUnreadBySender(anyLong())).thenAnswer(invocation -> snapshot());
+        unreadCounters = new UnreadCounters(repository, mock(InvalidationBus.class),
+                new UnreadCounterProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        executor.shutdownNow();
+        unreadCounters.shutdown();
+    }
+
+    @Test
+    void commitVisibleToLoadButAppliedAfterItIsNotCountedTwice() {
+        TransactionSynchronizationManager.initSynchronization();
+        unreadCounters.incrementAfterCommit(RECEIVER, SENDER, () -> { });
+        committed.incrementAndGet();
+
+        // Коммит уже виден запросу, но afterCompletion ещё не выполнился
+        assertThat(runOutsideTransaction(() -> unreadCounters.total(RECEIVER))).isEqualTo(1);
+        complete();
+
+        assertThat(unreadCounters.total(RECEIVER)).isEqualTo(1);
+        assertThat(unreadCounters.bySender(RECEIVER)).containsEntry(SENDER, 1L);
+    }
+
+    @Test
+    void commitAppliedDuringLoadIsNotLost() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(repository.findUnreadBySender(anyLong())).thenAnswer(invocation -> {
+            Map<Long, Long> unread = snapshot();
+            loading.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return unread;
+        });
+
+        Future<Long> load = executor.submit(() -> unreadCounters.total(RECEIVER));
+        assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+        // Запрос уже прочитал 0, сообщение коммитится и применяется до установки
+        TransactionSynchronizationManager.initSynchronization();
+        unreadCounters.incrementAfterCommit(RECEIVER, SENDER, () -> { });
+        committed.incrementAndGet();
+        complete();
+        release.countDown();
+
+        assertThat(load.get(10, TimeUnit.SECONDS)).isZero();
+        when(repository.findUnreadBySender(anyLong())).thenAnswer(invocation -> snapshot());
+        assertThat(unreadCounters.total(RECEIVER)).isEqualTo(1);
+        assertThat(unreadCounters.isLoaded(RECEIVER)).isTrue();
+    }
+
+    private Map<Long, Long> snapshot() {
+        Map<Long, Long> unread = new HashMap<>();
+        if (committed.get() > 0) {
+            unread.put(SENDER, committed.get());
+        }
+        return unread;
+    }
+
+    private <T> T runOutsideTransaction(Callable<T> task) {
+        try {
+            return executor.submit(task).get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void complete() {
+        List<TransactionSynchronization> synchronizations =
+                TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCommit();
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.kirill.meetyou.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.kirill.meetyou.dto.UserSnapshot;
+import com.kirill.meetyou.model.Interest;
+import com.kirill.meetyou.model.User;
+import jakarta.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+
+/**
+ * Страница пользователей с интересами должна собираться фиксированным числом
+ * запросов: id страницы и один запрос с интересами, независимо от размера страницы.
+ */
+@DataJpaTest(properties = {
+    "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class UserRepositoryStatementCountTest {
+    private static final int USERS = 50;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        Interest music = interest("Музыка");
+        Interest sport = interest("Спорт");
+        Interest books = interest("Книги");
+        for (int i = 0; i < USERS; i++) {
+            User user = new User();
+            user.setName("user" + i);
+            user.setEmail("user" + i + "@example.com");
+            user.setBirth(LocalDate.of(1990, 1, 1));
+            user.setAge(30);
+            user.getInterests().add(music);
+            user.getInterests().add(i % 2 == 0 ? sport : books);
+            entityManager.persist(user);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void pageWithInterestsTakesTwoStatements() {
+        List<Long> ids = userRepository.findIdsAfter(0L, Limit.of(USERS));
+        List<UserSnapshot> page = userRepository.findWithInterestsByIdIn(ids).stream()
+                .map(UserSnapshot::from)
+                .toList();
+
+        assertThat(page).hasSize(USERS);
+        assertThat(page).allSatisfy(user -> assertThat(user.interests()).hasSize(2));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void interestSearchPageTakesTwoStatements() {
+        List<Long> ids = userRepository.findIdsByAnyInterestTypes(Set.of("Спорт"));
+        List<UserSnapshot> page = userRepository.findWithInterestsByIdIn(ids).stream()
+                .map(UserSnapshot::from)
+                .toList();
+
+        assertThat(page).hasSize(USERS / 2);
+        assertThat(page).allSatisfy(user -> assertThat(user.interests())
+                .extracting(UserSnapshot.InterestRef::interestType)
+                .containsExactly("Музыка", "Спорт"));
+        assertThat(page.get(0).interests()).allSatisfy(interest ->
+                assertThat(interest.id()).isNotNull());
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
+
+    private Interest interest(String type) {
+        Interest interest = new Interest();
+        interest.setInterestType(type);
+        return entityManager.persist(interest);
+    }
+}
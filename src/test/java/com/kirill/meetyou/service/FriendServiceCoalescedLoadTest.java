@@ -0,0 +1,168 @@
+package com.kirill.meetyou.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.kirill.meetyou.cache.CacheProperties;
+import com.kirill.meetyou.cache.CacheRegistry;
+import com.kirill.meetyou.cache.FriendCounts;
+import com.kirill.meetyou.cache.InvalidationBus;
+import com.kirill.meetyou.cache.UserExistenceFilter;
+import com.kirill.meetyou.config.FriendBulkProperties;
+import com.kirill.meetyou.config.FriendPathProperties;
+import com.kirill.meetyou.dto.UserSnapshot;
+import com.kirill.meetyou.index.FriendGraph;
+import com.kirill.meetyou.repository.FriendBatchRepository;
+import com.kirill.meetyou.repository.FriendRepository;
+import com.kirill.meetyou.repository.UserRepository;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Пока загружающий поток читает друзей из БД, остальные потоки с тем же ключом
+ * ждут его результат без своей транзакции и без соединения из пула.
+ */
+@SpringJUnitConfig(FriendServiceCoalescedLoadTest.Config.class)
+class FriendServiceCoalescedLoadTest {
+    private static final long USER_ID = 1L;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @Autowired
+    private FriendService friendService;
+
+    @Autowired
+    private FriendRepository friendRepository;
+
+    @Autowired
+    private CacheRegistry cacheRegistry;
+
+    @Autowired
+    private CountingDataSource dataSource;
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void waiterHoldsNoConnectionWhileLeaderLoads() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(friendRepository.findFriendsOfUser(USER_ID)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return List.of();
+        });
+
+        Future<List<UserSnapshot>> leader = executor.submit(
+                () -> friendService.getAllFriends(USER_ID));
+        assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+        Future<List<UserSnapshot>> waiter = executor.submit(
+                () -> friendService.getAllFriends(USER_ID));
+        awaitCoalescedLoads(1);
+
+        // Соединение только у транзакции загружающего потока
+        assertThat(dataSource.open()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(leader.get(10, TimeUnit.SECONDS)).isEmpty();
+        assertThat(waiter.get(10, TimeUnit.SECONDS)).isEmpty();
+        assertThat(dataSource.open()).isZero();
+    }
+
+    private void awaitCoalescedLoads(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (cacheRegistry.getCache("friends").loadStats().coalescedLoads() < expected) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+        // Ожидающий уже внутри SingleFlightLoader, даём ему дойти до get()
+        Thread.sleep(100);
+    }
+
+    // Считает соединения, взятые и ещё не закрытые
+    static class CountingDataSource extends DelegatingDataSource {
+        private final AtomicInteger open = new AtomicInteger();
+
+        CountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        int open() {
+            return open.get();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            open.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                        if ("close".equals(method.getName())) {
+                            open.decrementAndGet();
+                        }
+                        return method.invoke(connection, args);
+                    });
+        }
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    static class Config {
+        @Bean
+        CountingDataSource dataSource() {
+            JdbcDataSource h2 = new JdbcDataSource();
+            h2.setURL("jdbc:h2:mem:coalesced-load;DB_CLOSE_DELAY=-1");
+            return new CountingDataSource(h2);
+        }
+
+        @Bean
+        PlatformTransactionManager transactionManager(DataSource dataSource) {
+            return new DataSourceTransactionManager(dataSource);
+        }
+
+        @Bean
+        FriendRepository friendRepository() {
+            return mock(FriendRepository.class);
+        }
+
+        @Bean
+        CacheRegistry cacheRegistry() {
+            return new CacheRegistry(new CacheProperties(), mock(InvalidationBus.class));
+        }
+
+        @Bean
+        FriendService friendService(FriendRepository friendRepository,
+                                    CacheRegistry cacheRegistry,
+                                    PlatformTransactionManager transactionManager) {
+            return new FriendService(mock(UserRepository.class), friendRepository,
+                    mock(UserExistenceFilter.class), cacheRegistry, mock(FriendGraph.class),
+                    new FriendPathProperties(), mock(FriendBatchRepository.class),
+                    new FriendBulkProperties(), new TransactionTemplate(transactionManager),
+                    transactionManager, mock(FriendCounts.class));
+        }
+    }
+}